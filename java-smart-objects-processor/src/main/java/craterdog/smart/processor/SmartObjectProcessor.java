@@ -0,0 +1,657 @@
+/************************************************************************
+ * Copyright (c) Crater Dog Technologies(TM).  All Rights Reserved.     *
+ ************************************************************************
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.        *
+ *                                                                      *
+ * This code is free software; you can redistribute it and/or modify it *
+ * under the terms of The MIT License (MIT), as published by the Open   *
+ * Source Initiative. (See http://opensource.org/licenses/MIT)          *
+ ************************************************************************/
+package craterdog.smart.processor;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+
+/**
+ * This annotation processor generates a support class for each smart object class that is marked
+ * with the <code>@Precompiled</code> annotation. The support class extends the
+ * <code>CompiledSupport</code> class and contains a serializer and deserializer for the public
+ * attributes of the smart object class, the masking of its <code>@Sensitive</code> attributes,
+ * and a structural equality and hash code that follow the JSON semantics of the smart objects.
+ * <p>
+ * Only classes whose JSON form is determined by their public attributes are supported. A class
+ * that has Jackson annotations, getters or setters, final or hidden attributes, type parameters
+ * or a <code>@MapperScope</code> is reported with a warning and left to be handled at runtime.
+ * An invalid mask on a <code>@Sensitive</code> attribute is reported as an error.
+ *
+ * @author Derk Norton
+ */
+@SupportedAnnotationTypes("craterdog.smart.Precompiled")
+public class SmartObjectProcessor extends AbstractProcessor {
+
+    static private final String SMART_OBJECT = "craterdog.smart.SmartObject";
+    static private final String SENSITIVE = "craterdog.smart.Sensitive";
+    static private final String MASK_BY_POSITION = "\u0000";  // the default mask of a @Sensitive annotation
+    static private final String MAPPER_SCOPE = "craterdog.smart.MapperScope";
+    static private final String JACKSON = "com.fasterxml.jackson.";
+    static private final String SUFFIX = "_SmartSupport";
+
+    // the types whose equals() and hashCode() methods agree with their JSON strings
+    static private final Set<String> valueTypes = new HashSet<>(java.util.Arrays.asList(
+            "java.lang.String", "java.lang.Boolean", "java.lang.Byte", "java.lang.Character",
+            "java.lang.Short", "java.lang.Integer", "java.lang.Long", "java.lang.Float", "java.lang.Double"));
+
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment round) {
+        for (TypeElement annotation : annotations) {
+            for (Element element : round.getElementsAnnotatedWith(annotation)) {
+                if (element.getKind() != ElementKind.CLASS) {
+                    report(Diagnostic.Kind.ERROR, "Only smart object classes can be precompiled.", element);
+                    continue;
+                }
+                TypeElement type = (TypeElement) element;
+                try {
+                    List<Attribute> attributes = collectAttributes(type);
+                    generateSupport(type, attributes);
+                } catch (UnsupportedClassException e) {
+                    report(Diagnostic.Kind.WARNING, "The class " + type.getQualifiedName()
+                            + " will be handled at runtime: " + e.getMessage(), element);
+                } catch (InvalidMaskException e) {
+                    report(Diagnostic.Kind.ERROR, e.getMessage(), e.element);
+                } catch (IOException e) {
+                    report(Diagnostic.Kind.ERROR, "The support class could not be written: " + e, element);
+                }
+            }
+        }
+        return true;
+    }
+
+
+    private void report(Diagnostic.Kind kind, String message, Element element) {
+        processingEnv.getMessager().printMessage(kind, message, element);
+    }
+
+
+    /*
+     * This method collects the attributes that Jackson would serialize for the specified class,
+     * in the same order, or throws an exception if the class cannot be precompiled.
+     */
+    private List<Attribute> collectAttributes(TypeElement type) throws UnsupportedClassException, InvalidMaskException {
+        if (type.getModifiers().contains(Modifier.ABSTRACT)) {
+            throw new UnsupportedClassException("it is abstract");
+        }
+        if (type.getNestingKind() != NestingKind.TOP_LEVEL) {
+            if (type.getNestingKind() != NestingKind.MEMBER || !type.getModifiers().contains(Modifier.STATIC)) {
+                throw new UnsupportedClassException("it is not a top level or static member class");
+            }
+        }
+        for (Element enclosing = type; enclosing instanceof TypeElement; enclosing = enclosing.getEnclosingElement()) {
+            if (enclosing.getModifiers().contains(Modifier.PRIVATE)) {
+                throw new UnsupportedClassException("it is not accessible from its package");
+            }
+        }
+        if (!hasDefaultConstructor(type)) {
+            throw new UnsupportedClassException("it has no constructor without arguments that is accessible from its package");
+        }
+
+        // the attributes of the superclasses come first
+        List<TypeElement> chain = new ArrayList<>();
+        TypeElement current = type;
+        while (!current.getQualifiedName().contentEquals(SMART_OBJECT)) {
+            chain.add(current);
+            TypeMirror superclass = current.getSuperclass();
+            if (superclass.getKind() != TypeKind.DECLARED) {
+                throw new UnsupportedClassException("it is not a smart object");
+            }
+            current = (TypeElement) ((DeclaredType) superclass).asElement();
+        }
+        Collections.reverse(chain);
+
+        List<Attribute> attributes = new ArrayList<>();
+        Set<String> names = new HashSet<>();
+        for (TypeElement element : chain) {
+            checkClass(element);
+            for (VariableElement field : ElementFilter.fieldsIn(element.getEnclosedElements())) {
+                Set<Modifier> modifiers = field.getModifiers();
+                if (modifiers.contains(Modifier.STATIC) || modifiers.contains(Modifier.TRANSIENT)) continue;
+                if (!modifiers.contains(Modifier.PUBLIC)) continue;  // Jackson only sees public fields
+                String name = field.getSimpleName().toString();
+                if (modifiers.contains(Modifier.FINAL)) {
+                    throw new UnsupportedClassException("the attribute " + name + " is final");
+                }
+                if (!names.add(name)) {
+                    throw new UnsupportedClassException("the attribute " + name + " hides another attribute");
+                }
+                attributes.add(attributeFor(field));
+            }
+        }
+        return attributes;
+    }
+
+
+    private void checkClass(TypeElement element) throws UnsupportedClassException {
+        String name = element.getQualifiedName().toString();
+        if (!element.getTypeParameters().isEmpty()) {
+            throw new UnsupportedClassException("the class " + name + " has type parameters");
+        }
+        for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+            String annotation = nameOf(mirror);
+            if (annotation.startsWith(JACKSON) || annotation.equals(MAPPER_SCOPE)) {
+                throw new UnsupportedClassException("the class " + name + " is annotated with @" + annotation);
+            }
+        }
+        for (ExecutableElement method : ElementFilter.methodsIn(element.getEnclosedElements())) {
+            Set<Modifier> modifiers = method.getModifiers();
+            if (!modifiers.contains(Modifier.PUBLIC) || modifiers.contains(Modifier.STATIC)) continue;
+            String method_name = method.getSimpleName().toString();
+            int parameters = method.getParameters().size();
+            boolean returns = method.getReturnType().getKind() != TypeKind.VOID;
+            if (parameters == 0 && returns && (isAccessor(method_name, "get") || isAccessor(method_name, "is"))) {
+                throw new UnsupportedClassException("the method " + name + "." + method_name + "() is a getter");
+            }
+            if (parameters == 1 && isAccessor(method_name, "set")) {
+                throw new UnsupportedClassException("the method " + name + "." + method_name + "() is a setter");
+            }
+        }
+    }
+
+
+    static private boolean isAccessor(String name, String prefix) {
+        return name.length() > prefix.length() && name.startsWith(prefix)
+                && Character.isUpperCase(name.charAt(prefix.length()));
+    }
+
+
+    private boolean hasDefaultConstructor(TypeElement type) {
+        for (ExecutableElement constructor : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+            if (constructor.getParameters().isEmpty() && !constructor.getModifiers().contains(Modifier.PRIVATE)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+    private Attribute attributeFor(VariableElement field) throws UnsupportedClassException, InvalidMaskException {
+        String name = field.getSimpleName().toString();
+        TypeMirror type = field.asType();
+        Attribute attribute = new Attribute(name, type);
+        if (type.getKind().isPrimitive()) {
+            attribute.kind = Kind.PRIMITIVE;
+        } else if (type.getKind() == TypeKind.DECLARED && valueTypes.contains(erasureOf(type))) {
+            attribute.kind = erasureOf(type).equals("java.lang.String") ? Kind.STRING : Kind.VALUE;
+        } else if (type.getKind() == TypeKind.DECLARED || type.getKind() == TypeKind.ARRAY) {
+            attribute.kind = Kind.REFERENCE;
+            attribute.generic = type.getKind() == TypeKind.ARRAY || !((DeclaredType) type).getTypeArguments().isEmpty();
+        } else {
+            throw new UnsupportedClassException("the attribute " + name + " has an unsupported type");
+        }
+        for (AnnotationMirror mirror : field.getAnnotationMirrors()) {
+            String annotation = nameOf(mirror);
+            if (annotation.startsWith(JACKSON)) {
+                throw new UnsupportedClassException("the attribute " + name + " is annotated with @" + annotation);
+            }
+            if (annotation.equals(SENSITIVE)) {
+                if (attribute.kind != Kind.STRING) {
+                    throw new UnsupportedClassException("the sensitive attribute " + name + " is not a string");
+                }
+                attribute.mask = maskFor(field, mirror);
+            }
+        }
+        return attribute;
+    }
+
+
+    /*
+     * This method validates the mask of a @Sensitive annotation the same way the runtime does and
+     * returns the arguments for compiling it.
+     */
+    private String maskFor(VariableElement field, AnnotationMirror mirror) throws InvalidMaskException {
+        Map<? extends ExecutableElement, ? extends AnnotationValue> values =
+                processingEnv.getElementUtils().getElementValuesWithDefaults(mirror);
+        String mask = MASK_BY_POSITION;
+        int keepFirst = 0;
+        int keepLast = 0;
+        String keepChars = "";
+        char character = 'X';
+        for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : values.entrySet()) {
+            Object value = entry.getValue().getValue();
+            switch (entry.getKey().getSimpleName().toString()) {
+                case "mask":
+                    mask = (String) value;
+                    break;
+                case "keepFirst":
+                    keepFirst = (Integer) value;
+                    break;
+                case "keepLast":
+                    keepLast = (Integer) value;
+                    break;
+                case "keepChars":
+                    keepChars = (String) value;
+                    break;
+                case "character":
+                    character = (Character) value;
+                    break;
+                default:
+                    break;
+            }
+        }
+        String prefix = "The mask for the sensitive attribute '" + field.getSimpleName() + "' is invalid: ";
+        if (!mask.equals(MASK_BY_POSITION)) {
+            if (keepFirst != 0 || keepLast != 0 || !keepChars.isEmpty()) {
+                throw new InvalidMaskException(prefix + "A masking pattern cannot be combined with positional attributes.", field);
+            }
+            try {
+                if (!mask.isEmpty() && Pattern.compile(mask).matcher("").groupCount() == 0) {  // empty masks nothing
+                    throw new InvalidMaskException(prefix + "The masking pattern has no groups to mask.", field);
+                }
+            } catch (PatternSyntaxException e) {
+                throw new InvalidMaskException(prefix + e.getDescription(), field);
+            }
+        }
+        javax.lang.model.util.Elements elements = processingEnv.getElementUtils();
+        return elements.getConstantExpression(mask) + ", " + keepFirst + ", " + keepLast + ", "
+                + elements.getConstantExpression(keepChars) + ", " + elements.getConstantExpression(character);
+    }
+
+
+    private String erasureOf(TypeMirror type) {
+        return processingEnv.getTypeUtils().erasure(type).toString();
+    }
+
+
+    static private String nameOf(AnnotationMirror mirror) {
+        return ((TypeElement) mirror.getAnnotationType().asElement()).getQualifiedName().toString();
+    }
+
+
+    private void generateSupport(TypeElement type, List<Attribute> attributes) throws IOException {
+        String packageName = processingEnv.getElementUtils().getPackageOf(type).getQualifiedName().toString();
+        String binaryName = processingEnv.getElementUtils().getBinaryName(type).toString();
+        String simpleName = (packageName.isEmpty() ? binaryName : binaryName.substring(packageName.length() + 1))
+                .replace('$', '_') + SUFFIX;
+        String target = type.getQualifiedName().toString();
+
+        Source source = new Source();
+        if (!packageName.isEmpty()) {
+            source.line("package " + packageName + ";");
+            source.line();
+        }
+        source.line("import com.fasterxml.jackson.core.JsonGenerator;");
+        source.line("import com.fasterxml.jackson.core.JsonParser;");
+        source.line("import com.fasterxml.jackson.core.JsonToken;");
+        source.line("import com.fasterxml.jackson.core.io.SerializedString;");
+        source.line("import com.fasterxml.jackson.databind.DeserializationContext;");
+        source.line("import com.fasterxml.jackson.databind.JavaType;");
+        source.line("import com.fasterxml.jackson.databind.SerializerProvider;");
+        source.line("import craterdog.smart.CompiledSupport;");
+        source.line("import java.io.IOException;");
+        source.line("import java.util.Objects;");
+        source.line();
+        source.line("/**");
+        source.line(" * This class was generated by the SmartObjectProcessor for the " + target + " class.");
+        source.line(" * It should not be edited.");
+        source.line(" */");
+        source.line("public final class " + simpleName + " extends CompiledSupport<" + target + "> {");
+        source.line();
+        for (Attribute attribute : attributes) {
+            source.line("    static private final SerializedString NAME_" + attribute.name
+                    + " = new SerializedString(\"" + attribute.name + "\");");
+            if (attribute.mask != null) {
+                source.line("    static private final Mask MASK_" + attribute.name + " = mask(" + attribute.mask + ");");
+            }
+        }
+        for (Attribute attribute : attributes) {
+            if (attribute.generic) {
+                source.line("    private final JavaType TYPE_" + attribute.name + " = attributeType(\"" + attribute.name + "\");");
+            }
+        }
+        source.line();
+        source.line();
+        source.line("    public " + simpleName + "() {");
+        source.line("        super(" + target + ".class");
+        for (Attribute attribute : attributes) {
+            source.append(", \"" + attribute.name + "\"");
+        }
+        source.append(");");
+        source.line("    }");
+        generateWriteFields(source, target, attributes);
+        generateAttributeValue(source, target, attributes);
+        generateRead(source, target, attributes);
+        generateAreEqual(source, target, attributes);
+        generateHashCodeOf(source, target, attributes);
+        source.line();
+        source.line("}");
+
+        String fileName = packageName.isEmpty() ? simpleName : packageName + "." + simpleName;
+        try (Writer writer = processingEnv.getFiler().createSourceFile(fileName, type).openWriter()) {
+            writer.write(source.toString());
+        }
+    }
+
+
+    private void generateWriteFields(Source source, String target, List<Attribute> attributes) {
+        source.line();
+        source.line();
+        source.line("    @Override");
+        source.line("    public void writeFields(" + target + " object, JsonGenerator generator, SerializerProvider provider,");
+        source.line("            boolean censored) throws IOException {");
+        for (Attribute attribute : attributes) {
+            String value = "object." + attribute.name;
+            String indent = "        ";
+            if (attribute.kind != Kind.PRIMITIVE) {
+                source.line("        if (" + value + " != null) {");  // null attributes are not written
+                indent = "            ";
+            }
+            source.line(indent + "generator.writeFieldName(NAME_" + attribute.name + ");");
+            switch (attribute.kind) {
+                case PRIMITIVE:
+                    source.line(indent + writePrimitive(attribute.type.getKind(), value) + ";");
+                    break;
+                case STRING:
+                    if (attribute.mask != null) {
+                        source.line(indent + "if (censored) {");
+                        source.line(indent + "    MASK_" + attribute.name + ".writeTo(" + value + ", generator);");
+                        source.line(indent + "} else {");
+                        source.line(indent + "    generator.writeString(" + value + ");");
+                        source.line(indent + "}");
+                    } else {
+                        source.line(indent + "generator.writeString(" + value + ");");
+                    }
+                    break;
+                default:
+                    source.line(indent + "provider.defaultSerializeValue(" + value + ", generator);");
+                    break;
+            }
+            if (attribute.kind != Kind.PRIMITIVE) source.line("        }");
+        }
+        source.line("    }");
+    }
+
+
+    private void generateAttributeValue(Source source, String target, List<Attribute> attributes) {
+        source.line();
+        source.line();
+        source.line("    @Override");
+        source.line("    public Object attributeValue(" + target + " object, int index) {");
+        source.line("        switch (index) {");
+        for (int i = 0; i < attributes.size(); i++) {
+            source.line("            case " + i + ":");
+            source.line("                return object." + attributes.get(i).name + ";");
+        }
+        source.line("            default:");
+        source.line("                throw new IndexOutOfBoundsException(\"There is no attribute \" + index + \".\");");
+        source.line("        }");
+        source.line("    }");
+    }
+
+
+    static private String writePrimitive(TypeKind kind, String value) {
+        switch (kind) {
+            case BOOLEAN:
+                return "generator.writeBoolean(" + value + ")";
+            case CHAR:
+                return "generator.writeString(String.valueOf(" + value + "))";
+            case BYTE:
+                return "generator.writeNumber((int) " + value + ")";
+            default:
+                return "generator.writeNumber(" + value + ")";
+        }
+    }
+
+
+    private void generateRead(Source source, String target, List<Attribute> attributes) {
+        source.line();
+        source.line();
+        source.line("    @Override");
+        source.line("    public " + target + " read(JsonParser parser, DeserializationContext context) throws IOException {");
+        source.line("        " + target + " object = new " + target + "();");
+        source.line("        JsonToken token = parser.getCurrentToken();");
+        source.line("        if (token == JsonToken.START_OBJECT) token = parser.nextToken();");
+        source.line("        for (; token == JsonToken.FIELD_NAME; token = parser.nextToken()) {");
+        source.line("            String name = parser.getCurrentName();");
+        source.line("            parser.nextToken();");
+        source.line("            switch (name) {");
+        for (Attribute attribute : attributes) {
+            source.line("                case \"" + attribute.name + "\":");
+            source.line("                    object." + attribute.name + " = " + readValue(attribute) + ";");
+            source.line("                    break;");
+        }
+        source.line("                default:");
+        source.line("                    parser.skipChildren();  // unknown attributes are ignored");
+        source.line("                    break;");
+        source.line("            }");
+        source.line("        }");
+        source.line("        return object;");
+        source.line("    }");
+    }
+
+
+    private String readValue(Attribute attribute) {
+        String general;
+        if (attribute.generic) {
+            general = "context.readValue(parser, TYPE_" + attribute.name + ")";
+        } else {
+            general = "context.<" + boxedNameOf(attribute.type) + ">readValue(parser, " + erasureOf(attribute.type) + ".class)";
+        }
+        switch (attribute.kind) {
+            case PRIMITIVE:
+                switch (attribute.type.getKind()) {
+                    case INT:
+                        return "parser.hasToken(JsonToken.VALUE_NUMBER_INT) ? parser.getIntValue() : " + general;
+                    case LONG:
+                        return "parser.hasToken(JsonToken.VALUE_NUMBER_INT) ? parser.getLongValue() : " + general;
+                    case DOUBLE:
+                        return "parser.hasToken(JsonToken.VALUE_NUMBER_FLOAT) ? parser.getDoubleValue() : " + general;
+                    case BOOLEAN:
+                        return "parser.hasToken(JsonToken.VALUE_TRUE) || (!parser.hasToken(JsonToken.VALUE_FALSE) && " + general + ")";
+                    default:
+                        return general;
+                }
+            case STRING:
+                return "parser.hasToken(JsonToken.VALUE_STRING) ? parser.getText() : parser.hasToken(JsonToken.VALUE_NULL) ? null : " + general;
+            default:
+                return "parser.hasToken(JsonToken.VALUE_NULL) ? null : " + general;
+        }
+    }
+
+
+    private String boxedNameOf(TypeMirror type) {
+        if (type.getKind().isPrimitive()) {
+            return processingEnv.getTypeUtils().boxedClass((javax.lang.model.type.PrimitiveType) type).getQualifiedName().toString();
+        }
+        return erasureOf(type);
+    }
+
+
+    private void generateAreEqual(Source source, String target, List<Attribute> attributes) {
+        source.line();
+        source.line();
+        source.line("    @Override");
+        source.line("    public boolean areEqual(" + target + " first, " + target + " second) {");
+        List<String> comparisons = new ArrayList<>();
+        for (Kind kind : Kind.values()) {  // the cheapest comparisons are done first
+            for (Attribute attribute : attributes) {
+                if (attribute.kind != kind) continue;
+                String first = "first." + attribute.name;
+                String second = "second." + attribute.name;
+                switch (kind) {
+                    case PRIMITIVE:
+                        if (attribute.type.getKind() == TypeKind.DOUBLE) {
+                            comparisons.add("Double.compare(" + first + ", " + second + ") == 0");
+                        } else if (attribute.type.getKind() == TypeKind.FLOAT) {
+                            comparisons.add("Float.compare(" + first + ", " + second + ") == 0");
+                        } else {
+                            comparisons.add(first + " == " + second);
+                        }
+                        break;
+                    case STRING:
+                    case VALUE:
+                        comparisons.add("Objects.equals(" + first + ", " + second + ")");
+                        break;
+                    default:
+                        comparisons.add("valuesEqual(" + first + ", " + second + ")");
+                        break;
+                }
+            }
+        }
+        if (comparisons.isEmpty()) {
+            source.line("        return true;");
+        } else {
+            source.line("        return " + comparisons.get(0));
+            for (int i = 1; i < comparisons.size(); i++) {
+                source.line("                && " + comparisons.get(i));
+            }
+            source.append(";");
+        }
+        source.line("    }");
+    }
+
+
+    private void generateHashCodeOf(Source source, String target, List<Attribute> attributes) {
+        source.line();
+        source.line();
+        source.line("    @Override");
+        source.line("    public int hashCodeOf(" + target + " object) {");
+        source.line("        int hash = 1;");
+        for (Attribute attribute : attributes) {
+            String value = "object." + attribute.name;
+            String term;
+            switch (attribute.kind) {
+                case PRIMITIVE:
+                    term = boxedNameOf(attribute.type) + ".hashCode(" + value + ")";
+                    break;
+                case STRING:
+                case VALUE:
+                    term = "Objects.hashCode(" + value + ")";
+                    break;
+                default:
+                    term = "valueHash(" + value + ")";
+                    break;
+            }
+            source.line("        hash = 31 * hash + " + term + ";");
+        }
+        source.line("        return hash;");
+        source.line("    }");
+    }
+
+
+    /**
+     * This enumeration defines the kinds of attributes, ordered by the cost of comparing them.
+     */
+    private enum Kind {
+        PRIMITIVE, STRING, VALUE, REFERENCE
+    }
+
+
+    /**
+     * This class captures a public attribute of a smart object class.
+     */
+    static private class Attribute {
+
+        final String name;
+        final TypeMirror type;
+        Kind kind;
+        boolean generic;
+        String mask;  // the arguments for compiling the mask of a sensitive attribute
+
+        Attribute(String name, TypeMirror type) {
+            this.name = name;
+            this.type = type;
+        }
+
+    }
+
+
+    /**
+     * This class accumulates the lines of a generated source file.
+     */
+    static private class Source {
+
+        private final StringBuilder builder = new StringBuilder();
+
+        void line() {
+            builder.append('\n');
+        }
+
+        void line(String line) {
+            builder.append(line).append('\n');
+        }
+
+        void append(String text) {
+            builder.setLength(builder.length() - 1);  // continue the previous line
+            builder.append(text).append('\n');
+        }
+
+        @Override
+        public String toString() {
+            return builder.toString();
+        }
+
+    }
+
+
+    /**
+     * This exception is thrown when a class cannot be precompiled.
+     */
+    static private class UnsupportedClassException extends Exception {
+
+        static private final long serialVersionUID = 1L;
+
+        UnsupportedClassException(String message) {
+            super(message);
+        }
+
+    }
+
+
+    /**
+     * This exception is thrown when the mask of a sensitive attribute is invalid.
+     */
+    static private class InvalidMaskException extends Exception {
+
+        static private final long serialVersionUID = 1L;
+
+        final transient Element element;
+
+        InvalidMaskException(String message, Element element) {
+            super(message);
+            this.element = element;
+        }
+
+    }
+
+}
@@ -0,0 +1,306 @@
+/************************************************************************
+ * Copyright (c) Crater Dog Technologies(TM).  All Rights Reserved.     *
+ ************************************************************************
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.        *
+ *                                                                      *
+ * This code is free software; you can redistribute it and/or modify it *
+ * under the terms of The MIT License (MIT), as published by the Open   *
+ * Source Initiative. (See http://opensource.org/licenses/MIT)          *
+ ************************************************************************/
+package craterdog.smart.processor;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Stream;
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+import org.junit.AfterClass;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.ext.XLogger;
+import org.slf4j.ext.XLoggerFactory;
+
+/**
+ * This class tests the <code>SmartObjectProcessor</code> class by running it on fixture classes
+ * with the system Java compiler. The fixtures are compiled against minimal copies of the smart
+ * object annotations, so the generated support classes are checked as source code here. They are
+ * compiled and compared with the runtime handling by the tests of the java-smart-objects project.
+ *
+ * @author Derk Norton
+ */
+public class SmartObjectProcessorTest {
+
+    static private final XLogger logger = XLoggerFactory.getXLogger(SmartObjectProcessorTest.class);
+
+    // minimal copies of the runtime classes that the processor looks for
+    static private final String[][] RUNTIME = {
+        {"craterdog.smart.SmartObject",
+            "package craterdog.smart;\n"
+            + "public abstract class SmartObject<S extends SmartObject<S>> {}\n"},
+        {"craterdog.smart.Precompiled",
+            "package craterdog.smart;\n"
+            + "public @interface Precompiled {}\n"},
+        {"craterdog.smart.MapperScope",
+            "package craterdog.smart;\n"
+            + "public @interface MapperScope {}\n"},
+        {"craterdog.smart.Sensitive",
+            "package craterdog.smart;\n"
+            + "public @interface Sensitive {\n"
+            + "    String type();\n"
+            + "    String MASK_BY_POSITION = \"\\u0000\";\n"
+            + "    String mask() default MASK_BY_POSITION;\n"
+            + "    int keepFirst() default 0;\n"
+            + "    int keepLast() default 0;\n"
+            + "    String keepChars() default \"\";\n"
+            + "    char character() default 'X';\n"
+            + "}\n"}
+    };
+
+
+    /**
+     * Log a message at the beginning of the tests.
+     */
+    @BeforeClass
+    static public void setUpClass() {
+        logger.info("Running SmartObjectProcessor Unit Tests...\n");
+    }
+
+
+    /**
+     * Log a message at the end of the tests.
+     */
+    @AfterClass
+    static public void tearDownClass() {
+        logger.info("Completed SmartObjectProcessor Unit Tests.\n");
+    }
+
+
+    /**
+     * This unit test method tests the support class that is generated for a precompiled class.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testGeneratedSupport() throws IOException {
+        logger.info("Testing the generation of a support class...");
+
+        Result result = process("craterdog.example.Account",
+                "package craterdog.example;\n"
+                + "import craterdog.smart.*;\n"
+                + "import java.util.List;\n"
+                + "@Precompiled\n"
+                + "public class Account extends SmartObject<Account> {\n"
+                + "    public int count;\n"
+                + "    public double ratio;\n"
+                + "    public String name;\n"
+                + "    @Sensitive(type = \"credit card\", mask = \"^\\\\d{4}-(\\\\d{4})$\")\n"
+                + "    public String card;\n"
+                + "    public List<String> tags;\n"
+                + "    public Account other;\n"
+                + "    static public int total;\n"
+                + "    transient public int cached;\n"
+                + "}\n");
+        assertTrue(result.errors().toString(), result.errors().isEmpty());
+        String support = result.generated("craterdog/example/Account_SmartSupport.java");
+        assertTrue(support.contains("public final class Account_SmartSupport extends CompiledSupport<craterdog.example.Account> {"));
+        assertTrue(support.contains("static private final Mask MASK_card = mask(\"^\\\\d{4}-(\\\\d{4})$\", 0, 0, \"\", 'X');"));
+        assertTrue(support.contains("private final JavaType TYPE_tags = attributeType(\"tags\");"));
+        assertTrue(support.contains("object.other = parser.hasToken(JsonToken.VALUE_NULL) ? null"
+                + " : context.<craterdog.example.Account>readValue(parser, craterdog.example.Account.class);"));
+        assertTrue(support.contains("super(craterdog.example.Account.class, \"count\", \"ratio\", \"name\", \"card\", \"tags\", \"other\");"));
+        assertTrue(support.contains("            case 5:\n                return object.other;\n"));
+        assertFalse(support.contains("NAME_total"));  // static attributes are not serialized
+        assertFalse(support.contains("NAME_cached"));  // neither are transient ones
+
+        // the cheapest comparisons are done first
+        assertTrue(support.contains("        return first.count == second.count\n"
+                + "                && Double.compare(first.ratio, second.ratio) == 0\n"
+                + "                && Objects.equals(first.name, second.name)\n"
+                + "                && Objects.equals(first.card, second.card)\n"
+                + "                && valuesEqual(first.tags, second.tags)\n"
+                + "                && valuesEqual(first.other, second.other);\n"));
+
+        logger.info("The generation of a support class testing completed.\n");
+    }
+
+
+    /**
+     * This unit test method tests that a class that cannot be precompiled is reported with a
+     * warning and left to be handled at runtime.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testUnsupportedClass() throws IOException {
+        logger.info("Testing the handling of classes that cannot be precompiled...");
+
+        Result result = process("craterdog.example.Person",
+                "package craterdog.example;\n"
+                + "import craterdog.smart.*;\n"
+                + "@Precompiled\n"
+                + "public class Person extends SmartObject<Person> {\n"
+                + "    private String name;\n"
+                + "    public String getName() { return name; }\n"
+                + "}\n");
+        assertTrue(result.errors().toString(), result.errors().isEmpty());
+        assertEquals(1, result.warnings().size());
+        assertTrue(result.warnings().get(0).contains("is a getter"));
+        assertTrue(result.files.isEmpty());
+
+        logger.info("The handling of classes that cannot be precompiled testing completed.\n");
+    }
+
+
+    /**
+     * This unit test method tests that an invalid mask is reported as an error.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testInvalidMask() throws IOException {
+        logger.info("Testing the handling of invalid masks...");
+
+        Result result = process("craterdog.example.Card",
+                "package craterdog.example;\n"
+                + "import craterdog.smart.*;\n"
+                + "@Precompiled\n"
+                + "public class Card extends SmartObject<Card> {\n"
+                + "    @Sensitive(type = \"credit card\", mask = \"^\\\\d{4}-\\\\d{4}$\")\n"
+                + "    public String number;\n"
+                + "}\n");
+        assertEquals(1, result.errors().size());
+        assertTrue(result.errors().get(0).contains("The masking pattern has no groups to mask."));
+
+        logger.info("The handling of invalid masks testing completed.\n");
+    }
+
+
+    /**
+     * This unit test method tests that an empty mask, which leaves a value unmasked, is told
+     * apart from a missing mask, which masks a value by position.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testEmptyAndPositionalMasks() throws IOException {
+        logger.info("Testing the handling of empty and positional masks...");
+
+        Result result = process("craterdog.example.Note",
+                "package craterdog.example;\n"
+                + "import craterdog.smart.*;\n"
+                + "@Precompiled\n"
+                + "public class Note extends SmartObject<Note> {\n"
+                + "    @Sensitive(type = \"note\", mask = \"\")\n"
+                + "    public String text;\n"
+                + "    @Sensitive(type = \"pin\", keepLast = 2)\n"
+                + "    public String pin;\n"
+                + "}\n");
+        assertTrue(result.errors().toString(), result.errors().isEmpty());
+        String support = result.generated("craterdog/example/Note_SmartSupport.java");
+        assertTrue(support.contains("MASK_text = mask(\"\", 0, 0, \"\", 'X');"));
+        assertTrue(support.contains("MASK_pin = mask(\"\\u0000\", 0, 2, \"\", 'X');"));
+
+        logger.info("The handling of empty and positional masks testing completed.\n");
+    }
+
+
+    /*
+     * This method runs the processor on the specified class, along with the minimal runtime
+     * classes, and collects the diagnostics and the generated source files.
+     */
+    private Result process(String name, String code) throws IOException {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        List<JavaFileObject> sources = new ArrayList<>();
+        for (String[] runtime : RUNTIME) {
+            sources.add(new Source(runtime[0], runtime[1]));
+        }
+        sources.add(new Source(name, code));
+        Path directory = Files.createTempDirectory("processor");
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        List<String> options = Arrays.asList("-proc:only", "-s", directory.toString());
+        JavaCompiler.CompilationTask task = compiler.getTask(null, null, diagnostics, options, null, sources);
+        task.setProcessors(Collections.singletonList(new SmartObjectProcessor()));
+        task.call();
+        return new Result(diagnostics.getDiagnostics(), directory);
+    }
+
+
+    /**
+     * This class holds the source code of a fixture class.
+     */
+    static private class Source extends SimpleJavaFileObject {
+
+        private final String code;
+
+        Source(String name, String code) {
+            super(URI.create("string:///" + name.replace('.', '/') + Kind.SOURCE.extension), Kind.SOURCE);
+            this.code = code;
+        }
+
+        @Override
+        public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+            return code;
+        }
+
+    }
+
+
+    /**
+     * This class captures the outcome of running the processor.
+     */
+    static private class Result {
+
+        private final List<Diagnostic<? extends JavaFileObject>> diagnostics;
+        private final List<Path> files = new ArrayList<>();
+        private final Path directory;
+
+        Result(List<Diagnostic<? extends JavaFileObject>> diagnostics, Path directory) throws IOException {
+            this.diagnostics = diagnostics;
+            this.directory = directory;
+            try (Stream<Path> paths = Files.walk(directory)) {
+                paths.filter(Files::isRegularFile).forEach(files::add);
+            }
+        }
+
+        List<String> errors() {
+            return messages(Diagnostic.Kind.ERROR);
+        }
+
+        List<String> warnings() {
+            return messages(Diagnostic.Kind.WARNING);
+        }
+
+        String generated(String path) throws IOException {
+            return new String(Files.readAllBytes(directory.resolve(path)), StandardCharsets.UTF_8);
+        }
+
+        /*
+         * The generated classes refer to the runtime library, which is not available here, so
+         * only the messages about the fixtures themselves are collected.
+         */
+        private List<String> messages(Diagnostic.Kind kind) {
+            List<String> messages = new ArrayList<>();
+            for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics) {
+                if (diagnostic.getKind() != kind || !(diagnostic.getSource() instanceof Source)) continue;
+                messages.add(diagnostic.getMessage(null));
+            }
+            return messages;
+        }
+
+    }
+
+}
@@ -0,0 +1,303 @@
+/************************************************************************
+ * Copyright (c) Crater Dog Technologies(TM).  All Rights Reserved.     *
+ ************************************************************************
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.        *
+ *                                                                      *
+ * This code is free software; you can redistribute it and/or modify it *
+ * under the terms of The MIT License (MIT), as published by the Open   *
+ * Source Initiative. (See http://opensource.org/licenses/MIT)          *
+ ************************************************************************/
+package craterdog.smart;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.BeanDescription;
+import com.fasterxml.jackson.databind.DeserializationConfig;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.PropertyName;
+import com.fasterxml.jackson.databind.SerializationConfig;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.deser.BeanDeserializerBuilder;
+import com.fasterxml.jackson.databind.deser.BeanDeserializerModifier;
+import com.fasterxml.jackson.databind.deser.SettableBeanProperty;
+import com.fasterxml.jackson.databind.deser.ValueInstantiator;
+import com.fasterxml.jackson.databind.deser.impl.MethodProperty;
+import com.fasterxml.jackson.databind.deser.impl.NullsConstantProvider;
+import com.fasterxml.jackson.databind.deser.std.StdValueInstantiator;
+import com.fasterxml.jackson.databind.introspect.AnnotatedConstructor;
+import com.fasterxml.jackson.databind.introspect.AnnotatedWithParams;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.ser.BeanPropertyWriter;
+import com.fasterxml.jackson.databind.ser.BeanSerializerModifier;
+import com.fasterxml.jackson.databind.ser.impl.PropertySerializerMap;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * This class is a Jackson module that can be added to an object mapper to replace the reflection
+ * that is used to read and write the attributes of beans with generated accessors. The getters,
+ * setters and default constructors of each bean are bound to accessors that are created by the
+ * <code>Accessors</code> class. Fields, and any other attributes that cannot be bound, are handled
+ * by Jackson as usual. The module is similar in spirit to the Jackson Afterburner and Blackbird modules.
+ *
+ * @author Derk Norton
+ */
+public class AccessorModule extends SimpleModule {
+
+    /**
+     * The default constructor creates a module that generates accessors for the attributes of
+     * each bean when its serializer or deserializer is first built.
+     */
+    public AccessorModule() {
+        super("AccessorModule");
+    }
+
+
+    @Override
+    public void setupModule(SetupContext context) {
+        super.setupModule(context);
+        context.addBeanSerializerModifier(new AccessorSerializerModifier());
+        context.addBeanDeserializerModifier(new AccessorDeserializerModifier());
+    }
+
+
+    /**
+     * This class replaces the property writers of a bean serializer with writers that read the
+     * attribute values using generated accessors.
+     */
+    static private class AccessorSerializerModifier extends BeanSerializerModifier {
+
+        @Override
+        public List<BeanPropertyWriter> changeProperties(SerializationConfig config,
+                BeanDescription description, List<BeanPropertyWriter> writers) {
+            for (int i = 0; i < writers.size(); i++) {
+                BeanPropertyWriter writer = writers.get(i);
+                if (writer.getClass() != BeanPropertyWriter.class) continue;  // leave custom writers alone
+                Function<Object, Object> getter = Accessors.getterFor(writer.getMember().getMember());
+                if (getter != null) writers.set(i, new AccessorPropertyWriter(writer, getter));
+            }
+            return writers;
+        }
+
+    }
+
+
+    /**
+     * This class replaces the settable properties and default creator of a bean deserializer with
+     * ones that use generated accessors.
+     */
+    static private class AccessorDeserializerModifier extends BeanDeserializerModifier {
+
+        @Override
+        public BeanDeserializerBuilder updateBuilder(DeserializationConfig config,
+                BeanDescription description, BeanDeserializerBuilder builder) {
+            List<SettableBeanProperty> properties = new ArrayList<>();
+            Iterator<SettableBeanProperty> iterator = builder.getProperties();
+            while (iterator.hasNext()) {
+                properties.add(iterator.next());
+            }
+            for (SettableBeanProperty property : properties) {
+                if (property.getClass() != MethodProperty.class) continue;
+                BiConsumer<Object, Object> setter = Accessors.setterFor(property.getMember().getMember());
+                if (setter != null) builder.addOrReplaceProperty(new AccessorSettableProperty(property, setter), true);
+            }
+            ValueInstantiator instantiator = builder.getValueInstantiator();
+            if (instantiator != null && instantiator.getClass() == StdValueInstantiator.class
+                    && instantiator.canCreateUsingDefault()) {
+                AnnotatedWithParams creator = ((StdValueInstantiator) instantiator).getDefaultCreator();
+                if (creator instanceof AnnotatedConstructor) {
+                    Supplier<Object> supplier = Accessors.creatorFor(((AnnotatedConstructor) creator).getAnnotated());
+                    if (supplier != null) {
+                        builder.setValueInstantiator(new AccessorValueInstantiator((StdValueInstantiator) instantiator, supplier));
+                    }
+                }
+            }
+            return builder;
+        }
+
+    }
+
+
+    /**
+     * This class writes an attribute of a bean exactly like its base class does except that the
+     * value of the attribute is read using a generated accessor. The structural comparator reads
+     * the attributes of a bean through these writers as well.
+     */
+    @SuppressWarnings("serial")
+    static final class AccessorPropertyWriter extends BeanPropertyWriter {
+
+        private final transient Function<Object, Object> getter;
+
+        AccessorPropertyWriter(BeanPropertyWriter base, Function<Object, Object> getter) {
+            super(base);
+            this.getter = getter;
+        }
+
+        private AccessorPropertyWriter(AccessorPropertyWriter base, PropertyName name) {
+            super(base, name);
+            this.getter = base.getter;
+        }
+
+        @Override
+        protected BeanPropertyWriter _new(PropertyName name) {
+            return new AccessorPropertyWriter(this, name);
+        }
+
+        @Override
+        public Object get(Object bean) throws Exception {
+            return getter.apply(bean);
+        }
+
+        @Override
+        public void serializeAsField(Object bean, JsonGenerator generator, SerializerProvider provider) throws Exception {
+            final Object value = getter.apply(bean);
+            if (value == null) {
+                if (_nullSerializer != null) {
+                    generator.writeFieldName(_name);
+                    _nullSerializer.serialize(null, generator, provider);
+                }
+                return;
+            }
+            JsonSerializer<Object> serializer = serializerFor(value, provider);
+            if (_suppressableValue != null) {
+                if (MARKER_FOR_EMPTY == _suppressableValue) {
+                    if (serializer.isEmpty(provider, value)) return;
+                } else if (_suppressableValue.equals(value)) {
+                    return;
+                }
+            }
+            if (value == bean && _handleSelfReference(bean, generator, provider, serializer)) return;
+            generator.writeFieldName(_name);
+            if (_typeSerializer == null) {
+                serializer.serialize(value, generator, provider);
+            } else {
+                serializer.serializeWithType(value, generator, provider, _typeSerializer);
+            }
+        }
+
+        @Override
+        public void serializeAsElement(Object bean, JsonGenerator generator, SerializerProvider provider) throws Exception {
+            final Object value = getter.apply(bean);
+            if (value == null) {
+                if (_nullSerializer != null) {
+                    _nullSerializer.serialize(null, generator, provider);
+                } else {
+                    generator.writeNull();
+                }
+                return;
+            }
+            JsonSerializer<Object> serializer = serializerFor(value, provider);
+            if (_suppressableValue != null) {
+                if (MARKER_FOR_EMPTY == _suppressableValue) {
+                    if (serializer.isEmpty(provider, value)) {
+                        serializeAsPlaceholder(bean, generator, provider);
+                        return;
+                    }
+                } else if (_suppressableValue.equals(value)) {
+                    serializeAsPlaceholder(bean, generator, provider);
+                    return;
+                }
+            }
+            if (value == bean && _handleSelfReference(bean, generator, provider, serializer)) return;
+            if (_typeSerializer == null) {
+                serializer.serialize(value, generator, provider);
+            } else {
+                serializer.serializeWithType(value, generator, provider, _typeSerializer);
+            }
+        }
+
+        private JsonSerializer<Object> serializerFor(Object value, SerializerProvider provider) throws Exception {
+            JsonSerializer<Object> serializer = _serializer;
+            if (serializer == null) {
+                Class<?> type = value.getClass();
+                PropertySerializerMap map = _dynamicSerializers;
+                serializer = map.serializerFor(type);
+                if (serializer == null) serializer = _findAndAddDynamic(map, type, provider);
+            }
+            return serializer;
+        }
+
+    }
+
+
+    /**
+     * This class sets an attribute of a bean exactly like the property it delegates to except
+     * that the value is written using a generated accessor.
+     */
+    @SuppressWarnings("serial")
+    static private class AccessorSettableProperty extends SettableBeanProperty.Delegating {
+
+        private final transient BiConsumer<Object, Object> setter;
+        private final boolean skipNulls;
+
+        AccessorSettableProperty(SettableBeanProperty delegate, BiConsumer<Object, Object> setter) {
+            super(delegate);
+            this.setter = setter;
+            this.skipNulls = NullsConstantProvider.isSkipper(_nullProvider);
+        }
+
+        @Override
+        protected SettableBeanProperty withDelegate(SettableBeanProperty delegate) {
+            return new AccessorSettableProperty(delegate, setter);
+        }
+
+        @Override
+        public void deserializeAndSet(JsonParser parser, DeserializationContext context, Object instance) throws IOException {
+            if (skipNulls && parser.hasToken(JsonToken.VALUE_NULL)) return;
+            setter.accept(instance, deserialize(parser, context));
+        }
+
+        @Override
+        public Object deserializeSetAndReturn(JsonParser parser, DeserializationContext context, Object instance) throws IOException {
+            deserializeAndSet(parser, context, instance);
+            return instance;
+        }
+
+        @Override
+        public void set(Object instance, Object value) throws IOException {
+            setter.accept(instance, value);
+        }
+
+        @Override
+        public Object setAndReturn(Object instance, Object value) throws IOException {
+            setter.accept(instance, value);
+            return instance;
+        }
+
+    }
+
+
+    /**
+     * This class creates the instances of a bean exactly like its base class does except that
+     * the default constructor is called using a generated accessor.
+     */
+    @SuppressWarnings("serial")
+    static private class AccessorValueInstantiator extends StdValueInstantiator {
+
+        private final transient Supplier<Object> creator;
+
+        AccessorValueInstantiator(StdValueInstantiator base, Supplier<Object> creator) {
+            super(base);
+            this.creator = creator;
+        }
+
+        @Override
+        public Object createUsingDefault(DeserializationContext context) throws IOException {
+            try {
+                return creator.get();
+            } catch (Exception e) {
+                return context.handleInstantiationProblem(getDefaultCreator().getDeclaringClass(), null,
+                        rewrapCtorProblem(context, e));
+            }
+        }
+
+    }
+
+}
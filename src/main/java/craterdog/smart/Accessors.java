@@ -0,0 +1,158 @@
+/************************************************************************
+ * Copyright (c) Crater Dog Technologies(TM).  All Rights Reserved.     *
+ ************************************************************************
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.        *
+ *                                                                      *
+ * This code is free software; you can redistribute it and/or modify it *
+ * under the terms of The MIT License (MIT), as published by the Open   *
+ * Source Initiative. (See http://opensource.org/licenses/MIT)          *
+ ************************************************************************/
+package craterdog.smart;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import org.slf4j.ext.XLogger;
+import org.slf4j.ext.XLoggerFactory;
+
+/**
+ * This class generates the direct accessors that are used by the <code>AccessorModule</code> in
+ * place of reflection. Public methods and constructors of public classes are bound to generated
+ * lambda classes using the <code>LambdaMetafactory</code>, so the JIT compiler can inline them
+ * like hand written code. Fields are not supported since a method handle for an instance field
+ * that is not a constant is no faster than the field access that Jackson already does. Neither
+ * are members that the generated classes cannot link to, since a method handle held in a field of
+ * an accessor cannot be inlined either. If no accessor can be created null is returned and the
+ * caller keeps using reflection.
+ *
+ * @author Derk Norton
+ */
+final class Accessors {
+
+    static private final XLogger logger = XLoggerFactory.getXLogger(Accessors.class);
+
+    static private final MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+    static private final MethodType GETTER = MethodType.methodType(Object.class, Object.class);
+    static private final MethodType SETTER = MethodType.methodType(void.class, Object.class, Object.class);
+    static private final MethodType CREATOR = MethodType.methodType(Object.class);
+
+
+    private Accessors() {
+    }
+
+
+    /**
+     * This function returns an accessor that reads the value of the specified getter method
+     * from a bean.
+     *
+     * @param member The getter method.
+     * @return The accessor, or null if none could be created.
+     */
+    static Function<Object, Object> getterFor(Member member) {
+        try {
+            if (member instanceof Method && ((Method) member).getParameterTypes().length == 0) {
+                Method method = (Method) member;
+                if (isLinkable(method)) {
+                    MethodHandle target = lookup.unreflect(method);
+                    CallSite site = LambdaMetafactory.metafactory(lookup, "apply",
+                            MethodType.methodType(Function.class), GETTER, target, target.type().wrap());
+                    @SuppressWarnings("unchecked")
+                    Function<Object, Object> getter = (Function<Object, Object>) site.getTarget().invoke();
+                    return getter;
+                }
+            }
+        } catch (Throwable e) {
+            logger.debug("No accessor could be generated for {}: {}", member, e.toString());
+        }
+        return null;
+    }
+
+
+    /**
+     * This function returns an accessor that writes a value to the specified setter method of a
+     * bean. Setters that return a value are not supported.
+     *
+     * @param member The setter method.
+     * @return The accessor, or null if none could be created.
+     */
+    static BiConsumer<Object, Object> setterFor(Member member) {
+        try {
+            if (member instanceof Method && ((Method) member).getParameterTypes().length == 1
+                    && ((Method) member).getReturnType() == void.class) {
+                Method method = (Method) member;
+                if (isLinkable(method)) {
+                    MethodHandle target = lookup.unreflect(method);
+                    CallSite site = LambdaMetafactory.metafactory(lookup, "accept",
+                            MethodType.methodType(BiConsumer.class), SETTER, target,
+                            target.type().wrap().changeReturnType(void.class));
+                    @SuppressWarnings("unchecked")
+                    BiConsumer<Object, Object> setter = (BiConsumer<Object, Object>) site.getTarget().invoke();
+                    return setter;
+                }
+            }
+        } catch (Throwable e) {
+            logger.debug("No accessor could be generated for {}: {}", member, e.toString());
+        }
+        return null;
+    }
+
+
+    /**
+     * This function returns an accessor that creates a new bean using the specified constructor,
+     * which must not take any arguments.
+     *
+     * @param constructor The default constructor.
+     * @return The accessor, or null if none could be created.
+     */
+    static Supplier<Object> creatorFor(Constructor<?> constructor) {
+        try {
+            if (constructor.getParameterTypes().length != 0) return null;
+            if (isLinkable(constructor)) {
+                MethodHandle target = lookup.unreflectConstructor(constructor);
+                CallSite site = LambdaMetafactory.metafactory(lookup, "get",
+                        MethodType.methodType(Supplier.class), CREATOR, target, target.type());
+                @SuppressWarnings("unchecked")
+                Supplier<Object> creator = (Supplier<Object>) site.getTarget().invoke();
+                return creator;
+            }
+        } catch (Throwable e) {
+            logger.debug("No accessor could be generated for {}: {}", constructor, e.toString());
+        }
+        return null;
+    }
+
+
+    /*
+     * A generated lambda class is defined alongside this class, so it can only link to public
+     * members of public classes that are visible from the class loader of this class.
+     */
+    static private boolean isLinkable(Member member) {
+        if (!isAccessible(member)) return false;
+        Class<?> type = member.getDeclaringClass();
+        try {
+            return Class.forName(type.getName(), false, Accessors.class.getClassLoader()) == type;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+
+    static private boolean isAccessible(Member member) {
+        if (!Modifier.isPublic(member.getModifiers())) return false;
+        for (Class<?> type = member.getDeclaringClass(); type != null; type = type.getEnclosingClass()) {
+            if (!Modifier.isPublic(type.getModifiers())) return false;
+        }
+        return true;
+    }
+
+}
@@ -0,0 +1,218 @@
+/************************************************************************
+ * Copyright (c) Crater Dog Technologies(TM).  All Rights Reserved.     *
+ ************************************************************************
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.        *
+ *                                                                      *
+ * This code is free software; you can redistribute it and/or modify it *
+ * under the terms of The MIT License (MIT), as published by the Open   *
+ * Source Initiative. (See http://opensource.org/licenses/MIT)          *
+ ************************************************************************/
+package craterdog.smart;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+
+/**
+ * This class reads the elements of a large top level JSON array in parallel. The UTF-8 bytes of
+ * the array are scanned once on the calling thread to find where each element starts and ends,
+ * and the elements are then parsed in chunks by an executor. The elements are returned in their
+ * original order.
+ *
+ * @author Derk Norton
+ */
+final class BulkReader {
+
+    // arrays with fewer elements than this are not worth parsing in parallel
+    static private final int PARALLEL_THRESHOLD = 64;
+
+    private final ObjectReader reader;
+    private final Executor executor;
+    private final int parallelism;
+
+
+    /**
+     * This constructor creates a new bulk reader that uses the specified reader to parse each
+     * element and the specified executor to parse the chunks of elements in parallel.
+     *
+     * @param reader The reader to be used to parse each element.
+     * @param executor The executor to be used to parse the chunks.
+     */
+    BulkReader(ObjectReader reader, Executor executor) {
+        this.reader = reader.with(DeserializationFeature.FAIL_ON_TRAILING_TOKENS);  // catch missing commas
+        this.executor = executor;
+        this.parallelism = BulkWriter.parallelismOf(executor);
+    }
+
+
+    /**
+     * This method parses the elements of the JSON array contained in the specified range of
+     * bytes.
+     *
+     * @param <T> The type of the elements.
+     * @param bytes The array containing the UTF-8 encoded JSON.
+     * @param offset The index of the first byte of the JSON.
+     * @param length The number of bytes in the JSON.
+     * @return A list containing the elements in their original order.
+     * @throws IOException The JSON array could not be parsed.
+     */
+    <T> List<T> readArray(byte[] bytes, int offset, int length) throws IOException {
+        int[] bounds = scan(bytes, offset, offset + length);
+        int count = bounds[0];
+        Object[] elements = new Object[count];
+        if (count < PARALLEL_THRESHOLD || parallelism == 1) {
+            new Parser(bytes, bounds, elements, 0, count).call();
+        } else {
+            // several chunks per thread balance the load when some elements are larger than others
+            int chunkSize = (count + 4 * parallelism - 1) / (4 * parallelism);
+            List<FutureTask<Object>> tasks = new ArrayList<>();
+            try {
+                for (int first = 0; first < count; first += chunkSize) {
+                    FutureTask<Object> task = new FutureTask<>(
+                            new Parser(bytes, bounds, elements, first, Math.min(count, first + chunkSize)));
+                    executor.execute(task);
+                    tasks.add(task);
+                }
+                for (FutureTask<Object> task : tasks) {
+                    BulkWriter.await(task);
+                }
+            } finally {
+                for (FutureTask<Object> task : tasks) {
+                    task.cancel(false);
+                }
+            }
+        }
+        @SuppressWarnings("unchecked")
+        List<T> list = (List<T>) new ArrayList<>(Arrays.asList(elements));
+        return list;
+    }
+
+
+    /*
+     * This function scans a JSON array and returns the number of elements followed by the start
+     * and end of each element. Only the structure of the array is checked, the elements themselves
+     * are checked when they are parsed. Since UTF-8 continuation bytes are never ASCII, the bytes
+     * can be scanned without decoding them.
+     */
+    static int[] scan(byte[] bytes, int start, int end) throws IOException {
+        int position = skipWhitespace(bytes, start, end);
+        if (end - position >= 3 && (bytes[position] & 0xFF) == 0xEF && (bytes[position + 1] & 0xFF) == 0xBB &&
+                (bytes[position + 2] & 0xFF) == 0xBF) {
+            position = skipWhitespace(bytes, position + 3, end);  // skip a byte order mark
+        }
+        if (position == end || bytes[position] != '[') {
+            throw new JsonParseException(null, "The JSON does not start with an array.");
+        }
+        position = skipWhitespace(bytes, position + 1, end);
+        int[] bounds = new int[65];
+        int count = 0;
+        if (position < end && bytes[position] == ']') {
+            position++;
+        } else {
+            while (true) {
+                // find the end of the next element
+                int first = position;
+                int depth = 0;
+                while (position < end) {
+                    byte character = bytes[position];
+                    if (character == '"') {
+                        position = skipString(bytes, position + 1, end);
+                        continue;
+                    }
+                    if (character == '{' || character == '[') {
+                        depth++;
+                    } else if (character == '}' || character == ']') {
+                        if (depth == 0) break;
+                        depth--;
+                    } else if (character == ',' && depth == 0) {
+                        break;
+                    }
+                    position++;
+                }
+                if (position == end) {
+                    throw new JsonParseException(null, "The JSON array is not terminated.");
+                }
+                int last = position;
+                while (last > first && isWhitespace(bytes[last - 1])) {
+                    last--;
+                }
+                if (last == first || bytes[position] == '}') {
+                    throw new JsonParseException(null, "The JSON array contains a malformed element at index " + count + ".");
+                }
+                if (2 * count + 3 > bounds.length) bounds = Arrays.copyOf(bounds, 2 * bounds.length - 1);
+                bounds[2 * count + 1] = first;
+                bounds[2 * count + 2] = last;
+                count++;
+                if (bytes[position++] == ']') break;
+                position = skipWhitespace(bytes, position, end);
+            }
+        }
+        if (skipWhitespace(bytes, position, end) != end) {
+            throw new JsonParseException(null, "The JSON array is followed by unexpected content.");
+        }
+        bounds[0] = count;
+        return bounds;
+    }
+
+
+    static private int skipString(byte[] bytes, int position, int end) throws IOException {
+        while (position < end) {
+            byte character = bytes[position++];
+            if (character == '"') return position;
+            if (character == '\\') position++;  // the escaped character cannot end the string
+        }
+        throw new JsonParseException(null, "The JSON array contains an unterminated string.");
+    }
+
+
+    static private int skipWhitespace(byte[] bytes, int position, int end) {
+        while (position < end && isWhitespace(bytes[position])) {
+            position++;
+        }
+        return position;
+    }
+
+
+    static private boolean isWhitespace(byte character) {
+        return character == ' ' || character == '\n' || character == '\r' || character == '\t';
+    }
+
+
+    /**
+     * This class parses a range of the elements of the array into the elements array.
+     */
+    private class Parser implements Callable<Object> {
+
+        private final byte[] bytes;
+        private final int[] bounds;
+        private final Object[] elements;
+        private final int first;
+        private final int last;
+
+        Parser(byte[] bytes, int[] bounds, Object[] elements, int first, int last) {
+            this.bytes = bytes;
+            this.bounds = bounds;
+            this.elements = elements;
+            this.first = first;
+            this.last = last;
+        }
+
+        @Override
+        public Object call() throws IOException {
+            for (int i = first; i < last; i++) {
+                int start = bounds[2 * i + 1];
+                elements[i] = reader.readValue(bytes, start, bounds[2 * i + 2] - start);
+            }
+            return null;
+        }
+
+    }
+
+}
@@ -0,0 +1,195 @@
+/************************************************************************
+ * Copyright (c) Crater Dog Technologies(TM).  All Rights Reserved.     *
+ ************************************************************************
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.        *
+ *                                                                      *
+ * This code is free software; you can redistribute it and/or modify it *
+ * under the terms of The MIT License (MIT), as published by the Open   *
+ * Source Initiative. (See http://opensource.org/licenses/MIT)          *
+ ************************************************************************/
+package craterdog.smart;
+
+import com.fasterxml.jackson.databind.ObjectWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.FutureTask;
+
+/**
+ * This class writes a large number of objects out as a single JSON array or as JSON lines. The
+ * objects are taken from the iterator in chunks on the calling thread, the chunks are encoded in
+ * parallel by an executor, and the encoded chunks are then written to the output stream in their
+ * original order. The output is the same as it would be if the objects were written one at a time.
+ *
+ * @author Derk Norton
+ */
+final class BulkWriter {
+
+    static private final int CHUNK_SIZE = 128;
+
+    private final ObjectWriter writer;
+    private final Executor executor;
+    private final int window;  // the maximum number of chunks being encoded at a time
+
+
+    /**
+     * This constructor creates a new bulk writer that uses the specified writer to encode each
+     * object and the specified executor to encode the chunks in parallel.
+     *
+     * @param writer The writer to be used to encode each object.
+     * @param executor The executor to be used to encode the chunks.
+     */
+    BulkWriter(ObjectWriter writer, Executor executor) {
+        this.writer = writer;
+        this.executor = executor;
+        this.window = 2 * parallelismOf(executor);  // keep the threads busy while chunks are written
+    }
+
+
+    /**
+     * This function returns the number of tasks that the specified executor can run at a time.
+     *
+     * @param executor The executor.
+     * @return The parallelism of a fork-join pool, or the number of processors otherwise.
+     */
+    static int parallelismOf(Executor executor) {
+        int parallelism = executor instanceof ForkJoinPool ? ((ForkJoinPool) executor).getParallelism()
+                : Runtime.getRuntime().availableProcessors();
+        return Math.max(1, parallelism);
+    }
+
+
+    /**
+     * This method writes the objects to the output stream as a single JSON array.
+     *
+     * @param objects The objects to be written.
+     * @param output The output stream to be written to.
+     * @throws IOException The objects could not be written to the stream.
+     */
+    void writeArray(Iterator<?> objects, OutputStream output) throws IOException {
+        output.write('[');
+        write(objects, output, ',', false);
+        output.write(']');
+        output.flush();
+    }
+
+
+    /**
+     * This method writes the objects to the output stream as JSON lines, one object per line.
+     *
+     * @param objects The objects to be written.
+     * @param output The output stream to be written to.
+     * @throws IOException The objects could not be written to the stream.
+     */
+    void writeLines(Iterator<?> objects, OutputStream output) throws IOException {
+        write(objects, output, '\n', true);
+        output.flush();
+    }
+
+
+    private void write(Iterator<?> objects, OutputStream output, char separator, boolean terminated) throws IOException {
+        Deque<ByteArrayOutputStream> buffers = new ArrayDeque<>();  // the buffers are reused for later chunks
+        Deque<FutureTask<ByteArrayOutputStream>> pending = new ArrayDeque<>();
+        boolean first = true;
+        try {
+            while (objects.hasNext() || !pending.isEmpty()) {
+                while (pending.size() < window && objects.hasNext()) {
+                    ByteArrayOutputStream buffer = buffers.isEmpty() ? new ByteArrayOutputStream(8192) : buffers.pop();
+                    FutureTask<ByteArrayOutputStream> task = new FutureTask<>(
+                            new Encoder(nextChunk(objects), buffer, separator, terminated));
+                    executor.execute(task);
+                    pending.add(task);
+                }
+                ByteArrayOutputStream buffer = await(pending.remove());
+                if (!first && !terminated) output.write(separator);
+                first = false;
+                buffer.writeTo(output);
+                buffer.reset();
+                buffers.push(buffer);
+            }
+        } finally {
+            for (FutureTask<ByteArrayOutputStream> task : pending) {
+                task.cancel(false);
+            }
+        }
+    }
+
+
+    static private Object[] nextChunk(Iterator<?> objects) {
+        Object[] chunk = new Object[CHUNK_SIZE];
+        int size = 0;
+        while (size < CHUNK_SIZE && objects.hasNext()) {
+            chunk[size++] = objects.next();
+        }
+        if (size < CHUNK_SIZE) {
+            Object[] last = new Object[size];
+            System.arraycopy(chunk, 0, last, 0, size);
+            return last;
+        }
+        return chunk;
+    }
+
+
+    /**
+     * This function waits for the specified task to complete and returns its result. Any
+     * exception thrown by the task is rethrown as is.
+     *
+     * @param <V> The type of the result.
+     * @param task The task to be waited for.
+     * @return The result of the task.
+     * @throws IOException The task failed or the wait was interrupted.
+     */
+    static <V> V await(FutureTask<V> task) throws IOException {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("The bulk operation was interrupted.");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new RuntimeException("The bulk operation failed", cause);
+        }
+    }
+
+
+    /**
+     * This class encodes a chunk of objects into a buffer, separating them with the separator.
+     */
+    private class Encoder implements Callable<ByteArrayOutputStream> {
+
+        private final Object[] chunk;
+        private final ByteArrayOutputStream buffer;
+        private final char separator;
+        private final boolean terminated;
+
+        Encoder(Object[] chunk, ByteArrayOutputStream buffer, char separator, boolean terminated) {
+            this.chunk = chunk;
+            this.buffer = buffer;
+            this.separator = separator;
+            this.terminated = terminated;
+        }
+
+        @Override
+        public ByteArrayOutputStream call() throws IOException {
+            for (int i = 0; i < chunk.length; i++) {
+                if (i > 0 && !terminated) buffer.write(separator);
+                writer.writeValue(buffer, chunk[i]);
+                if (terminated) buffer.write(separator);
+            }
+            return buffer;
+        }
+
+    }
+
+}
@@ -9,17 +9,22 @@
  ************************************************************************/
 package craterdog.smart;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-import java.util.regex.PatternSyntaxException;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 import org.slf4j.ext.XLogger;
 import org.slf4j.ext.XLoggerFactory;
 
 /**
  * This class performs the masking function on a specified string value using a specified mask.
+ * The compiled masks are cached and shared by all censors so each mask is only compiled once.
+ * <p>
+ * Most masks are matched in time that is linear in the length of the value. The remaining masks
+ * are matched using a regular expression matcher that may backtrack, so each match is limited to
+ * a step budget. If the budget is exceeded the entire value is masked. The linear time automaton
+ * can be turned off, in which case those masks are matched by the budgeted matcher as well.
  *
  * @author Yan Ma
  * @author Derk Norton
@@ -28,6 +33,27 @@ public class Censor {
 
     static private final XLogger logger = XLoggerFactory.getXLogger(Censor.class);
 
+    // the maximum number of compiled masks that are cached
+    static private final int MAXIMUM_CACHED_MASKS = 256;
+
+    // a bounded cache of the compiled masks that is shared by all censors
+    static private final ConcurrentHashMap<String, MaskPlan> compiledMasks = new ConcurrentHashMap<>();
+    static private final ConcurrentHashMap<String, IllegalArgumentException> invalidMasks = new ConcurrentHashMap<>();
+    static private final LongAdder cacheHits = new LongAdder();
+    static private final LongAdder cacheMisses = new LongAdder();
+
+    // the maximum number of steps a regular expression matcher may take for a single value
+    static private final long DEFAULT_STEP_BUDGET = 1000000L;
+    static private volatile long stepBudget = DEFAULT_STEP_BUDGET;
+    static private final LongAdder budgetOverruns = new LongAdder();
+
+    // budget overruns are logged as warnings at most once per interval, and otherwise only counted
+    static private final long OVERRUN_WARNING_INTERVAL = TimeUnit.MINUTES.toNanos(1);
+    static private final AtomicLong nextOverrunWarning = new AtomicLong(System.nanoTime());
+
+    // whether or not masks that are not simple enough for the scanner are matched by the automaton
+    static private volatile boolean linearMatching = true;
+
     private final char maskingCharacter;
 
     /**
@@ -90,115 +116,178 @@ public class Censor {
             return value;
         }
 
-        // flatten all the nested intervals, the outermost interval for each is all we care about
-        ArrayList<Interval> intervals = mergeIntervals(value, mask);
-        if (intervals == null) {
+        // apply the compiled plan for the mask
+        try {
+            String result = planFor(mask).apply(value, maskingCharacter);
+            return result != null ? result : "MASKING_ERROR";
+        } catch (IllegalArgumentException e) {  // includes PatternSyntaxException
+            logger.error(e.getLocalizedMessage());
             return "MASKING_ERROR";
         }
+    }
 
-        StringBuilder stringBuilder = new StringBuilder();
-        int index = 0; // the index walks through the value string
-        for (Interval interval : intervals) {
-            stringBuilder.append(value.substring(index, interval.start));
-            for (int i = 0; i < interval.end - interval.start; i++) {
-                stringBuilder.append(maskingCharacter);
-            }
-            index = interval.end;
-        }
 
-        // append the rest of value unmasked.
-        if (index < value.length()) {
-            stringBuilder.append(value.substring(index));
-        }
-        return stringBuilder.toString();
+    /**
+     * This function returns the number of times that a compiled mask was found in the cache.
+     *
+     * @return The number of cache hits.
+     */
+    static public long getCacheHits() {
+        return cacheHits.sum();
     }
 
 
-    /*
-     * This method will "flatten" any nested intervals contained in "(" and ")" pairs in the
-     * specified string and merge them into a single interval that spans the outer-most pair.
-     * This is needed since java.util.Matcher does not guarantee that the sequence of the
-     * groups are maintained.
+    /**
+     * This function returns the number of times that a mask had to be compiled because it was not
+     * found in the cache.
+     *
+     * @return The number of cache misses.
      */
-    private static ArrayList<Interval> mergeIntervals(String string, String mask) {
-        ArrayList<Interval> result;
-        try {
+    static public long getCacheMisses() {
+        return cacheMisses.sum();
+    }
 
-            // generate the matcher
-            Pattern pattern = Pattern.compile(mask);
-            Matcher matcher = pattern.matcher(string);
-            if (!matcher.find()) {
-                return null;
-            }
-            int groupCount = matcher.groupCount();
-            if (groupCount == 0) {
-                return null;
-            }
-
-            // pull out the potentially nested intervals
-            ArrayList<Interval> intervals = new ArrayList<>();
-            for (int i = 1; i <= groupCount; i++) {
-                intervals.add(new Interval(matcher.start(i), matcher.end(i)));
-            }
-
-            if (groupCount == 1) {
-                result = intervals;
-            } else {
-                Collections.sort(intervals, new IntervalComparator());
-                int start = intervals.get(0).start;
-                int end = intervals.get(0).end;
-                result = new ArrayList<>();
-                for (int i = 1; i < intervals.size(); i++) {
-                    if (intervals.get(i).start > end) {
-                        // this is a new interval
-                        result.add(new Interval(start, end));
-                        start = intervals.get(i).start;
-                        end = intervals.get(i).end;
-                    } else {
-                        end = Math.max(end, intervals.get(i).end);
-                    }
-                }
-                // don't forget to add the last group into the final results
-                result.add(new Interval(start, end));
-            }
-
-        } catch (PatternSyntaxException e) {
-            logger.error(e.getLocalizedMessage());
-            result = null;
-        }
 
-        return result;
+    /**
+     * This function returns the number of compiled masks that are currently cached.
+     *
+     * @return The size of the cache.
+     */
+    static public int getCacheSize() {
+        return compiledMasks.size();
     }
 
+
     /**
-     * This class is used to capture an interval defined by matching parentheses in a masking
-     * pattern.
+     * This function removes all compiled masks, and the masks that failed to compile, from the
+     * cache and resets its statistics.
      */
-    static private class Interval {
+    static public void clearCache() {
+        compiledMasks.clear();
+        invalidMasks.clear();
+        cacheHits.reset();
+        cacheMisses.reset();
+    }
 
-        int start;
-        int end;
 
-        Interval() {
-            start = 0;
-            end = 0;
-        }
+    /**
+     * This function returns the maximum number of steps that a regular expression matcher may take
+     * while matching a mask against a single value.
+     *
+     * @return The step budget.
+     */
+    static public long getStepBudget() {
+        return stepBudget;
+    }
+
+
+    /**
+     * This function sets the maximum number of steps that a regular expression matcher may take
+     * while matching a mask against a single value. The default budget is one million steps.
+     *
+     * @param budget The new step budget.
+     */
+    static public void setStepBudget(long budget) {
+        if (budget < 1) throw new IllegalArgumentException("The step budget must be positive: " + budget);
+        stepBudget = budget;
+    }
 
-        Interval(int start, int end) {
-            this.start = start;
-            this.end = end;
-        }
 
+    /**
+     * This function determines whether or not the masks that are not simple enough for the
+     * specialized scanner are matched by the linear time automaton.
+     *
+     * @return Whether or not the automaton is used.
+     */
+    static public boolean isLinearMatching() {
+        return linearMatching;
     }
 
+
     /**
-     * This class is used to compare two intervals.
+     * This function turns the linear time automaton on or off. When it is off, the masks that are
+     * not simple enough for the specialized scanner are matched by the regular expression matcher
+     * with its step budget, as they were before the automaton was added. The automaton is on by
+     * default.
+     *
+     * @param enabled Whether or not the automaton should be used.
      */
-    static private class IntervalComparator implements Comparator<Interval> {
+    static public void setLinearMatching(boolean enabled) {
+        linearMatching = enabled;
+    }
+
+
+    /**
+     * This function returns the number of values that were masked entirely because the matcher
+     * exceeded its step budget.
+     *
+     * @return The number of budget overruns.
+     */
+    static public long getBudgetOverruns() {
+        return budgetOverruns.sum();
+    }
+
+
+    /**
+     * This function records that the matcher exceeded its step budget for the specified mask. Only
+     * the first overrun in each minute is logged as a warning so that a mask that keeps exceeding
+     * its budget does not flood the log, the others are counted and logged at the debug level.
+     *
+     * @param mask The mask.
+     */
+    static void recordBudgetOverrun(String mask) {
+        budgetOverruns.increment();
+        long now = System.nanoTime();
+        long next = nextOverrunWarning.get();
+        if (now - next >= 0 && nextOverrunWarning.compareAndSet(next, now + OVERRUN_WARNING_INTERVAL)) {
+            logger.warn("The step budget was exceeded for the mask {} so the entire value was masked ({} overruns so far).",
+                    mask, budgetOverruns.sum());
+        } else {
+            logger.debug("The step budget was exceeded for the mask {} so the entire value was masked.", mask);
+        }
+    }
+
+
+    /**
+     * This function returns the compiled plan for the specified mask from the cache, compiling and
+     * caching it if necessary. A mask that fails to compile is cached as well, so the same failure
+     * is reported again without compiling the mask again. If the cache is full an arbitrary entry
+     * is evicted to make room.
+     *
+     * @param mask The mask.
+     * @return The compiled plan for the mask.
+     * @throws IllegalArgumentException The mask is invalid.
+     */
+    static MaskPlan planFor(String mask) {
+        MaskPlan plan = compiledMasks.get(mask);
+        if (plan != null) {
+            cacheHits.increment();
+            return plan;
+        }
+        IllegalArgumentException failure = invalidMasks.get(mask);
+        if (failure != null) {
+            cacheHits.increment();
+            throw failure;
+        }
+        cacheMisses.increment();
+        try {
+            plan = MaskPlan.compile(mask);
+        } catch (IllegalArgumentException e) {  // includes PatternSyntaxException
+            makeRoom(invalidMasks);
+            invalidMasks.putIfAbsent(mask, e);
+            throw e;
+        }
+        makeRoom(compiledMasks);
+        MaskPlan existing = compiledMasks.putIfAbsent(mask, plan);
+        return existing != null ? existing : plan;
+    }
+
 
-        @Override
-        public int compare(Interval source, Interval target) {
-            return source.start - target.start;
+    static private void makeRoom(ConcurrentHashMap<String, ?> cache) {
+        while (cache.size() >= MAXIMUM_CACHED_MASKS) {
+            Iterator<String> iterator = cache.keySet().iterator();
+            if (!iterator.hasNext()) break;
+            cache.remove(iterator.next());
         }
     }
 
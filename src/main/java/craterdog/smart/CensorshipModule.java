@@ -9,25 +9,191 @@
  ************************************************************************/
 package craterdog.smart;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.BeanDescription;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.PropertyName;
+import com.fasterxml.jackson.databind.SerializationConfig;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.introspect.Annotated;
+import com.fasterxml.jackson.databind.introspect.NopAnnotationIntrospector;
 import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.ser.BeanPropertyWriter;
+import com.fasterxml.jackson.databind.ser.BeanSerializerModifier;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import java.io.IOException;
+import java.util.List;
 
 /**
  * This class is a Jackson module that can be added to an object mapper to handle the masking of
  * sensitive attributes during string serialization. Any string attributes that are annotated with
- * the <code>@Sensitive(mask="some pattern")</code> annotation will be masked accordingly.
+ * the <code>@Sensitive(mask="some pattern")</code> annotation will be masked accordingly. The
+ * same goes for annotated attributes of any other type that is serialized as a JSON string, like
+ * a <code>TextString</code>, a <code>URI</code> or an <code>Object</code> holding a string.
  *
  * @author Yan Ma
  */
 public class CensorshipModule extends SimpleModule {
 
     /**
-     * The default constructor adds a censorship serializer that has no mask defined. However, the
-     * actual decision about whether or not to censor an attribute string is based on a mask that is
-     * specified with an <code>@Sensitive(mask="some mask")</code> annotation on the attribute.
+     * The default constructor creates a module that assigns a censorship serializer to each
+     * string attribute that is annotated with a <code>@Sensitive(mask="some mask")</code>
+     * annotation, and a masking writer to each annotated attribute of any other type. All other
+     * strings are serialized by the standard string serializer.
      */
     public CensorshipModule() {
         super("CensorshipModule");
-        addSerializer(String.class, new CensorshipSerializer());
+    }
+
+
+    @Override
+    public void setupModule(SetupContext context) {
+        super.setupModule(context);
+        context.insertAnnotationIntrospector(new CensorshipIntrospector());
+        context.addBeanSerializerModifier(new CensorshipSerializerModifier());
+    }
+
+
+    /*
+     * This function determines whether or not the values of an attribute of the specified type
+     * are masked by a censorship serializer, rather than by a censorship property writer.
+     */
+    static private boolean isStringType(JavaType type) {
+        if (type.getRawClass() == String.class) return true;
+        JavaType contentType = type.getContentType();
+        return contentType != null && contentType.getRawClass() == String.class;
+    }
+
+
+    /**
+     * This class finds the attributes that are annotated with the <code>@Sensitive</code>
+     * annotation. The censorship serializer it returns for a string attribute, or for the string
+     * elements of a collection, array or map attribute, is then contextualized by the framework
+     * using the annotation on the attribute.
+     */
+    static class CensorshipIntrospector extends NopAnnotationIntrospector {
+
+        static private final long serialVersionUID = 1L;
+
+        @Override
+        public Object findSerializer(Annotated annotated) {
+            if (annotated.hasAnnotation(Sensitive.class) && annotated.getRawType() == String.class) {
+                return new CensorshipSerializer();
+            }
+            return null;
+        }
+
+        @Override
+        public Object findContentSerializer(Annotated annotated) {
+            if (annotated.hasAnnotation(Sensitive.class)) {
+                JavaType contentType = annotated.getType().getContentType();
+                if (contentType != null && contentType.getRawClass() == String.class) {
+                    return new CensorshipSerializer();
+                }
+            }
+            return null;
+        }
+
+    }
+
+
+    /**
+     * This class wraps the writer of each attribute that is annotated with the
+     * <code>@Sensitive</code> annotation but whose values are not strings, or collections, arrays
+     * or maps of strings. Those values may still be serialized as JSON strings, for example by a
+     * <code>@JsonValue</code> method or because their declared type is <code>Object</code>.
+     */
+    static private class CensorshipSerializerModifier extends BeanSerializerModifier {
+
+        @Override
+        public List<BeanPropertyWriter> changeProperties(SerializationConfig config,
+                BeanDescription description, List<BeanPropertyWriter> writers) {
+            for (int i = 0; i < writers.size(); i++) {
+                BeanPropertyWriter writer = writers.get(i);
+                Sensitive sensitive = writer.getAnnotation(Sensitive.class);
+                if (sensitive == null || writer.isVirtual() || isStringType(writer.getType())) continue;
+                try {
+                    MaskPlan plan = CensorshipSerializer.planFor(sensitive);
+                    writers.set(i, new CensorshipPropertyWriter(writer, plan, sensitive.character()));
+                } catch (IllegalArgumentException e) {  // includes PatternSyntaxException
+                    throw new IllegalArgumentException("The mask for the sensitive property '"
+                            + writer.getName() + "' is invalid: " + e.getLocalizedMessage(), e);
+                }
+            }
+            return writers;
+        }
+
+    }
+
+
+    /**
+     * This class writes an attribute of a bean exactly like its base class does except that every
+     * string value within the serialized attribute is masked. The attribute is first written to a
+     * token buffer since its serializer is not known until the value has been read.
+     */
+    @SuppressWarnings("serial")
+    static private class CensorshipPropertyWriter extends BeanPropertyWriter {
+
+        private final transient MaskPlan plan;
+        private final char maskingCharacter;
+
+        CensorshipPropertyWriter(BeanPropertyWriter base, MaskPlan plan, char maskingCharacter) {
+            super(base);
+            this.plan = plan;
+            this.maskingCharacter = maskingCharacter;
+        }
+
+        private CensorshipPropertyWriter(CensorshipPropertyWriter base, PropertyName name) {
+            super(base, name);
+            this.plan = base.plan;
+            this.maskingCharacter = base.maskingCharacter;
+        }
+
+        @Override
+        protected BeanPropertyWriter _new(PropertyName name) {
+            return new CensorshipPropertyWriter(this, name);
+        }
+
+        @Override
+        public void serializeAsField(Object bean, JsonGenerator generator, SerializerProvider provider) throws Exception {
+            TokenBuffer buffer = new TokenBuffer(generator.getCodec(), false);
+            buffer.writeStartObject();
+            super.serializeAsField(bean, buffer, provider);
+            buffer.writeEndObject();
+            writeMasked(buffer, generator);
+        }
+
+        @Override
+        public void serializeAsElement(Object bean, JsonGenerator generator, SerializerProvider provider) throws Exception {
+            TokenBuffer buffer = new TokenBuffer(generator.getCodec(), false);
+            buffer.writeStartArray();
+            super.serializeAsElement(bean, buffer, provider);
+            buffer.writeEndArray();
+            writeMasked(buffer, generator);
+        }
+
+        /*
+         * This method copies the tokens inside the outermost structure of the buffer to the
+         * generator, masking the string values but not the field names.
+         */
+        private void writeMasked(TokenBuffer buffer, JsonGenerator generator) throws IOException {
+            try (JsonParser parser = buffer.asParser()) {
+                parser.nextToken();  // skip the start of the outermost structure
+                int depth = 0;
+                for (JsonToken token = parser.nextToken(); depth > 0 || !token.isStructEnd(); token = parser.nextToken()) {
+                    if (token == JsonToken.VALUE_STRING) {
+                        CensorshipSerializer.writeMasked(parser.getText(), plan, maskingCharacter, generator);
+                    } else {
+                        generator.copyCurrentEvent(parser);
+                        if (token.isStructStart()) depth++;
+                        if (token.isStructEnd()) depth--;
+                    }
+                }
+            }
+        }
+
     }
 
 }
@@ -31,7 +31,7 @@ class CensorshipSerializer extends JsonSerializer<String> implements ContextualS
 
     static private final XLogger logger = XLoggerFactory.getXLogger(CensorshipSerializer.class);
 
-    private final String mask;
+    private final MaskPlan plan;
     private final char maskingCharacter;
 
     /**
@@ -39,20 +39,20 @@ class CensorshipSerializer extends JsonSerializer<String> implements ContextualS
      * string will be masked.
      */
     CensorshipSerializer() {
-        this.mask = null;
+        this.plan = null;
         this.maskingCharacter = 'X';
     }
 
     /**
-     * This constructor creates a serializer with the specified mask and masking character. The
+     * This constructor creates a serializer with the specified mask plan and masking character. The
      * characters of a string serialized using this serializer will be censored using the specified
-     * mask.
+     * plan.
      *
-     * @param mask The pattern to be used to mask the sensitive attribute.
+     * @param plan The compiled mask to be used to mask the sensitive attribute.
      * @param maskingCharacter The character to be used for masking.
      */
-    CensorshipSerializer(String mask, char maskingCharacter) {
-        this.mask = mask;
+    CensorshipSerializer(MaskPlan plan, char maskingCharacter) {
+        this.plan = plan;
         this.maskingCharacter = maskingCharacter;
     }
 
@@ -61,7 +61,9 @@ class CensorshipSerializer extends JsonSerializer<String> implements ContextualS
      This is a strange instance method that really probably should be a static method but isn't
      due to the ContextualSerializer framework structure.  The important thing to realize is that
      a default CensorshipSerializer will be created by the framework with the default constructor
-     and then that instance will be used to create the *real* one with this method below.
+     and then that instance will be used to create the *real* one with this method below.  The
+     mask is compiled here, once per property, so an invalid mask is reported when the serializer
+     is created rather than each time a value is serialized.
      */
     @Override
     public JsonSerializer<?> createContextual(SerializerProvider provider, BeanProperty property)
@@ -80,20 +82,76 @@ class CensorshipSerializer extends JsonSerializer<String> implements ContextualS
             char sensitiveCharacter = sensitive.character();
             logger.debug("Found an annotation with mask {} and masking character {}.",
                     sensitiveMask, sensitiveCharacter);
-            return new CensorshipSerializer(sensitiveMask, sensitiveCharacter);
+            try {
+                return new CensorshipSerializer(planFor(sensitive), sensitiveCharacter);
+            } catch (IllegalArgumentException e) {  // includes PatternSyntaxException
+                throw JsonMappingException.from(provider, "The mask for the sensitive property '"
+                        + property.getName() + "' is invalid: " + e.getLocalizedMessage(), e);
+            }
         }
         // the default serializer has no mask so use it
         return this;
     }
 
+    /*
+     * This method returns the plan for the masking pattern of the specified annotation, or if it
+     * has no pattern, a positional plan for its positional attributes.
+     */
+    static MaskPlan planFor(Sensitive sensitive) {
+        return planFor(sensitive.mask(), sensitive.keepFirst(), sensitive.keepLast(), sensitive.keepChars());
+    }
+
+
+    /**
+     * This function returns the plan for the specified masking pattern, or if there is no
+     * pattern, a positional plan for the positional attributes. An empty pattern leaves each
+     * value unmasked.
+     *
+     * @param mask The masking pattern, or <code>Sensitive.MASK_BY_POSITION</code>.
+     * @param keepFirst The number of leading characters to keep.
+     * @param keepLast The number of trailing characters to keep.
+     * @param keepChars The characters to keep wherever they occur.
+     * @return The corresponding plan.
+     * @throws IllegalArgumentException The mask is invalid.
+     */
+    static MaskPlan planFor(String mask, int keepFirst, int keepLast, String keepChars) {
+        boolean positional = keepFirst != 0 || keepLast != 0 || !keepChars.isEmpty();
+        if (mask.equals(Sensitive.MASK_BY_POSITION)) {
+            return MaskPlan.positional(keepFirst, keepLast, keepChars);
+        }
+        if (positional) {
+            throw new IllegalArgumentException("A masking pattern cannot be combined with positional attributes.");
+        }
+        if (mask.isEmpty()) {
+            return MaskPlan.positional(Integer.MAX_VALUE, 0, "");  // keeps every character
+        }
+        return Censor.planFor(mask);
+    }
+
+
     @Override
     public void serialize(String value, JsonGenerator generator, SerializerProvider provider)
             throws IOException, JsonProcessingException {
-        if (mask != null) {
-            Censor censor = new Censor(maskingCharacter);
-            value = censor.process(value, mask);
+        writeMasked(value, plan, maskingCharacter, generator);
+    }
+
+
+    /**
+     * This function writes the specified value to a generator after masking it using the
+     * specified plan.
+     *
+     * @param value The value to be masked.
+     * @param plan The plan to be used to mask the value, or null if no masking is needed.
+     * @param maskingCharacter The character to be used for masking.
+     * @param generator The generator.
+     * @throws IOException The value could not be written.
+     */
+    static void writeMasked(String value, MaskPlan plan, char maskingCharacter, JsonGenerator generator) throws IOException {
+        if (plan == null || value == null || value.isEmpty()) {
+            generator.writeString(value);
+        } else if (!plan.writeTo(value, maskingCharacter, generator)) {
+            generator.writeString("MASKING_ERROR");
         }
-        generator.writeString(value);
     }
 
 }
@@ -0,0 +1,207 @@
+/************************************************************************
+ * Copyright (c) Crater Dog Technologies(TM).  All Rights Reserved.     *
+ ************************************************************************
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.        *
+ *                                                                      *
+ * This code is free software; you can redistribute it and/or modify it *
+ * under the terms of The MIT License (MIT), as published by the Open   *
+ * Source Initiative. (See http://opensource.org/licenses/MIT)          *
+ ************************************************************************/
+package craterdog.smart;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.type.WritableTypeId;
+import com.fasterxml.jackson.databind.AnnotationIntrospector;
+import com.fasterxml.jackson.databind.BeanDescription;
+import com.fasterxml.jackson.databind.DeserializationConfig;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.SerializationConfig;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.cfg.MapperConfig;
+import com.fasterxml.jackson.databind.deser.Deserializers;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+import com.fasterxml.jackson.databind.jsontype.TypeSerializer;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.ser.Serializers;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import java.io.IOException;
+
+/**
+ * This class is a Jackson module that hands the serialization and deserialization of the smart
+ * object classes marked with the <code>@Precompiled</code> annotation over to the support classes
+ * that were generated for them at compile time. It is registered with every smart object mapper.
+ * The sensitive attributes are masked by the generated code when the mapper also has the
+ * <code>CensorshipModule</code> registered.
+ * <p>
+ * The generated code follows the default configuration of a smart object mapper. When a mapper
+ * has been configured differently in a way that affects a precompiled class, for example with a
+ * mixin for the class, a property naming strategy, a different inclusion rule or failing on
+ * unknown properties, the class is handed back to the standard bean serializer or deserializer
+ * so that it behaves exactly as it would without the <code>@Precompiled</code> annotation.
+ *
+ * @author Derk Norton
+ */
+class CompiledModule extends SimpleModule {
+
+    /**
+     * The default constructor creates a module that looks up the generated support for each
+     * class when its serializer or deserializer is first needed.
+     */
+    CompiledModule() {
+        super("CompiledModule");
+    }
+
+
+    @Override
+    public void setupModule(SetupContext context) {
+        super.setupModule(context);
+        context.addSerializers(new CompiledSerializers());
+        context.addDeserializers(new CompiledDeserializers());
+    }
+
+
+    /*
+     * This method determines whether or not the censorship module has been registered with the
+     * mapper that the configuration belongs to.
+     */
+    static private boolean isCensored(AnnotationIntrospector introspector) {
+        for (AnnotationIntrospector candidate : introspector.allIntrospectors()) {
+            if (candidate instanceof CensorshipModule.CensorshipIntrospector) return true;
+        }
+        return false;
+    }
+
+
+    /*
+     * This method determines whether or not the configuration of a mapper changes how the
+     * attributes of the specified class are named or written, in ways that the generated code
+     * does not know about.
+     */
+    static private boolean isReconfigured(MapperConfig<?> config, Class<?> type) {
+        if (config.getPropertyNamingStrategy() != null || config.getActiveView() != null) return true;
+        if (config.isEnabled(MapperFeature.SORT_PROPERTIES_ALPHABETICALLY)) return true;
+        for (Class<?> current = type; current != null && current != Object.class; current = current.getSuperclass()) {
+            if (config.findMixInClassFor(current) != null) return true;
+        }
+        return false;
+    }
+
+
+    /**
+     * This function returns the generated support that a mapper with the specified configuration
+     * uses to write the specified class, or null if the mapper writes it using the standard bean
+     * serializer.
+     *
+     * @param config The serialization configuration of the mapper.
+     * @param type The class to be written.
+     * @return The generated support, or null.
+     */
+    static CompiledSupport<?> writingSupportFor(SerializationConfig config, Class<?> type) {
+        CompiledSupport<?> support = CompiledSupport.supportFor(type);
+        if (support == null || isReconfigured(config, type)) return null;
+        JsonInclude.Include inclusion = config.getDefaultPropertyInclusion(type).getValueInclusion();
+        if (inclusion != JsonInclude.Include.NON_NULL) return null;  // the generated code skips null attributes
+        return support;
+    }
+
+
+    /**
+     * This class finds the serializers for the precompiled classes.
+     */
+    static private class CompiledSerializers extends Serializers.Base {
+
+        @Override
+        public JsonSerializer<?> findSerializer(SerializationConfig config, JavaType type, BeanDescription description) {
+            CompiledSupport<?> support = writingSupportFor(config, type.getRawClass());
+            if (support == null) return null;
+            return new CompiledSerializer(support, isCensored(config.getAnnotationIntrospector()));
+        }
+
+    }
+
+
+    /**
+     * This class finds the deserializers for the precompiled classes.
+     */
+    static private class CompiledDeserializers extends Deserializers.Base {
+
+        @Override
+        public JsonDeserializer<?> findBeanDeserializer(JavaType type, DeserializationConfig config, BeanDescription description) {
+            CompiledSupport<?> support = CompiledSupport.supportFor(type.getRawClass());
+            if (support == null || isReconfigured(config, type.getRawClass())) return null;
+            if (config.isEnabled(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)) return null;  // the generated code skips them
+            if (config.isEnabled(MapperFeature.ACCEPT_CASE_INSENSITIVE_PROPERTIES)) return null;
+            return new CompiledDeserializer(support);
+        }
+
+    }
+
+
+    /**
+     * This class writes a precompiled smart object using its generated support.
+     */
+    @SuppressWarnings("serial")
+    static final class CompiledSerializer extends StdSerializer<Object> {
+
+        final transient CompiledSupport<?> support;
+        final boolean censored;
+
+        CompiledSerializer(CompiledSupport<?> support, boolean censored) {
+            super(Object.class);
+            this.support = support;
+            this.censored = censored;
+        }
+
+        @Override
+        public void serialize(Object value, JsonGenerator generator, SerializerProvider provider) throws IOException {
+            generator.writeStartObject(value);
+            support.writeObjectFields(value, generator, provider, censored);
+            generator.writeEndObject();
+        }
+
+        @Override
+        public void serializeWithType(Object value, JsonGenerator generator, SerializerProvider provider,
+                TypeSerializer typeSerializer) throws IOException {
+            generator.setCurrentValue(value);
+            WritableTypeId typeId = typeSerializer.writeTypePrefix(generator,
+                    typeSerializer.typeId(value, JsonToken.START_OBJECT));
+            support.writeObjectFields(value, generator, provider, censored);
+            typeSerializer.writeTypeSuffix(generator, typeId);
+        }
+
+    }
+
+
+    /**
+     * This class reads a precompiled smart object using its generated support.
+     */
+    @SuppressWarnings("serial")
+    static private class CompiledDeserializer extends StdDeserializer<Object> {
+
+        private final transient CompiledSupport<?> support;
+
+        CompiledDeserializer(CompiledSupport<?> support) {
+            super(support.getType());
+            this.support = support;
+        }
+
+        @Override
+        public Object deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+            if (!parser.hasToken(JsonToken.START_OBJECT) && !parser.hasToken(JsonToken.FIELD_NAME)
+                    && !parser.hasToken(JsonToken.END_OBJECT)) {
+                return context.handleUnexpectedToken(support.getType(), parser);
+            }
+            return support.read(parser, context);
+        }
+
+    }
+
+}
@@ -0,0 +1,303 @@
+/************************************************************************
+ * Copyright (c) Crater Dog Technologies(TM).  All Rights Reserved.     *
+ ************************************************************************
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.        *
+ *                                                                      *
+ * This code is free software; you can redistribute it and/or modify it *
+ * under the terms of The MIT License (MIT), as published by the Open   *
+ * Source Initiative. (See http://opensource.org/licenses/MIT)          *
+ ************************************************************************/
+package craterdog.smart;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.type.TypeFactory;
+import java.io.IOException;
+import org.slf4j.ext.XLogger;
+import org.slf4j.ext.XLoggerFactory;
+
+/**
+ * This class is the base class for the support classes that are generated at compile time for
+ * the smart object classes marked with the <code>@Precompiled</code> annotation. The support
+ * class for a smart object class is generated into the same package and is named after the
+ * smart object class with any enclosing class names joined by '_' and the suffix
+ * <code>_SmartSupport</code>, for example <code>Outer_Inner_SmartSupport</code>.
+ * <p>
+ * A support class writes and reads the attributes of a smart object directly, masking any
+ * attributes annotated with <code>@Sensitive</code> using masks that are compiled once when the
+ * support class is loaded. Its structural equality and hash code follow the JSON semantics of
+ * the runtime implementations: two smart objects are equal exactly when their exposed JSON
+ * strings are equal.
+ *
+ * @author Derk Norton
+ * @param <T> The type of smart object that is supported.
+ */
+public abstract class CompiledSupport<T> {
+
+    static private final XLogger logger = XLoggerFactory.getXLogger(CompiledSupport.class);
+
+    // the suffix of the name of each generated support class
+    static private final String SUFFIX = "_SmartSupport";
+
+    // the support for each smart object class, wrapped so that a missing support is cached as well
+    static private final ClassValue<CompiledSupport<?>[]> supports = new ClassValue<CompiledSupport<?>[]>() {
+        @Override
+        protected CompiledSupport<?>[] computeValue(Class<?> type) {
+            return new CompiledSupport<?>[] { load(type) };
+        }
+    };
+
+    private final Class<T> type;
+    private final String[] names;
+
+
+    /**
+     * This constructor creates the support for the specified smart object class.
+     *
+     * @param type The smart object class.
+     * @param names The names of the attributes in the order in which they are written.
+     */
+    protected CompiledSupport(Class<T> type, String... names) {
+        this.type = type;
+        this.names = names;
+    }
+
+
+    /**
+     * This method returns the smart object class that is supported.
+     *
+     * @return The smart object class.
+     */
+    public final Class<T> getType() {
+        return type;
+    }
+
+
+    /**
+     * This method writes the attributes of the specified object as the fields of a JSON object.
+     * The start and end of the JSON object are written by the caller.
+     *
+     * @param object The object whose attributes are to be written.
+     * @param generator The generator to write to.
+     * @param provider The provider of the serializers for any attribute values.
+     * @param censored Whether or not sensitive attributes must be masked.
+     * @throws IOException The attributes could not be written.
+     */
+    public abstract void writeFields(T object, JsonGenerator generator, SerializerProvider provider,
+            boolean censored) throws IOException;
+
+
+    /**
+     * This method returns the value of an attribute of the specified object. Primitive values
+     * are boxed.
+     *
+     * @param object The object.
+     * @param index The index of the attribute in the order in which the attributes are written.
+     * @return The value of the attribute.
+     */
+    public abstract Object attributeValue(T object, int index);
+
+
+    /**
+     * This method reads a new object from the specified parser, which is positioned at the start
+     * of the JSON object or at its first field name.
+     *
+     * @param parser The parser to read from.
+     * @param context The context providing the deserializers for any attribute values.
+     * @return The new object.
+     * @throws IOException The object could not be read.
+     */
+    public abstract T read(JsonParser parser, DeserializationContext context) throws IOException;
+
+
+    /**
+     * This method determines whether or not two objects of the supported class would have the
+     * same exposed JSON strings.
+     *
+     * @param first The first object.
+     * @param second The second object.
+     * @return Whether or not the objects are structurally equal.
+     */
+    public abstract boolean areEqual(T first, T second);
+
+
+    /**
+     * This method returns a hash code for the specified object that is consistent with the
+     * <code>areEqual()</code> method.
+     *
+     * @param object The object to be hashed.
+     * @return The hash code for the object.
+     */
+    public abstract int hashCodeOf(T object);
+
+
+    /**
+     * This function compiles the specified mask of a <code>@Sensitive</code> annotation.
+     *
+     * @param mask The masking pattern, or <code>Sensitive.MASK_BY_POSITION</code>.
+     * @param keepFirst The number of leading characters to keep.
+     * @param keepLast The number of trailing characters to keep.
+     * @param keepChars The characters to keep wherever they occur.
+     * @param character The masking character.
+     * @return The compiled mask.
+     */
+    static protected Mask mask(String mask, int keepFirst, int keepLast, String keepChars, char character) {
+        return new Mask(CensorshipSerializer.planFor(mask, keepFirst, keepLast, keepChars), character);
+    }
+
+
+    /**
+     * This method returns the full generic type of the specified public attribute of the
+     * supported class, for reading attributes with parameterized or array types.
+     *
+     * @param name The name of the attribute.
+     * @return The type of the attribute.
+     */
+    protected final JavaType attributeType(String name) {
+        try {
+            return TypeFactory.defaultInstance().constructType(type.getField(name).getGenericType());
+        } catch (NoSuchFieldException e) {
+            throw new IllegalStateException("The generated support does not match the class " + type.getName(), e);
+        }
+    }
+
+
+    /**
+     * This method determines whether or not two attribute values would have the same exposed
+     * JSON strings.
+     *
+     * @param first The first value.
+     * @param second The second value.
+     * @return Whether or not the values are structurally equal.
+     */
+    protected final boolean valuesEqual(Object first, Object second) {
+        if (first == second) return true;
+        if (first == null || second == null) return false;
+        try {
+            return SmartObject.comparatorFor(type).areEqual(first, second);
+        } catch (IOException e) {
+            throw new RuntimeException("The attempt to compare two objects failed", e);
+        }
+    }
+
+
+    /**
+     * This method returns a hash code for an attribute value that is consistent with the
+     * <code>valuesEqual()</code> method.
+     *
+     * @param value The value to be hashed.
+     * @return The hash code for the value.
+     */
+    protected final int valueHash(Object value) {
+        if (value == null) return 0;
+        try {
+            return SmartObject.comparatorFor(type).hashCodeOf(value);
+        } catch (IOException e) {
+            throw new RuntimeException("The attempt to hash an object failed", e);
+        }
+    }
+
+
+    /**
+     * This function returns the generated support for the specified class.
+     *
+     * @param type The smart object class.
+     * @return The support, or null if there is none.
+     */
+    static CompiledSupport<?> supportFor(Class<?> type) {
+        return supports.get(type)[0];
+    }
+
+
+    /**
+     * This method returns the names of the attributes in the order in which they are written.
+     */
+    final String[] attributeNames() {
+        return names;
+    }
+
+
+    /**
+     * This method returns an attribute value of an object of the supported class, see
+     * <code>attributeValue()</code>.
+     */
+    final Object objectAttributeValue(Object object, int index) {
+        return attributeValue(type.cast(object), index);
+    }
+
+
+    /**
+     * This method compares two objects of the supported class, see <code>areEqual()</code>.
+     */
+    final boolean equalObjects(Object first, Object second) {
+        return areEqual(type.cast(first), type.cast(second));
+    }
+
+
+    /**
+     * This method hashes an object of the supported class, see <code>hashCodeOf()</code>.
+     */
+    final int hashObject(Object object) {
+        return hashCodeOf(type.cast(object));
+    }
+
+
+    /**
+     * This method writes the attributes of an object of the supported class, see
+     * <code>writeFields()</code>.
+     */
+    final void writeObjectFields(Object object, JsonGenerator generator, SerializerProvider provider,
+            boolean censored) throws IOException {
+        writeFields(type.cast(object), generator, provider, censored);
+    }
+
+
+    static private CompiledSupport<?> load(Class<?> type) {
+        if (!type.isAnnotationPresent(Precompiled.class)) return null;
+        String name = type.getName();
+        String packageName = name.substring(0, name.lastIndexOf('.') + 1);
+        String supportName = packageName + name.substring(packageName.length()).replace('$', '_') + SUFFIX;
+        try {
+            Class<?> supportClass = Class.forName(supportName, true, type.getClassLoader());
+            CompiledSupport<?> support = (CompiledSupport<?>) supportClass.getConstructor().newInstance();
+            if (support.getType() == type) return support;
+            logger.warn("The generated support class {} does not support {}.", supportName, name);
+        } catch (ClassNotFoundException e) {
+            logger.debug("No generated support class was found for {}.", name);
+        } catch (ReflectiveOperationException | ClassCastException e) {
+            logger.warn("The generated support class {} could not be used: {}", supportName, e.toString());
+        }
+        return null;
+    }
+
+
+    /**
+     * This class captures a compiled mask for a sensitive attribute.
+     */
+    static protected final class Mask {
+
+        private final MaskPlan plan;
+        private final char character;
+
+        private Mask(MaskPlan plan, char character) {
+            this.plan = plan;
+            this.character = character;
+        }
+
+        /**
+         * This method writes the specified value to a generator after masking it.
+         *
+         * @param value The value to be masked.
+         * @param generator The generator.
+         * @throws IOException The value could not be written.
+         */
+        public void writeTo(String value, JsonGenerator generator) throws IOException {
+            CensorshipSerializer.writeMasked(value, plan, character, generator);
+        }
+
+    }
+
+}
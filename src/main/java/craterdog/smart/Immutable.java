@@ -0,0 +1,33 @@
+/************************************************************************
+ * Copyright (c) Crater Dog Technologies(TM).  All Rights Reserved.     *
+ ************************************************************************
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.        *
+ *                                                                      *
+ * This code is free software; you can redistribute it and/or modify it *
+ * under the terms of The MIT License (MIT), as published by the Open   *
+ * Source Initiative. (See http://opensource.org/licenses/MIT)          *
+ ************************************************************************/
+package craterdog.smart;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * This annotation is used to mark smart object classes whose instances are never modified once
+ * they have been constructed. The <code>SmartObject</code> class computes the string forms and
+ * hash code of an instance of a marked class only once and then reuses them. The annotation is
+ * not inherited, each subclass that is also immutable must be marked as well.
+ * <p>
+ * Modifying an instance of a marked class after it has been used results in stale strings and
+ * hash codes. These modifications can be detected during testing by calling
+ * <code>SmartObject.setImmutabilityChecks(true)</code>.
+ *
+ * @author Derk Norton
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface Immutable {
+
+}
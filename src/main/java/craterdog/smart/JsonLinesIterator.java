@@ -0,0 +1,285 @@
+/************************************************************************
+ * Copyright (c) Crater Dog Technologies(TM).  All Rights Reserved.     *
+ ************************************************************************
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.        *
+ *                                                                      *
+ * This code is free software; you can redistribute it and/or modify it *
+ * under the terms of The MIT License (MIT), as published by the Open   *
+ * Source Initiative. (See http://opensource.org/licenses/MIT)          *
+ ************************************************************************/
+package craterdog.smart;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import org.slf4j.ext.XLogger;
+import org.slf4j.ext.XLoggerFactory;
+
+/**
+ * This class lazily reads a sequence of objects from an input stream containing JSON lines, where
+ * each line holds a single JSON value. Only one line is held in memory at a time so arbitrarily
+ * large inputs can be processed in constant memory. Blank lines are ignored. For example:
+ * <pre>
+ *     try (JsonLinesIterator&lt;Customer&gt; customers = SmartObject.fromJsonLines(Customer.class, file)) {
+ *         while (customers.hasNext()) {
+ *             process(customers.next());
+ *         }
+ *     }
+ * </pre>
+ * The input stream is closed when the end of the input is reached or the iterator is closed.
+ *
+ * @author Derk Norton
+ *
+ * @param <T> The type of the objects being read.
+ */
+public final class JsonLinesIterator<T> implements Iterator<T>, Closeable {
+
+    static private final XLogger logger = XLoggerFactory.getXLogger(JsonLinesIterator.class);
+
+    static private final int BUFFER_SIZE = 64 * 1024;
+
+    private final ObjectReader reader;
+    private final InputStream input;
+    private final long totalBytes;
+
+    // the bytes read from the input and the start and end of the unread ones
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int position;
+    private int limit;
+
+    // holds a line that spans more than one buffer load
+    private byte[] line = new byte[1024];
+
+    private boolean skipMalformedLines;
+    private long bytesRead;
+    private long lineNumber;
+    private long malformedLines;
+
+    private T next;
+    private boolean ready;
+    private boolean closed;
+
+
+    /**
+     * This constructor creates a new iterator that uses the specified reader to read each line
+     * from the specified input stream.
+     *
+     * @param reader The reader for the type of object on each line.
+     * @param input The input stream containing the JSON lines.
+     * @param totalBytes The total number of bytes in the input stream, or -1 if unknown.
+     */
+    JsonLinesIterator(ObjectReader reader, InputStream input, long totalBytes) {
+        this.reader = reader;
+        this.input = input;
+        this.totalBytes = totalBytes;
+    }
+
+
+    /**
+     * This method configures whether lines that cannot be parsed are skipped and counted rather
+     * than causing an exception to be thrown. By default malformed lines are not skipped.
+     *
+     * @param skipMalformedLines Whether or not malformed lines should be skipped.
+     * @return This iterator.
+     */
+    public JsonLinesIterator<T> skipMalformedLines(boolean skipMalformedLines) {
+        this.skipMalformedLines = skipMalformedLines;
+        return this;
+    }
+
+
+    /**
+     * This method returns the number of bytes that have been consumed from the input so far.
+     * It can be compared with the result of <code>getTotalBytes()</code> to report progress.
+     *
+     * @return The number of bytes consumed.
+     */
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+
+    /**
+     * This method returns the total number of bytes in the input if it is known.
+     *
+     * @return The total number of bytes, or -1 if it is not known.
+     */
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+
+    /**
+     * This method returns the number of the last line that was read, starting with one.
+     *
+     * @return The current line number.
+     */
+    public long getLineNumber() {
+        return lineNumber;
+    }
+
+
+    /**
+     * This method returns the number of malformed lines that have been skipped so far.
+     *
+     * @return The number of malformed lines.
+     */
+    public long getMalformedLines() {
+        return malformedLines;
+    }
+
+
+    @Override
+    public boolean hasNext() {
+        if (!ready && !closed) {
+            try {
+                ready = advance();
+            } catch (IOException e) {
+                throw new RuntimeException("The attempt to read line " + lineNumber + " failed", e);
+            }
+        }
+        return ready;
+    }
+
+
+    @Override
+    public T next() {
+        if (!hasNext()) throw new NoSuchElementException("There are no more lines to be read.");
+        T result = next;
+        next = null;
+        ready = false;
+        return result;
+    }
+
+
+    /**
+     * This method returns a sequential stream of the remaining objects. Closing the stream
+     * closes this iterator.
+     *
+     * @return A stream of the remaining objects.
+     */
+    public Stream<T> stream() {
+        Spliterator<T> spliterator = Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED);
+        return StreamSupport.stream(spliterator, false).onClose(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    close();
+                } catch (IOException e) {
+                    throw new RuntimeException("The attempt to close the input stream failed", e);
+                }
+            }
+        });
+    }
+
+
+    @Override
+    public void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            ready = false;
+            next = null;
+            input.close();
+        }
+    }
+
+
+    /*
+     * This method reads lines until it finds one that is not blank and parses it into the next
+     * object. It returns false and closes the input when there are no more lines.
+     */
+    private boolean advance() throws IOException {
+        while (true) {
+            // find the end of the next line, loading more bytes as needed
+            int end = indexOfNewline(position);
+            byte[] bytes = buffer;
+            int start = position;
+            int length;
+            if (end >= 0) {
+                // the entire line is in the buffer so parse it in place
+                length = end - start;
+                position = end + 1;
+                bytesRead += length + 1;
+            } else {
+                length = readSpanningLine();
+                if (length < 0) {
+                    close();
+                    return false;
+                }
+                bytes = line;
+                start = 0;
+                bytesRead += length + (position > 0 ? 1 : 0);  // the last line may have no newline
+            }
+            lineNumber++;
+            if (length > 0 && bytes[start + length - 1] == '\r') length--;
+            if (isBlank(bytes, start, length)) continue;
+            try {
+                next = reader.readValue(bytes, start, length);
+                return true;
+            } catch (JsonProcessingException e) {
+                if (!skipMalformedLines) {
+                    throw new RuntimeException("The attempt to parse line " + lineNumber + " failed", e);
+                }
+                malformedLines++;
+                logger.warn("Skipping malformed line {}: {}", lineNumber, e.getOriginalMessage());
+            }
+        }
+    }
+
+
+    /*
+     * This method copies a line that is not entirely contained in the buffer into the line array,
+     * loading more of the input as needed. It returns the length of the line, or -1 if there are
+     * no more lines. The position is left just after the newline, or at zero if the input ended.
+     */
+    private int readSpanningLine() throws IOException {
+        int length = 0;
+        while (true) {
+            int end = indexOfNewline(position);
+            int count = (end >= 0 ? end : limit) - position;
+            if (length + count > line.length) {
+                byte[] larger = new byte[Math.max(length + count, 2 * line.length)];
+                System.arraycopy(line, 0, larger, 0, length);
+                line = larger;
+            }
+            System.arraycopy(buffer, position, line, length, count);
+            length += count;
+            if (end >= 0) {
+                position = end + 1;
+                return length;
+            }
+            position = 0;
+            limit = input.read(buffer, 0, buffer.length);
+            if (limit < 0) {
+                limit = 0;
+                return length > 0 ? length : -1;  // the last line need not end with a newline
+            }
+        }
+    }
+
+
+    private int indexOfNewline(int from) {
+        for (int i = from; i < limit; i++) {
+            if (buffer[i] == '\n') return i;
+        }
+        return -1;
+    }
+
+
+    static private boolean isBlank(byte[] bytes, int start, int length) {
+        for (int i = start; i < start + length; i++) {
+            byte character = bytes[i];
+            if (character != ' ' && character != '\t' && character != '\r') return false;
+        }
+        return true;
+    }
+
+}
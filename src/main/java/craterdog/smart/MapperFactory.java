@@ -0,0 +1,255 @@
+/************************************************************************
+ * Copyright (c) Crater Dog Technologies(TM).  All Rights Reserved.     *
+ ************************************************************************
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.        *
+ *                                                                      *
+ * This code is free software; you can redistribute it and/or modify it *
+ * under the terms of The MIT License (MIT), as published by the Open   *
+ * Source Initiative. (See http://opensource.org/licenses/MIT)          *
+ ************************************************************************/
+package craterdog.smart;
+
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.Module;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.joda.JodaModule;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class creates the object mappers that are handed out by <code>SmartObject.createMapper()</code>.
+ * The fully configured mapper for each set of modules is cached as a prototype, so the
+ * construction of a mapper and the registration of its modules only happen once per set of
+ * modules. The modules are identified by their classes, so only modules whose classes are known
+ * to be stateless are cached, since any two instances of such a class configure a mapper the same
+ * way. A mapper with any other module is built from scratch each time it is requested.
+ *
+ * @author Derk Norton
+ */
+public class MapperFactory {
+
+    // the maximum number of mapper prototypes that are cached
+    static private final int MAXIMUM_CACHED_PROTOTYPES = 32;
+
+    // the types that every mapper handles, their serializers are resolved when a prototype is created
+    static private final Class<?>[] COMMON_TYPES = {
+        craterdog.primitives.Angle.class,
+        craterdog.primitives.BinaryString.class,
+        craterdog.primitives.Probability.class,
+        craterdog.primitives.Tag.class,
+        craterdog.primitives.TextString.class,
+        java.net.URI.class,
+        java.util.Date.class,
+        org.joda.time.DateTime.class
+    };
+
+    // the module classes whose instances are known to be stateless and therefore interchangeable
+    static private final Set<Class<?>> statelessModules = ConcurrentHashMap.newKeySet();
+    static {
+        statelessModules.add(AccessorModule.class);
+        statelessModules.add(CensorshipModule.class);
+        statelessModules.add(JodaModule.class);
+    }
+
+    // a bounded cache of the mapper prototypes keyed by the classes of their modules
+    static private final ConcurrentHashMap<List<Class<?>>, Prototype> prototypes = new ConcurrentHashMap<>();
+    static private final LongAdder cacheHits = new LongAdder();
+    static private final LongAdder cacheMisses = new LongAdder();
+    static private final LongAdder cacheEvictions = new LongAdder();
+
+
+    private MapperFactory() {
+    }
+
+
+    /**
+     * This function returns a new object mapper with the specified modules. If the modules are
+     * stateless the mapper is a copy of the cached prototype for the modules, otherwise it is
+     * built from scratch. Either way it may be reconfigured freely without affecting any other
+     * mappers. A copy shares the configuration of the prototype but not the serializers and
+     * deserializers that any other mapper has resolved, it resolves its own when they are first
+     * used. So only the construction of the mapper and the registration of its modules are saved.
+     *
+     * @param modules The modules that should be added to the object mapper.
+     * @return A new object mapper containing the specified modules.
+     */
+    static public ObjectMapper createMapper(Module... modules) {
+        if (!isStateless(modules)) return new SmartObjectMapper(modules);
+        return prototypeFor(modules).mapper.copy();
+    }
+
+
+    /**
+     * This function returns the shared object mapper with the specified modules. The shared mapper
+     * is returned to all callers that ask for the same stateless modules, so it keeps the
+     * serializers and deserializers it has already resolved, and the serializers for the common
+     * types are resolved before it is first returned. It is a copy of the cached prototype, so
+     * the mappers returned by <code>createMapper()</code> are not affected by it. Since it is
+     * shared it should not be reconfigured by the caller, use <code>createMapper()</code> to get
+     * a mapper that can be reconfigured. If any of the modules is not known to be stateless, a
+     * new mapper that is not shared is returned instead.
+     *
+     * @param modules The modules that should be added to the object mapper.
+     * @return The shared object mapper containing the specified modules.
+     */
+    static public ObjectMapper getSharedMapper(Module... modules) {
+        if (!isStateless(modules)) return new SmartObjectMapper(modules);
+        Prototype prototype = prototypeFor(modules);
+        SmartObjectMapper shared = prototype.shared;
+        if (shared == null) {
+            synchronized (prototype) {
+                shared = prototype.shared;
+                if (shared == null) {
+                    shared = prototype.mapper.copy();
+                    warmUp(shared);
+                    prototype.shared = shared;
+                }
+            }
+        }
+        return shared;
+    }
+
+
+    /**
+     * This function adds the specified module class to the classes whose instances are known to
+     * be stateless. Any two instances of such a class must configure a mapper in exactly the same
+     * way, so that the mapper prototypes for them can be cached and shared.
+     *
+     * @param type The stateless module class.
+     */
+    static public void registerStatelessModule(Class<? extends Module> type) {
+        statelessModules.add(type);
+    }
+
+
+    /**
+     * This function returns the number of times that a mapper prototype was found in the cache.
+     *
+     * @return The number of cache hits.
+     */
+    static public long getCacheHits() {
+        return cacheHits.sum();
+    }
+
+
+    /**
+     * This function returns the number of times that a mapper prototype had to be created because
+     * it was not found in the cache.
+     *
+     * @return The number of cache misses.
+     */
+    static public long getCacheMisses() {
+        return cacheMisses.sum();
+    }
+
+
+    /**
+     * This function returns the number of mapper prototypes that were removed from the cache to
+     * make room for other prototypes.
+     *
+     * @return The number of cache evictions.
+     */
+    static public long getCacheEvictions() {
+        return cacheEvictions.sum();
+    }
+
+
+    /**
+     * This function returns the number of mapper prototypes that are currently cached.
+     *
+     * @return The size of the cache.
+     */
+    static public int getCacheSize() {
+        return prototypes.size();
+    }
+
+
+    /**
+     * This function removes all mapper prototypes from the cache and resets its statistics.
+     */
+    static public void clearCache() {
+        prototypes.clear();
+        cacheHits.reset();
+        cacheMisses.reset();
+        cacheEvictions.reset();
+    }
+
+
+    /**
+     * This function returns the prototype for the specified stateless modules from the cache,
+     * creating and caching it if necessary. If the cache is full an arbitrary entry is evicted to
+     * make room.
+     *
+     * @param modules The modules.
+     * @return The prototype for the modules.
+     */
+    static private Prototype prototypeFor(Module... modules) {
+        List<Class<?>> key = keyFor(modules);
+        Prototype prototype = prototypes.get(key);
+        if (prototype != null) {
+            cacheHits.increment();
+            return prototype;
+        }
+        cacheMisses.increment();
+        prototype = new Prototype(new SmartObjectMapper(modules));
+        while (prototypes.size() >= MAXIMUM_CACHED_PROTOTYPES) {
+            Iterator<List<Class<?>>> iterator = prototypes.keySet().iterator();
+            if (!iterator.hasNext()) break;
+            if (prototypes.remove(iterator.next()) != null) cacheEvictions.increment();
+        }
+        Prototype existing = prototypes.putIfAbsent(key, prototype);
+        return existing != null ? existing : prototype;
+    }
+
+
+    static private boolean isStateless(Module... modules) {
+        for (Module module : modules) {
+            if (!statelessModules.contains(module.getClass())) return false;
+        }
+        return true;
+    }
+
+
+    static private List<Class<?>> keyFor(Module... modules) {
+        List<Class<?>> key = new ArrayList<>(modules.length);
+        for (Module module : modules) {
+            key.add(module.getClass());
+        }
+        return key;
+    }
+
+
+
+    static private void warmUp(SmartObjectMapper mapper) {
+        for (Class<?> type : COMMON_TYPES) {
+            try {
+                mapper.warmUp(type);
+            } catch (JsonMappingException e) {
+                // the type is resolved again (and the problem reported) when it is first used
+            }
+        }
+        mapper.compactWriter();
+    }
+
+
+    /**
+     * This class holds a cached mapper prototype, which is only ever copied and never handed out,
+     * along with the shared copy of it that has been warmed up, if one has been requested. Only
+     * the shared copy is warmed up since the other copies would not inherit its serializers.
+     */
+    static private class Prototype {
+
+        private final SmartObjectMapper mapper;
+        private volatile SmartObjectMapper shared;
+
+        Prototype(SmartObjectMapper mapper) {
+            this.mapper = mapper;
+        }
+
+    }
+
+}
@@ -0,0 +1,84 @@
+/************************************************************************
+ * Copyright (c) Crater Dog Technologies(TM).  All Rights Reserved.     *
+ ************************************************************************
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.        *
+ *                                                                      *
+ * This code is free software; you can redistribute it and/or modify it *
+ * under the terms of The MIT License (MIT), as published by the Open   *
+ * Source Initiative. (See http://opensource.org/licenses/MIT)          *
+ ************************************************************************/
+package craterdog.smart;
+
+import com.fasterxml.jackson.databind.Module;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * This annotation is used to mark smart object classes that need mixins or modules which should
+ * not affect any other smart object classes. The instances of a marked class are serialized by
+ * mappers that are derived from the shared mappers and have the mixins and modules added. This
+ * applies wherever an instance appears, whether it is the value being serialized or deserialized
+ * or it is nested inside another object, a collection or a map, including the values of a bulk
+ * read or write. The values nested inside an instance are handled by the derived mappers too,
+ * unless they declare a scope of their own. The derived mappers are cached by their
+ * configuration, so all classes that declare the same mixins and modules share the same mappers.
+ * The annotation is inherited by subclasses.
+ * <p>
+ * For example:
+ * <pre>
+ * &#64;MapperScope(mixIns = &#64;MapperScope.MixIn(target = Color.class), modules = MoneyModule.class)
+ * public class Paint extends SmartObject&lt;Paint&gt; {
+ *     ...
+ * }
+ * </pre>
+ *
+ * @author Derk Norton
+ */
+@Inherited
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface MapperScope {
+
+    /**
+     * The mixins that should be used by the mappers for the marked class.
+     *
+     * @return The mixins.
+     */
+    public MixIn[] mixIns() default {};
+
+    /**
+     * The module classes that should be registered with the mappers for the marked class. Each
+     * module class must have a public constructor that takes no arguments.
+     *
+     * @return The module classes.
+     */
+    public Class<? extends Module>[] modules() default {};
+
+    /**
+     * This annotation pairs a class with the mixin class that should be used to serialize it.
+     */
+    @Retention(RetentionPolicy.RUNTIME)
+    @Target({})
+    public @interface MixIn {
+
+        /**
+         * The class whose serialization is being changed.
+         *
+         * @return The target class.
+         */
+        public Class<?> target();
+
+        /**
+         * The mixin class containing the annotations for the target class. The default mixin
+         * serializes the target class using its toString() method.
+         *
+         * @return The mixin class.
+         */
+        public Class<?> mixin() default UseToStringAsValueMixIn.class;
+
+    }
+
+}
@@ -0,0 +1,161 @@
+/************************************************************************
+ * Copyright (c) Crater Dog Technologies(TM).  All Rights Reserved.     *
+ ************************************************************************
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.        *
+ *                                                                      *
+ * This code is free software; you can redistribute it and/or modify it *
+ * under the terms of The MIT License (MIT), as published by the Open   *
+ * Source Initiative. (See http://opensource.org/licenses/MIT)          *
+ ************************************************************************/
+package craterdog.smart;
+
+import com.fasterxml.jackson.databind.Module;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class captures a consistent set of the mappers that are used by smart objects along with
+ * the comparator that follows the rules of the full mapper. A snapshot is never reconfigured once
+ * it has been published. Instead, a changed copy of the snapshot is created and published in its
+ * place, so serializations that are in progress are never affected by a configuration change.
+ *
+ * @author Derk Norton
+ */
+final class MapperSnapshot {
+
+    // a safe mapper that censors any sensitive attributes marked with the @Sensitive annotation
+    final SmartObjectMapper safeMapper;
+
+    // a full mapper that outputs all attributes as stored
+    final SmartObjectMapper fullMapper;
+
+    // binary versions of the mappers that use the same rules to read and write the Smile format
+    final SmartObjectMapper safeBinaryMapper;
+    final SmartObjectMapper fullBinaryMapper;
+
+    // a comparator that compares objects structurally using the rules of the full mapper
+    final StructuralComparator comparator;
+
+    // the snapshots that have been derived from this one for each scope that has been used
+    private final ConcurrentHashMap<ScopeFingerprint, MapperSnapshot> scopes = new ConcurrentHashMap<>();
+
+
+    /**
+     * This constructor creates the initial snapshot of the mappers. The mappers use generated
+     * accessors if the <code>craterdog.smart.generatedAccessors</code> system property is set to
+     * <code>true</code>.
+     */
+    MapperSnapshot() {
+        this(Boolean.getBoolean("craterdog.smart.generatedAccessors"));
+    }
+
+
+    /**
+     * This constructor creates an initial snapshot of the mappers.
+     *
+     * @param generatedAccessors Whether or not the mappers use generated accessors.
+     */
+    MapperSnapshot(boolean generatedAccessors) {
+        this(null, ScopeFingerprint.NONE,
+                new SmartObjectMapper(modules(generatedAccessors, new ScopeModule(), new CensorshipModule())),
+                new SmartObjectMapper(modules(generatedAccessors, new ScopeModule())),
+                new SmartObjectMapper(new SmileFactory(), modules(generatedAccessors, new ScopeModule(), new CensorshipModule())),
+                new SmartObjectMapper(new SmileFactory(), modules(generatedAccessors, new ScopeModule())));
+    }
+
+
+    /*
+     * This constructor creates a snapshot from the specified mappers and binds each of them to
+     * the unscoped snapshot it belongs to, so that the scope module can find the corresponding
+     * mapper for any scoped class. A base of null means that this is an unscoped snapshot.
+     */
+    private MapperSnapshot(MapperSnapshot base, ScopeFingerprint scope, SmartObjectMapper safeMapper,
+            SmartObjectMapper fullMapper, SmartObjectMapper safeBinaryMapper, SmartObjectMapper fullBinaryMapper) {
+        this.safeMapper = safeMapper;
+        this.fullMapper = fullMapper;
+        this.safeBinaryMapper = safeBinaryMapper;
+        this.fullBinaryMapper = fullBinaryMapper;
+        this.comparator = new StructuralComparator(fullMapper);
+        if (base == null) base = this;
+        ScopeModule.bind(safeMapper, base, scope, snapshot -> snapshot.safeMapper);
+        ScopeModule.bind(fullMapper, base, scope, snapshot -> snapshot.fullMapper);
+        ScopeModule.bind(safeBinaryMapper, base, scope, snapshot -> snapshot.safeBinaryMapper);
+        ScopeModule.bind(fullBinaryMapper, base, scope, snapshot -> snapshot.fullBinaryMapper);
+    }
+
+
+    /**
+     * This method returns a copy of this snapshot in which each mapper uses the specified mixin
+     * for the specified class.
+     *
+     * @param target The class whose serialization is being changed.
+     * @param mixin The mixin class containing the annotations for the target class.
+     * @return The new snapshot.
+     */
+    MapperSnapshot withMixIn(Class<?> target, Class<?> mixin) {
+        return derive(ScopeFingerprint.NONE, Collections.<Class<?>, Class<?>>singletonMap(target, mixin),
+                Collections.<Module>emptyList());
+    }
+
+
+    /**
+     * This method returns a copy of this snapshot in which each mapper has the specified module
+     * registered.
+     *
+     * @param module The module to be registered.
+     * @return The new snapshot.
+     */
+    MapperSnapshot withModule(Module module) {
+        return derive(ScopeFingerprint.NONE, Collections.<Class<?>, Class<?>>emptyMap(), Collections.singletonList(module));
+    }
+
+
+    /**
+     * This method returns a snapshot that is derived from this snapshot and also uses the mixins
+     * and modules of the specified scope. The derived snapshots are cached, so each scope is only
+     * derived once per snapshot and the serializers that its mappers build are reused.
+     *
+     * @param scope The fingerprint of the scope.
+     * @return The derived snapshot.
+     */
+    MapperSnapshot scoped(ScopeFingerprint scope) {
+        if (scope == ScopeFingerprint.NONE) return this;
+        MapperSnapshot snapshot = scopes.get(scope);
+        if (snapshot == null) {
+            snapshot = derive(scope, scope.getMixIns(), scope.createModules());
+            MapperSnapshot existing = scopes.putIfAbsent(scope, snapshot);
+            if (existing != null) snapshot = existing;
+        }
+        return snapshot;
+    }
+
+
+    static private Module[] modules(boolean generatedAccessors, Module... modules) {
+        if (!generatedAccessors) return modules;
+        Module[] result = Arrays.copyOf(modules, modules.length + 1);
+        result[modules.length] = new AccessorModule();
+        return result;
+    }
+
+
+    private MapperSnapshot derive(ScopeFingerprint scope, Map<Class<?>, Class<?>> mixIns, List<Module> modules) {
+        SmartObjectMapper[] copies = {
+            safeMapper.copy(), fullMapper.copy(), safeBinaryMapper.copy(), fullBinaryMapper.copy()
+        };
+        for (SmartObjectMapper copy : copies) {
+            for (Map.Entry<Class<?>, Class<?>> entry : mixIns.entrySet()) {
+                copy.addMixIn(entry.getKey(), entry.getValue());
+            }
+            for (Module module : modules) {
+                copy.registerModule(module);
+            }
+        }
+        MapperSnapshot base = scope == ScopeFingerprint.NONE ? null : this;
+        return new MapperSnapshot(base, scope, copies[0], copies[1], copies[2], copies[3]);
+    }
+
+}
@@ -0,0 +1,680 @@
+/************************************************************************
+ * Copyright (c) Crater Dog Technologies(TM).  All Rights Reserved.     *
+ ************************************************************************
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.        *
+ *                                                                      *
+ * This code is free software; you can redistribute it and/or modify it *
+ * under the terms of The MIT License (MIT), as published by the Open   *
+ * Source Initiative. (See http://opensource.org/licenses/MIT)          *
+ ************************************************************************/
+package craterdog.smart;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * This class matches a mask against a value by simulating a non-deterministic finite automaton
+ * for the mask. Unlike the backtracking <code>java.util.regex.Matcher</code>, the time it takes is
+ * always linear in the length of the value, so a mask can never be made to run away by a value
+ * that is chosen to trigger catastrophic backtracking.
+ * <p>
+ * The automaton supports the parts of the regular expression syntax that masks actually use:
+ * literals, character classes, the "." wildcard, capturing and non-capturing groups, alternation,
+ * greedy and lazy quantifiers, and the "^" and "$" anchors. The threads of the automaton are
+ * explored in priority order, so it finds exactly the same groups as the matcher would. Masks that
+ * use anything else (e.g. back references, look arounds or flags) are not supported.
+ *
+ * @author Derk Norton
+ */
+final class MaskAutomaton {
+
+    static private final int MAXIMUM_PROGRAM_SIZE = 2000;
+    static private final int UNBOUNDED = Integer.MAX_VALUE;
+
+    // the instructions of the automaton program
+    static private final int CHARACTER = 0;
+    static private final int SPLIT = 1;
+    static private final int JUMP = 2;
+    static private final int SAVE = 3;
+    static private final int BEGIN = 4;
+    static private final int END = 5;
+    static private final int MATCH = 6;
+
+    private final int[] operations;
+    private final int[] firsts;  // the character set, preferred branch, jump target or capture slot
+    private final int[] seconds;  // the other branch of a split
+    private final CharacterSet[] sets;
+    private final int groups;
+    private final int slots;
+
+
+    private MaskAutomaton(Compiler compiler, int groups) {
+        int size = compiler.size;
+        this.operations = Arrays.copyOf(compiler.operations, size);
+        this.firsts = Arrays.copyOf(compiler.firsts, size);
+        this.seconds = Arrays.copyOf(compiler.seconds, size);
+        this.sets = compiler.sets.toArray(new CharacterSet[compiler.sets.size()]);
+        this.groups = groups;
+        this.slots = 2 * (groups + 1);
+    }
+
+
+    /**
+     * This function attempts to compile the specified mask into an automaton. The mask must already
+     * have been validated as a regular expression.
+     *
+     * @param mask The mask.
+     * @return The automaton for the mask, or null if the mask uses unsupported features.
+     */
+    static MaskAutomaton compile(String mask) {
+        Parser parser = new Parser(mask);
+        Node node = parser.parse();
+        if (node == null) return null;
+        Compiler compiler = new Compiler();
+        if (!compiler.emit(node) || !compiler.add(MATCH, 0, 0)) return null;
+        return new MaskAutomaton(compiler, parser.groups);
+    }
+
+
+    /**
+     * This method creates the workspace that is needed to run this automaton. A workspace may be
+     * reused but not shared between threads.
+     *
+     * @return A new workspace.
+     */
+    Workspace newWorkspace() {
+        return new Workspace(operations.length, slots);
+    }
+
+
+    /**
+     * This method finds the first match of the mask in the specified value and stores the start
+     * and end of each group in the specified array. A group that did not participate in the match
+     * has a start and end of -1.
+     *
+     * @param value The value to be matched.
+     * @param bounds The array that will contain the start and end of each group.
+     * @param workspace The workspace to be used.
+     * @return The number of groups, -1 if the value does not match the mask, or
+     * <code>MaskScanner.UNSUPPORTED</code> if the value contains surrogate characters.
+     */
+    int match(String value, int[] bounds, Workspace workspace) {
+        int length = value.length();
+        ThreadList current = workspace.current;
+        ThreadList next = workspace.next;
+        int[] captures = workspace.captures;
+        int[] best = workspace.best;
+        boolean matched = false;
+        current.clear();
+        for (int position = 0; position <= length; position++) {
+            if (!matched) {
+                // start a new thread with the lowest priority at each position until there is a match
+                Arrays.fill(captures, -1);
+                addThread(current, 0, captures, position, value, workspace.stack);
+            }
+            if (current.size == 0) break;
+            char character = position < length ? value.charAt(position) : '\0';
+            if (position < length && Character.isSurrogate(character)) {
+                return MaskScanner.UNSUPPORTED;  // the matcher matches code points rather than characters
+            }
+            next.clear();
+            for (int i = 0; i < current.size; i++) {
+                int pc = current.dense[i];
+                int operation = operations[pc];
+                if (operation == MATCH) {
+                    // all remaining threads have a lower priority
+                    matched = true;
+                    System.arraycopy(current.captures[pc], 0, best, 0, slots);
+                    break;
+                }
+                if (operation == CHARACTER && position < length && sets[firsts[pc]].matches(character)) {
+                    addThread(next, pc + 1, current.captures[pc], position + 1, value, workspace.stack);
+                }
+            }
+            ThreadList swap = current;
+            current = next;
+            next = swap;
+        }
+        workspace.current = current;
+        workspace.next = next;
+        if (!matched) return -1;
+        for (int group = 1; group <= groups; group++) {
+            bounds[2 * group - 2] = best[2 * group];
+            bounds[2 * group - 1] = best[2 * group + 1];
+        }
+        return groups;
+    }
+
+
+    /*
+     * This method follows all of the instructions that don't consume a character starting at the
+     * specified instruction and adds the resulting threads to the list in priority order. It uses
+     * an explicit stack so that large masks cannot overflow the call stack.
+     */
+    private void addThread(ThreadList list, int start, int[] captures, int position, String value, int[] stack) {
+        int top = 0;
+        stack[top++] = start;
+        while (top > 0) {
+            int pc = stack[--top];
+            if (pc < 0) {
+                // restore the capture slot that was saved by an earlier branch
+                captures[-pc - 1] = stack[--top];
+                continue;
+            }
+            if (list.contains(pc)) continue;
+            list.add(pc);
+            switch (operations[pc]) {
+                case JUMP:
+                    stack[top++] = firsts[pc];
+                    break;
+                case SPLIT:
+                    stack[top++] = seconds[pc];
+                    stack[top++] = firsts[pc];
+                    break;
+                case SAVE:
+                    stack[top++] = captures[firsts[pc]];
+                    stack[top++] = -firsts[pc] - 1;
+                    captures[firsts[pc]] = position;
+                    stack[top++] = pc + 1;
+                    break;
+                case BEGIN:
+                    if (position == 0) stack[top++] = pc + 1;
+                    break;
+                case END:
+                    if (MaskScanner.isAtEnd(value, position)) stack[top++] = pc + 1;
+                    break;
+                default:
+                    System.arraycopy(captures, 0, list.captures[pc], 0, slots);
+            }
+        }
+    }
+
+
+    /**
+     * This class holds the state needed to run an automaton.
+     */
+    static class Workspace {
+
+        private ThreadList current;
+        private ThreadList next;
+        private final int[] captures;
+        private final int[] best;
+        private final int[] stack;
+
+        private Workspace(int size, int slots) {
+            this.current = new ThreadList(size, slots);
+            this.next = new ThreadList(size, slots);
+            this.captures = new int[slots];
+            this.best = new int[slots];
+            this.stack = new int[3 * size + 1];
+        }
+
+    }
+
+
+    /**
+     * This class is an ordered set of the threads of an automaton, each with its own captures.
+     */
+    static private class ThreadList {
+
+        final int[] dense;
+        final int[] sparse;
+        final int[][] captures;
+        int size;
+
+        ThreadList(int size, int slots) {
+            this.dense = new int[size];
+            this.sparse = new int[size];
+            this.captures = new int[size][slots];
+        }
+
+        boolean contains(int pc) {
+            int index = sparse[pc];
+            return index < size && dense[index] == pc;
+        }
+
+        void add(int pc) {
+            sparse[pc] = size;
+            dense[size++] = pc;
+        }
+
+        void clear() {
+            size = 0;
+        }
+
+    }
+
+
+    /**
+     * This class is a set of characters. The ASCII characters are stored as bits, and the set either
+     * contains all other characters except for the exceptions, or none of them except for the
+     * exceptions.
+     */
+    static private class CharacterSet {
+
+        long lows;
+        long highs;
+        boolean others;
+        String exceptions = "";
+
+        boolean matches(char character) {
+            if (character < 64) return (lows >>> character & 1L) != 0;
+            if (character < 128) return (highs >>> (character - 64) & 1L) != 0;
+            return others ^ exceptions.indexOf(character) >= 0;
+        }
+
+        void add(char first, char last) {
+            for (char character = first; character <= last; character++) {
+                if (character < 64) lows |= 1L << character;
+                else if (character < 128) highs |= 1L << (character - 64);
+                else if (!matches(character)) toggle(character);
+            }
+        }
+
+        void add(CharacterSet set) {
+            lows |= set.lows;
+            highs |= set.highs;
+            StringBuilder builder = new StringBuilder();
+            for (char character : (exceptions + set.exceptions).toCharArray()) {
+                boolean member = matches(character) || set.matches(character);
+                if (member != (others || set.others) && builder.indexOf(String.valueOf(character)) < 0) {
+                    builder.append(character);
+                }
+            }
+            others |= set.others;
+            exceptions = builder.toString();
+        }
+
+        void negate() {
+            lows = ~lows;
+            highs = ~highs;
+            others = !others;
+        }
+
+        private void toggle(char character) {
+            int index = exceptions.indexOf(character);
+            exceptions = index < 0 ? exceptions + character
+                    : exceptions.substring(0, index) + exceptions.substring(index + 1);
+        }
+
+    }
+
+
+    /**
+     * This class is a node in the syntax tree of a mask.
+     */
+    static private class Node {
+
+        static final int SET = 0;
+        static final int SEQUENCE = 1;
+        static final int ALTERNATION = 2;
+        static final int REPEAT = 3;
+        static final int GROUP = 4;
+        static final int START_ANCHOR = 5;
+        static final int END_ANCHOR = 6;
+
+        final int kind;
+        final List<Node> children = new ArrayList<>();
+        CharacterSet set;
+        int minimum;
+        int maximum;
+        boolean greedy;
+        int group;
+
+        Node(int kind) {
+            this.kind = kind;
+        }
+
+        boolean isNullable() {
+            switch (kind) {
+                case SET:
+                    return false;
+                case SEQUENCE:
+                    for (Node child : children) {
+                        if (!child.isNullable()) return false;
+                    }
+                    return true;
+                case ALTERNATION:
+                    for (Node child : children) {
+                        if (child.isNullable()) return true;
+                    }
+                    return false;
+                case REPEAT:
+                    return minimum == 0 || children.get(0).isNullable();
+                case GROUP:
+                    return children.get(0).isNullable();
+                default:
+                    return true;
+            }
+        }
+
+    }
+
+
+    /**
+     * This class parses a mask into a syntax tree, giving up as soon as it finds anything that the
+     * automaton does not support.
+     */
+    static private class Parser {
+
+        private final String mask;
+        private int index;
+        int groups;
+
+        Parser(String mask) {
+            this.mask = mask;
+        }
+
+        Node parse() {
+            Node node = parseAlternation();
+            return index == mask.length() ? node : null;
+        }
+
+        private char peek() {
+            return index < mask.length() ? mask.charAt(index) : '\0';
+        }
+
+        private Node parseAlternation() {
+            Node alternation = new Node(Node.ALTERNATION);
+            while (true) {
+                Node sequence = parseSequence();
+                if (sequence == null) return null;
+                alternation.children.add(sequence);
+                if (peek() != '|') break;
+                index++;
+            }
+            return alternation.children.size() == 1 ? alternation.children.get(0) : alternation;
+        }
+
+        private Node parseSequence() {
+            Node sequence = new Node(Node.SEQUENCE);
+            while (index < mask.length() && peek() != '|' && peek() != ')') {
+                Node atom = parseAtom();
+                if (atom == null) return null;
+                if (atom.kind != Node.START_ANCHOR && atom.kind != Node.END_ANCHOR) {
+                    atom = parseQuantifier(atom);
+                    if (atom == null) return null;
+                }
+                sequence.children.add(atom);
+            }
+            return sequence;
+        }
+
+        private Node parseAtom() {
+            char character = mask.charAt(index++);
+            Node node;
+            switch (character) {
+                case '(':
+                    node = new Node(Node.GROUP);
+                    if (peek() == '?') {
+                        // only non-capturing groups are supported
+                        if (index + 1 >= mask.length() || mask.charAt(index + 1) != ':') return null;
+                        index += 2;
+                        node.group = -1;
+                    } else {
+                        node.group = ++groups;
+                    }
+                    Node child = parseAlternation();
+                    if (child == null || peek() != ')') return null;
+                    index++;
+                    node.children.add(child);
+                    return node;
+                case '^':
+                    return new Node(Node.START_ANCHOR);
+                case '$':
+                    return new Node(Node.END_ANCHOR);
+                case '[':
+                    return set(parseBracket());
+                case '\\':
+                    return set(parseEscape());
+                case '.':
+                    CharacterSet set = new CharacterSet();
+                    set.add('\n', '\n');
+                    set.add('\r', '\r');
+                    set.add('\u0085', '\u0085');
+                    set.add('\u2028', '\u2029');
+                    set.negate();
+                    return set(set);
+                case '*': case '+': case '?': case '{':
+                    return null;
+                default:
+                    if (Character.isSurrogate(character)) return null;
+                    set = new CharacterSet();
+                    set.add(character, character);
+                    return set(set);
+            }
+        }
+
+        private Node set(CharacterSet set) {
+            if (set == null) return null;
+            Node node = new Node(Node.SET);
+            node.set = set;
+            return node;
+        }
+
+        private CharacterSet parseEscape() {
+            if (index >= mask.length()) return null;
+            char character = mask.charAt(index++);
+            CharacterSet set = new CharacterSet();
+            switch (character) {
+                case 'd': case 'D':
+                    set.add('0', '9');
+                    break;
+                case 'w': case 'W':
+                    set.add('a', 'z');
+                    set.add('A', 'Z');
+                    set.add('0', '9');
+                    set.add('_', '_');
+                    break;
+                case 's': case 'S':
+                    set.add('\t', '\r');
+                    set.add(' ', ' ');
+                    break;
+                case 't':
+                    set.add('\t', '\t');
+                    return set;
+                case 'n':
+                    set.add('\n', '\n');
+                    return set;
+                case 'r':
+                    set.add('\r', '\r');
+                    return set;
+                case 'f':
+                    set.add('\f', '\f');
+                    return set;
+                default:
+                    // only escaped punctuation is treated as a literal
+                    if (character >= 128 || Character.isLetterOrDigit(character)) return null;
+                    set.add(character, character);
+                    return set;
+            }
+            if (Character.isUpperCase(character)) set.negate();
+            return set;
+        }
+
+        private CharacterSet parseBracket() {
+            CharacterSet set = new CharacterSet();
+            boolean negated = peek() == '^';
+            if (negated) index++;
+            if (peek() == ']') return null;
+            int start = index;
+            while (index < mask.length()) {
+                char character = mask.charAt(index++);
+                if (character == ']') {
+                    if (negated) set.negate();
+                    return set;
+                }
+                if (character == '[' || character == '&' || Character.isSurrogate(character)) return null;
+                // a hyphen is only treated as a literal at the start or end of the class
+                if (character == '-' && index - 1 > start && peek() != ']') return null;
+                if (character == '\\') {
+                    CharacterSet escaped = parseEscape();
+                    if (escaped == null || peek() == '-' && index + 1 < mask.length() && mask.charAt(index + 1) != ']') {
+                        return null;
+                    }
+                    set.add(escaped);
+                } else if (peek() == '-' && index + 1 < mask.length() && mask.charAt(index + 1) != ']') {
+                    char last = mask.charAt(index + 1);
+                    // ranges of other characters would need too many exceptions
+                    if (last == '\\' || last == '[' || last >= 128 || last < character) return null;
+                    set.add(character, last);
+                    index += 2;
+                } else {
+                    set.add(character, character);
+                }
+            }
+            return null;
+        }
+
+        private Node parseQuantifier(Node atom) {
+            int minimum;
+            int maximum;
+            switch (peek()) {
+                case '?':
+                    minimum = 0;
+                    maximum = 1;
+                    break;
+                case '*':
+                    minimum = 0;
+                    maximum = UNBOUNDED;
+                    break;
+                case '+':
+                    minimum = 1;
+                    maximum = UNBOUNDED;
+                    break;
+                case '{':
+                    index++;
+                    minimum = parseNumber();
+                    if (minimum < 0) return null;
+                    maximum = minimum;
+                    if (peek() == ',') {
+                        index++;
+                        maximum = peek() == '}' ? UNBOUNDED : parseNumber();
+                        if (maximum < minimum) return null;
+                    }
+                    if (peek() != '}') return null;
+                    break;
+                default:
+                    return atom;
+            }
+            index++;
+            Node repeat = new Node(Node.REPEAT);
+            repeat.minimum = minimum;
+            repeat.maximum = maximum;
+            repeat.greedy = peek() != '?';
+            if (!repeat.greedy) index++;
+            // possessive quantifiers and repeated empty matches are not supported
+            if (peek() == '+' || maximum > 1 && atom.isNullable()) return null;
+            repeat.children.add(atom);
+            return repeat;
+        }
+
+        private int parseNumber() {
+            int start = index;
+            while (peek() >= '0' && peek() <= '9' && index - start < 4) {
+                index++;
+            }
+            if (index == start || peek() >= '0' && peek() <= '9') return -1;
+            return Integer.parseInt(mask.substring(start, index));
+        }
+
+    }
+
+
+    /**
+     * This class compiles a syntax tree into an automaton program.
+     */
+    static private class Compiler {
+
+        int[] operations = new int[16];
+        int[] firsts = new int[16];
+        int[] seconds = new int[16];
+        final List<CharacterSet> sets = new ArrayList<>();
+        int size;
+
+        boolean add(int operation, int first, int second) {
+            if (size == MAXIMUM_PROGRAM_SIZE) return false;
+            if (size == operations.length) {
+                operations = Arrays.copyOf(operations, 2 * size);
+                firsts = Arrays.copyOf(firsts, 2 * size);
+                seconds = Arrays.copyOf(seconds, 2 * size);
+            }
+            operations[size] = operation;
+            firsts[size] = first;
+            seconds[size] = second;
+            size++;
+            return true;
+        }
+
+        boolean emit(Node node) {
+            switch (node.kind) {
+                case Node.SET:
+                    sets.add(node.set);
+                    return add(CHARACTER, sets.size() - 1, 0);
+                case Node.SEQUENCE:
+                    for (Node child : node.children) {
+                        if (!emit(child)) return false;
+                    }
+                    return true;
+                case Node.ALTERNATION:
+                    return emitAlternation(node.children);
+                case Node.REPEAT:
+                    return emitRepeat(node);
+                case Node.GROUP:
+                    if (node.group < 0) return emit(node.children.get(0));
+                    return add(SAVE, 2 * node.group, 0) && emit(node.children.get(0)) &&
+                            add(SAVE, 2 * node.group + 1, 0);
+                case Node.START_ANCHOR:
+                    return add(BEGIN, 0, 0);
+                default:
+                    return add(END, 0, 0);
+            }
+        }
+
+        private boolean emitAlternation(List<Node> alternatives) {
+            int[] jumps = new int[alternatives.size() - 1];
+            for (int i = 0; i < jumps.length; i++) {
+                int split = size;
+                if (!add(SPLIT, split + 1, 0) || !emit(alternatives.get(i))) return false;
+                jumps[i] = size;
+                if (!add(JUMP, 0, 0)) return false;
+                seconds[split] = size;
+            }
+            if (!emit(alternatives.get(jumps.length))) return false;
+            for (int jump : jumps) {
+                firsts[jump] = size;
+            }
+            return true;
+        }
+
+        private boolean emitRepeat(Node repeat) {
+            Node child = repeat.children.get(0);
+            for (int i = 0; i < repeat.minimum; i++) {
+                if (!emit(child)) return false;
+            }
+            if (repeat.maximum == UNBOUNDED) {
+                int split = size;
+                if (!add(SPLIT, 0, 0) || !emit(child) || !add(JUMP, split, 0)) return false;
+                branch(split, split + 1, size, repeat.greedy);
+                return true;
+            }
+            int[] splits = new int[repeat.maximum - repeat.minimum];
+            for (int i = 0; i < splits.length; i++) {
+                splits[i] = size;
+                if (!add(SPLIT, 0, 0) || !emit(child)) return false;
+            }
+            for (int split : splits) {
+                branch(split, split + 1, size, repeat.greedy);
+            }
+            return true;
+        }
+
+        private void branch(int split, int repeat, int skip, boolean greedy) {
+            firsts[split] = greedy ? repeat : skip;
+            seconds[split] = greedy ? skip : repeat;
+        }
+
+    }
+
+}
@@ -0,0 +1,427 @@
+/************************************************************************
+ * Copyright (c) Crater Dog Technologies(TM).  All Rights Reserved.     *
+ ************************************************************************
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.        *
+ *                                                                      *
+ * This code is free software; you can redistribute it and/or modify it *
+ * under the terms of The MIT License (MIT), as published by the Open   *
+ * Source Initiative. (See http://opensource.org/licenses/MIT)          *
+ ************************************************************************/
+package craterdog.smart;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * This class captures a fully compiled, immutable plan for applying a mask to string values. All
+ * of the work that depends only on the mask is done when the plan is compiled, so an invalid mask
+ * is rejected up front and applying the plan to a value only requires matching the value.
+ *
+ * @author Yan Ma
+ * @author Derk Norton
+ */
+final class MaskPlan {
+
+    static private final int POOL_SIZE = 8;
+    static private final int OVERRUN = -3;
+    static private final StepBudgetExceededException BUDGET_EXCEEDED = new StepBudgetExceededException();
+
+    private final String mask;
+    private final Pattern pattern;  // null if the plan is positional
+    private final MaskScanner scanner;  // null if the mask does not have a simple shape
+    private final MaskAutomaton automaton;  // null if the mask must be matched using the pattern
+
+    // the characters that are kept by a positional plan
+    private final int keepFirst;
+    private final int keepLast;
+    private final String keepChars;
+
+    // a small lock free pool of matchers and buffers that works equally well for platform and virtual threads
+    private final AtomicReferenceArray<Scratch> pool = new AtomicReferenceArray<>(POOL_SIZE);
+
+
+    private MaskPlan(String mask, Pattern pattern, MaskScanner scanner, MaskAutomaton automaton,
+            int keepFirst, int keepLast, String keepChars) {
+        this.mask = mask;
+        this.pattern = pattern;
+        this.scanner = scanner;
+        this.automaton = automaton;
+        this.keepFirst = keepFirst;
+        this.keepLast = keepLast;
+        this.keepChars = keepChars;
+    }
+
+
+    /**
+     * This function compiles the specified mask into a mask plan. The mask must be a valid regular
+     * expression containing at least one group. Masks with a simple anchored shape, like the ones
+     * defined in the <code>Sensitive</code> annotation, are applied using a specialized scanner.
+     * Other masks are applied using an automaton that runs in linear time if they only use the
+     * supported syntax, and otherwise using a regular expression matcher with a step budget.
+     *
+     * @param mask The mask to be compiled.
+     * @return The corresponding mask plan.
+     * @throws PatternSyntaxException The mask is not a valid regular expression.
+     * @throws IllegalArgumentException The mask does not contain any groups to be masked.
+     */
+    static MaskPlan compile(String mask) {
+        return compile(mask, true);
+    }
+
+
+    /**
+     * This function compiles the specified mask into a mask plan that always uses a regular
+     * expression matcher. It allows the linear time engines to be compared with the matcher.
+     *
+     * @param mask The mask to be compiled.
+     * @return The corresponding mask plan.
+     * @throws PatternSyntaxException The mask is not a valid regular expression.
+     * @throws IllegalArgumentException The mask does not contain any groups to be masked.
+     */
+    static MaskPlan compileRegex(String mask) {
+        return compile(mask, false);
+    }
+
+
+    static private MaskPlan compile(String mask, boolean specialize) {
+        Pattern pattern = Pattern.compile(mask);
+        if (pattern.matcher("").groupCount() == 0) {
+            throw new IllegalArgumentException("The mask contains no groups to be masked: " + mask);
+        }
+        MaskScanner scanner = specialize ? MaskScanner.parse(mask) : null;
+        MaskAutomaton automaton = specialize && scanner == null ? MaskAutomaton.compile(mask) : null;
+        return new MaskPlan(mask, pattern, scanner, automaton, 0, 0, "");
+    }
+
+
+    /**
+     * This function creates a positional mask plan that masks every character of a value except
+     * for the specified number of leading and trailing characters, and any of the specified
+     * characters wherever they occur. A positional plan matches every value.
+     *
+     * @param keepFirst The number of leading characters to keep.
+     * @param keepLast The number of trailing characters to keep.
+     * @param keepChars The characters to keep wherever they occur.
+     * @return The corresponding mask plan.
+     * @throws IllegalArgumentException The number of characters to keep is negative.
+     */
+    static MaskPlan positional(int keepFirst, int keepLast, String keepChars) {
+        if (keepFirst < 0 || keepLast < 0) {
+            throw new IllegalArgumentException("The number of characters to keep cannot be negative.");
+        }
+        return new MaskPlan(null, null, null, null, keepFirst, keepLast, keepChars);
+    }
+
+
+    /**
+     * This method returns the mask that was compiled into this plan.
+     *
+     * @return The mask, or null if the plan is positional.
+     */
+    String getMask() {
+        return mask;
+    }
+
+
+    /**
+     * This method determines whether or not this plan uses a specialized scanner rather than a
+     * regular expression matcher.
+     *
+     * @return Whether or not the plan uses a specialized scanner.
+     */
+    boolean isSpecialized() {
+        return scanner != null;
+    }
+
+
+    /**
+     * This method determines whether or not this plan is guaranteed to run in linear time.
+     *
+     * @return Whether or not the plan uses a specialized scanner or an automaton.
+     */
+    boolean isLinear() {
+        return scanner != null || (automaton != null && Censor.isLinearMatching());
+    }
+
+
+    /**
+     * This method applies this mask plan to the specified value.
+     *
+     * @param value The value to be masked.
+     * @param maskingCharacter The character to be used for masking.
+     * @return The masked value, or null if the value does not match the mask.
+     */
+    String apply(String value, char maskingCharacter) {
+        Scratch scratch = acquireScratch();
+        try {
+            int length = mask(value, maskingCharacter, scratch);
+            return length < 0 ? null : new String(scratch.output, 0, length);
+        } finally {
+            releaseScratch(scratch);
+        }
+    }
+
+
+    /**
+     * This method applies this mask plan to the specified value and writes the masked value
+     * directly to the specified generator. No intermediate strings are created.
+     *
+     * @param value The value to be masked.
+     * @param maskingCharacter The character to be used for masking.
+     * @param generator The generator to which the masked value should be written.
+     * @return Whether or not the value matched the mask and was written.
+     * @throws IOException The masked value could not be written.
+     */
+    boolean writeTo(String value, char maskingCharacter, JsonGenerator generator) throws IOException {
+        Scratch scratch = acquireScratch();
+        try {
+            int length = mask(value, maskingCharacter, scratch);
+            if (length < 0) return false;
+            generator.writeString(scratch.output, 0, length);
+            return true;
+        } finally {
+            releaseScratch(scratch);
+        }
+    }
+
+
+    /*
+     * This method copies the masked value into the output buffer of the scratch space and
+     * returns its length, or -1 if the value does not match the mask. If the matcher exceeds
+     * its step budget the entire value is masked.
+     */
+    private int mask(String value, char maskingCharacter, Scratch scratch) {
+        if (pattern == null) return maskPositions(value, maskingCharacter, scratch);
+
+        // use the linear time engines where possible and a budgeted matcher otherwise
+        int[] bounds = scratch.bounds;
+        int count = MaskScanner.UNSUPPORTED;
+        if (scanner != null) {
+            count = scanner.scan(value, bounds);
+        } else if (automaton != null && Censor.isLinearMatching()) {
+            count = automaton.match(value, bounds, scratch.workspace(automaton));
+        }
+        if (count == MaskScanner.UNSUPPORTED) {
+            count = find(value, scratch);
+        }
+
+        int length = value.length();
+        if (count == OVERRUN) {
+            Censor.recordBudgetOverrun(mask);
+            Arrays.fill(scratch.output(length), 0, length, maskingCharacter);
+            return length;
+        }
+        if (count < 0) return -1;
+
+        // flatten all the nested intervals, the outermost interval for each is all we care about
+        count = mergeIntervals(bounds, count);
+        char[] characters = scratch.output(length);
+        value.getChars(0, length, characters, 0);
+        for (int i = 0; i < count; i++) {
+            Arrays.fill(characters, bounds[2 * i], bounds[2 * i + 1], maskingCharacter);
+        }
+        return length;
+    }
+
+
+    /*
+     * This method copies the value into the output buffer of the scratch space masking everything
+     * but the kept characters in a single pass, and returns its length.
+     */
+    private int maskPositions(String value, char maskingCharacter, Scratch scratch) {
+        int length = value.length();
+        char[] characters = scratch.output(length);
+        value.getChars(0, length, characters, 0);
+        int end = length - keepLast;
+        for (int i = keepFirst; i < end; i++) {
+            if (keepChars.indexOf(characters[i]) < 0) characters[i] = maskingCharacter;
+        }
+        return length;
+    }
+
+
+    /*
+     * This method finds the first match of the mask in the specified value using the regular
+     * expression matcher, and stores the start and end of each group in the bounds array of the
+     * scratch space. It returns the number of groups, -1 if the value does not match, or OVERRUN
+     * if the matcher exceeds its step budget.
+     */
+    private int find(String value, Scratch scratch) {
+        Matcher matcher = scratch.matcher.reset(scratch.sequence.reset(value, Censor.getStepBudget()));
+        try {
+            if (!matcher.find()) {
+                return -1;
+            }
+        } catch (StepBudgetExceededException e) {
+            return OVERRUN;
+        }
+        int groupCount = matcher.groupCount();
+        int[] bounds = scratch.bounds;
+        for (int i = 1; i <= groupCount; i++) {
+            bounds[2 * i - 2] = matcher.start(i);
+            bounds[2 * i - 1] = matcher.end(i);
+        }
+        return groupCount;
+    }
+
+
+    /*
+     * This method will "flatten" any nested intervals contained in "(" and ")" pairs in the
+     * matched string and merge them into a single interval that spans the outer-most pair.
+     * This is needed since java.util.Matcher does not guarantee that the sequence of the
+     * groups are maintained. The intervals are stored as start and end pairs in the bounds
+     * array, they are merged in place, and the number of merged intervals is returned.
+     */
+    static private int mergeIntervals(int[] bounds, int groupCount) {
+        // sort the potentially nested intervals in order of their starting positions
+        int count = 0;
+        for (int i = 0; i < groupCount; i++) {
+            int start = bounds[2 * i];
+            if (start < 0) continue;  // the group did not participate in the match
+            int end = bounds[2 * i + 1];
+            int j = count++;
+            while (j > 0 && bounds[2 * j - 2] > start) {
+                bounds[2 * j] = bounds[2 * j - 2];
+                bounds[2 * j + 1] = bounds[2 * j - 1];
+                j--;
+            }
+            bounds[2 * j] = start;
+            bounds[2 * j + 1] = end;
+        }
+
+        // merge any overlapping intervals in place
+        int merged = 0;
+        for (int i = 0; i < count; i++) {
+            int start = bounds[2 * i];
+            int end = bounds[2 * i + 1];
+            if (merged > 0 && start <= bounds[2 * merged - 1]) {
+                bounds[2 * merged - 1] = Math.max(bounds[2 * merged - 1], end);
+            } else {
+                bounds[2 * merged] = start;
+                bounds[2 * merged + 1] = end;
+                merged++;
+            }
+        }
+        return merged;
+    }
+
+
+    private Scratch acquireScratch() {
+        for (int i = 0; i < POOL_SIZE; i++) {
+            Scratch scratch = pool.getAndSet(i, null);
+            if (scratch != null) return scratch;
+        }
+        return new Scratch(pattern);
+    }
+
+
+    private void releaseScratch(Scratch scratch) {
+        if (scratch.matcher != null) {
+            // don't hold on to the string
+            scratch.matcher.reset("");
+            scratch.sequence.reset(null, 0);
+        }
+        scratch.output = null;
+        for (int i = 0; i < POOL_SIZE; i++) {
+            if (pool.compareAndSet(i, null, scratch)) return;
+        }
+    }
+
+
+    /**
+     * This class holds a matcher for the mask along with the primitive arrays that are needed
+     * to mask a value so that they can all be reused.
+     */
+    static private class Scratch {
+
+        static private final int MAXIMUM_RETAINED_LENGTH = 4096;
+
+        final Matcher matcher;  // null for a positional plan
+        final StepCountingSequence sequence = new StepCountingSequence();
+        final int[] bounds;
+        MaskAutomaton.Workspace workspace;
+        char[] characters = new char[64];
+        char[] output;  // the buffer holding the current masked value
+
+        Scratch(Pattern pattern) {
+            this.matcher = pattern != null ? pattern.matcher("") : null;
+            this.bounds = matcher != null ? new int[2 * matcher.groupCount()] : null;
+        }
+
+        MaskAutomaton.Workspace workspace(MaskAutomaton automaton) {
+            if (workspace == null) workspace = automaton.newWorkspace();
+            return workspace;
+        }
+
+        char[] output(int length) {
+            if (length > characters.length) {
+                char[] larger = new char[Math.max(length, 2 * characters.length)];
+                // very large values are masked in a temporary buffer that is not retained
+                if (larger.length > MAXIMUM_RETAINED_LENGTH) return output = larger;
+                characters = larger;
+            }
+            return output = characters;
+        }
+
+    }
+
+
+    /**
+     * This class wraps a value that is being matched and counts the steps taken by the matcher,
+     * each of which reads a character. It throws an exception when the matcher exceeds its budget.
+     */
+    static private class StepCountingSequence implements CharSequence {
+
+        private String value;
+        private long remaining;
+
+        StepCountingSequence reset(String value, long budget) {
+            this.value = value;
+            this.remaining = budget;
+            return this;
+        }
+
+        @Override
+        public int length() {
+            return value.length();
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (--remaining < 0) throw BUDGET_EXCEEDED;
+            return value.charAt(index);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return value.subSequence(start, end);
+        }
+
+        @Override
+        public String toString() {
+            return value;
+        }
+
+    }
+
+
+    /**
+     * This exception is thrown when the matcher exceeds its step budget. A single instance with no
+     * stack trace is reused since it never leaves this class.
+     */
+    static private class StepBudgetExceededException extends RuntimeException {
+
+        static private final long serialVersionUID = 1L;
+
+        StepBudgetExceededException() {
+            super("The step budget was exceeded.", null, false, false);
+        }
+
+    }
+
+}
@@ -0,0 +1,397 @@
+/************************************************************************
+ * Copyright (c) Crater Dog Technologies(TM).  All Rights Reserved.     *
+ ************************************************************************
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.        *
+ *                                                                      *
+ * This code is free software; you can redistribute it and/or modify it *
+ * under the terms of The MIT License (MIT), as published by the Open   *
+ * Source Initiative. (See http://opensource.org/licenses/MIT)          *
+ ************************************************************************/
+package craterdog.smart;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * This class is a specialized, single pass scanner for masks that have a simple anchored shape,
+ * like the masks defined in the <code>Sensitive</code> annotation. A mask has this shape if it is
+ * anchored at both ends and consists of a sequence of character classes, each with an optional
+ * quantifier, some of which are enclosed in (non-nested) groups. For example:
+ * <code>^\d{4}-(\d{4})-(\d{4})-\d{4}$</code> or <code>(^[^@]+)@[^@]+$</code>.
+ * <p>
+ * A character class that may repeat a variable number of times must be followed either by the end
+ * of the mask, or by a class that repeats a fixed number of times and shares no characters with
+ * it. This guarantees that the greedy scan performed by this class finds exactly the same groups
+ * that <code>java.util.regex.Matcher</code> would find, without any backtracking.
+ *
+ * @author Derk Norton
+ */
+final class MaskScanner {
+
+    /**
+     * The result of a scan when the value contains characters that the scanner cannot handle.
+     */
+    static final int UNSUPPORTED = -2;
+
+    static private final int UNBOUNDED = Integer.MAX_VALUE;
+
+    // the characters in each class: ASCII characters as bits, and whether any others are included
+    private final long[] lows;
+    private final long[] highs;
+    private final boolean[] others;
+
+    // the number of times each class may be repeated
+    private final int[] minimums;
+    private final int[] maximums;
+
+    // the group (if any) that opens and closes before each character class and at the end
+    private final int[] opens;
+    private final int[] closes;
+    private final int groups;
+
+
+    private MaskScanner(List<CharacterClass> classes, int[] opens, int[] closes, int groups) {
+        int size = classes.size();
+        this.lows = new long[size];
+        this.highs = new long[size];
+        this.others = new boolean[size];
+        this.minimums = new int[size];
+        this.maximums = new int[size];
+        for (int i = 0; i < size; i++) {
+            CharacterClass characterClass = classes.get(i);
+            lows[i] = characterClass.lows;
+            highs[i] = characterClass.highs;
+            others[i] = characterClass.others;
+            minimums[i] = characterClass.minimum;
+            maximums[i] = characterClass.maximum;
+        }
+        this.opens = opens;
+        this.closes = closes;
+        this.groups = groups;
+    }
+
+
+    /**
+     * This function attempts to create a scanner for the specified mask. The mask must already
+     * have been validated as a regular expression.
+     *
+     * @param mask The mask.
+     * @return A scanner for the mask, or null if the mask does not have the required shape.
+     */
+    static MaskScanner parse(String mask) {
+        return new Parser(mask).parse();
+    }
+
+
+    /**
+     * This method scans the specified value and stores the start and end of each group in the
+     * specified array.
+     *
+     * @param value The value to be scanned.
+     * @param bounds The array that will contain the start and end of each group.
+     * @return The number of groups, -1 if the value does not match the mask, or
+     * <code>UNSUPPORTED</code> if the value contains surrogate characters.
+     */
+    int scan(String value, int[] bounds) {
+        int length = value.length();
+        int position = 0;
+        int last = minimums.length - 1;
+        for (int i = 0; i <= last; i++) {
+            mark(i, position, bounds);
+            int maximum = maximums[i];
+            int count = 0;
+            while (count < maximum && position < length) {
+                char character = value.charAt(position);
+                if (character >= 128 && Character.isSurrogate(character)) {
+                    return UNSUPPORTED;  // the matcher matches code points rather than characters
+                }
+                if (!matches(i, character)) break;
+                position++;
+                count++;
+            }
+            if (count < minimums[i]) return -1;
+            if (i == last) {
+                // only back off from the end to allow for a final line terminator
+                while (!isAtEnd(value, position)) {
+                    if (count == minimums[i] || position < length - 2) return -1;
+                    position--;
+                    count--;
+                }
+            }
+        }
+        mark(last + 1, position, bounds);
+        return groups;
+    }
+
+
+    private void mark(int index, int position, int[] bounds) {
+        if (closes[index] >= 0) bounds[2 * closes[index] + 1] = position;
+        if (opens[index] >= 0) bounds[2 * opens[index]] = position;
+    }
+
+
+    private boolean matches(int index, char character) {
+        if (character < 64) return (lows[index] >>> character & 1L) != 0;
+        if (character < 128) return (highs[index] >>> (character - 64) & 1L) != 0;
+        return others[index];
+    }
+
+
+    /*
+     * This method mirrors the behavior of the "$" anchor which also matches just before a final
+     * line terminator.
+     */
+    static boolean isAtEnd(String value, int position) {
+        int length = value.length();
+        if (position == length) return true;
+        if (position == length - 2) {
+            return value.charAt(position) == '\r' && value.charAt(position + 1) == '\n';
+        }
+        if (position == length - 1) {
+            char character = value.charAt(position);
+            if (character == '\n') return position == 0 || value.charAt(position - 1) != '\r';
+            return character == '\r' || character == '\u0085' || character == '\u2028' || character == '\u2029';
+        }
+        return false;
+    }
+
+
+    /**
+     * This class captures a character class and its quantifier while the mask is being parsed.
+     */
+    static private class CharacterClass {
+
+        long lows;
+        long highs;
+        boolean others;
+        int minimum = 1;
+        int maximum = 1;
+
+        void add(char first, char last) {
+            for (char character = first; character <= last; character++) {
+                if (character < 64) lows |= 1L << character;
+                else highs |= 1L << (character - 64);
+            }
+        }
+
+        void add(CharacterClass characterClass) {
+            lows |= characterClass.lows;
+            highs |= characterClass.highs;
+            others |= characterClass.others;
+        }
+
+        void negate() {
+            lows = ~lows;
+            highs = ~highs;
+            others = !others;
+        }
+
+        boolean isFixed() {
+            return minimum == maximum;
+        }
+
+        boolean isDisjoint(CharacterClass characterClass) {
+            return (lows & characterClass.lows) == 0 && (highs & characterClass.highs) == 0 &&
+                    !(others && characterClass.others);
+        }
+
+    }
+
+
+    /**
+     * This class parses a mask into a scanner, giving up as soon as it finds anything that the
+     * scanner does not support.
+     */
+    static private class Parser {
+
+        private final String mask;
+        private int index;
+
+        Parser(String mask) {
+            this.mask = mask;
+        }
+
+        MaskScanner parse() {
+            List<CharacterClass> classes = new ArrayList<>();
+            int[] opens = new int[mask.length() + 1];
+            int[] closes = new int[mask.length() + 1];
+            Arrays.fill(opens, -1);
+            Arrays.fill(closes, -1);
+            int groups = 0;
+            boolean inGroup = false;
+            boolean anchored = false;
+            boolean ended = false;
+            while (index < mask.length()) {
+                char character = mask.charAt(index++);
+                if (character == '(') {
+                    if (inGroup || ended || peek() == '?') return null;
+                    opens[classes.size()] = groups;
+                    inGroup = true;
+                } else if (character == ')') {
+                    if (!inGroup || opens[classes.size()] == groups || isQuantifier(peek())) return null;
+                    closes[classes.size()] = groups++;
+                    inGroup = false;
+                } else if (character == '^') {
+                    if (anchored || !classes.isEmpty()) return null;
+                    anchored = true;
+                } else if (character == '$') {
+                    if (ended) return null;
+                    ended = true;
+                } else {
+                    if (ended) return null;
+                    index--;
+                    CharacterClass characterClass = parseClass();
+                    if (characterClass == null || !parseQuantifier(characterClass)) return null;
+                    classes.add(characterClass);
+                }
+            }
+            if (!anchored || !ended || inGroup || classes.isEmpty()) return null;
+
+            // make sure that no backtracking is ever needed
+            for (int i = 0; i < classes.size() - 1; i++) {
+                CharacterClass current = classes.get(i);
+                CharacterClass next = classes.get(i + 1);
+                if (!current.isFixed() && (!next.isFixed() || next.minimum == 0 || !current.isDisjoint(next))) {
+                    return null;
+                }
+            }
+            int size = classes.size() + 1;
+            return new MaskScanner(classes, Arrays.copyOf(opens, size), Arrays.copyOf(closes, size), groups);
+        }
+
+        private char peek() {
+            return index < mask.length() ? mask.charAt(index) : '\0';
+        }
+
+        private boolean isQuantifier(char character) {
+            return character == '?' || character == '*' || character == '+' || character == '{';
+        }
+
+        private boolean isDigit(char character) {
+            return character >= '0' && character <= '9';
+        }
+
+        private CharacterClass parseClass() {
+            char character = mask.charAt(index++);
+            CharacterClass characterClass = new CharacterClass();
+            switch (character) {
+                case '\\':
+                    return parseEscape();
+                case '[':
+                    return parseBracket();
+                case '.': case '|': case '?': case '*': case '+': case '{': case '}': case ']':
+                    return null;
+                default:
+                    if (character >= 128) return null;
+                    characterClass.add(character, character);
+                    return characterClass;
+            }
+        }
+
+        private CharacterClass parseEscape() {
+            if (index >= mask.length()) return null;
+            char character = mask.charAt(index++);
+            CharacterClass characterClass = new CharacterClass();
+            switch (character) {
+                case 'd': case 'D':
+                    characterClass.add('0', '9');
+                    break;
+                case 'w': case 'W':
+                    characterClass.add('a', 'z');
+                    characterClass.add('A', 'Z');
+                    characterClass.add('0', '9');
+                    characterClass.add('_', '_');
+                    break;
+                case 's': case 'S':
+                    characterClass.add('\t', '\r');
+                    characterClass.add(' ', ' ');
+                    break;
+                default:
+                    // only escaped punctuation is treated as a literal
+                    if (character >= 128 || Character.isLetterOrDigit(character)) return null;
+                    characterClass.add(character, character);
+                    return characterClass;
+            }
+            if (Character.isUpperCase(character)) characterClass.negate();
+            return characterClass;
+        }
+
+        private CharacterClass parseBracket() {
+            CharacterClass characterClass = new CharacterClass();
+            boolean negated = peek() == '^';
+            if (negated) index++;
+            if (peek() == ']') return null;
+            int start = index;
+            while (index < mask.length()) {
+                char character = mask.charAt(index++);
+                if (character == ']') {
+                    if (negated) characterClass.negate();
+                    return characterClass;
+                }
+                if (character == '[' || character == '&' || character >= 128) return null;
+                // a hyphen is only treated as a literal at the start or end of the class
+                if (character == '-' && index - 1 > start && peek() != ']') return null;
+                if (character == '\\') {
+                    CharacterClass escaped = parseEscape();
+                    if (escaped == null) return null;
+                    characterClass.add(escaped);
+                } else if (peek() == '-' && index + 1 < mask.length() && mask.charAt(index + 1) != ']') {
+                    char last = mask.charAt(index + 1);
+                    if (last == '\\' || last == '[' || last >= 128 || last < character) return null;
+                    characterClass.add(character, last);
+                    index += 2;
+                } else {
+                    characterClass.add(character, character);
+                }
+            }
+            return null;
+        }
+
+        private boolean parseQuantifier(CharacterClass characterClass) {
+            char character = peek();
+            switch (character) {
+                case '?':
+                    characterClass.minimum = 0;
+                    break;
+                case '*':
+                    characterClass.minimum = 0;
+                    characterClass.maximum = UNBOUNDED;
+                    break;
+                case '+':
+                    characterClass.maximum = UNBOUNDED;
+                    break;
+                case '{':
+                    index++;
+                    int minimum = parseNumber();
+                    if (minimum < 0) return false;
+                    int maximum = minimum;
+                    if (peek() == ',') {
+                        index++;
+                        maximum = peek() == '}' ? UNBOUNDED : parseNumber();
+                        if (maximum < minimum) return false;
+                    }
+                    if (peek() != '}') return false;
+                    characterClass.minimum = minimum;
+                    characterClass.maximum = maximum;
+                    break;
+                default:
+                    return true;
+            }
+            index++;
+            // lazy and possessive quantifiers are not supported
+            return peek() != '?' && peek() != '+';
+        }
+
+        private int parseNumber() {
+            int start = index;
+            while (isDigit(peek()) && index - start < 9) {
+                index++;
+            }
+            if (index == start || isDigit(peek())) return -1;
+            return Integer.parseInt(mask.substring(start, index));
+        }
+
+    }
+
+}
@@ -0,0 +1,32 @@
+/************************************************************************
+ * Copyright (c) Crater Dog Technologies(TM).  All Rights Reserved.     *
+ ************************************************************************
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.        *
+ *                                                                      *
+ * This code is free software; you can redistribute it and/or modify it *
+ * under the terms of The MIT License (MIT), as published by the Open   *
+ * Source Initiative. (See http://opensource.org/licenses/MIT)          *
+ ************************************************************************/
+package craterdog.smart;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * This annotation is used to mark smart object classes whose serializer, deserializer, equals()
+ * and hashCode() should be generated at compile time by the annotation processor in the
+ * <code>java-smart-objects-processor</code> artifact. The generated class extends the
+ * <code>CompiledSupport</code> class and is picked up automatically when it is present. If the
+ * annotation processor was not run, or it could not handle the marked class, the smart object is
+ * handled at runtime as usual. The annotation is not inherited, each subclass that should also be
+ * precompiled must be marked as well.
+ *
+ * @author Derk Norton
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface Precompiled {
+
+}
@@ -0,0 +1,127 @@
+/************************************************************************
+ * Copyright (c) Crater Dog Technologies(TM).  All Rights Reserved.     *
+ ************************************************************************
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.        *
+ *                                                                      *
+ * This code is free software; you can redistribute it and/or modify it *
+ * under the terms of The MIT License (MIT), as published by the Open   *
+ * Source Initiative. (See http://opensource.org/licenses/MIT)          *
+ ************************************************************************/
+package craterdog.smart;
+
+import com.fasterxml.jackson.databind.Module;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class identifies the configuration that is declared by a <code>@MapperScope</code>
+ * annotation. Two fingerprints are equal when they declare the same mixins and modules, so the
+ * mappers that are derived for one of them can be shared by all classes that declare the same
+ * configuration.
+ *
+ * @author Derk Norton
+ */
+final class ScopeFingerprint {
+
+    // the fingerprint of a class that uses the shared mappers as they are
+    static final ScopeFingerprint NONE = new ScopeFingerprint(
+            Collections.<Class<?>, Class<?>>emptyMap(), Collections.<Class<? extends Module>>emptyList());
+
+    // the fingerprint of the mapper scope declared by each class
+    static private final ClassValue<ScopeFingerprint> fingerprints = new ClassValue<ScopeFingerprint>() {
+        @Override
+        protected ScopeFingerprint computeValue(Class<?> type) {
+            return of(type.getAnnotation(MapperScope.class));
+        }
+    };
+
+    private final Map<Class<?>, Class<?>> mixIns;
+    private final List<Class<? extends Module>> modules;
+    private final int hash;
+
+
+    private ScopeFingerprint(Map<Class<?>, Class<?>> mixIns, List<Class<? extends Module>> modules) {
+        this.mixIns = mixIns;
+        this.modules = modules;
+        this.hash = 31 * mixIns.hashCode() + modules.hashCode();
+    }
+
+
+    /**
+     * This function returns the fingerprint of the configuration declared by the specified class.
+     * The fingerprint of each class is only computed once.
+     *
+     * @param type The class.
+     * @return The corresponding fingerprint.
+     */
+    static ScopeFingerprint of(Class<?> type) {
+        return fingerprints.get(type);
+    }
+
+
+    /**
+     * This function returns the fingerprint of the configuration declared by the specified
+     * annotation.
+     *
+     * @param scope The annotation, or null if there is none.
+     * @return The corresponding fingerprint.
+     */
+    static ScopeFingerprint of(MapperScope scope) {
+        if (scope == null) return NONE;
+        Map<Class<?>, Class<?>> mixIns = new LinkedHashMap<>();
+        for (MapperScope.MixIn mixIn : scope.mixIns()) {
+            mixIns.put(mixIn.target(), mixIn.mixin());
+        }
+        List<Class<? extends Module>> modules = new ArrayList<>(Arrays.asList(scope.modules()));
+        if (mixIns.isEmpty() && modules.isEmpty()) return NONE;
+        return new ScopeFingerprint(Collections.unmodifiableMap(mixIns), Collections.unmodifiableList(modules));
+    }
+
+
+    /**
+     * This method returns the mixins that are declared by the scope.
+     *
+     * @return A map from each target class to its mixin class.
+     */
+    Map<Class<?>, Class<?>> getMixIns() {
+        return mixIns;
+    }
+
+
+    /**
+     * This method returns new instances of the modules that are declared by the scope.
+     *
+     * @return The modules.
+     */
+    List<Module> createModules() {
+        List<Module> result = new ArrayList<>(modules.size());
+        for (Class<? extends Module> type : modules) {
+            try {
+                result.add(type.getConstructor().newInstance());
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalArgumentException("The module class " + type.getName() + " could not be instantiated", e);
+            }
+        }
+        return result;
+    }
+
+
+    @Override
+    public boolean equals(Object object) {
+        if (this == object) return true;
+        if (!(object instanceof ScopeFingerprint)) return false;
+        ScopeFingerprint that = (ScopeFingerprint) object;
+        return hash == that.hash && mixIns.equals(that.mixIns) && modules.equals(that.modules);
+    }
+
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+}
@@ -0,0 +1,192 @@
+/************************************************************************
+ * Copyright (c) Crater Dog Technologies(TM).  All Rights Reserved.     *
+ ************************************************************************
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.        *
+ *                                                                      *
+ * This code is free software; you can redistribute it and/or modify it *
+ * under the terms of The MIT License (MIT), as published by the Open   *
+ * Source Initiative. (See http://opensource.org/licenses/MIT)          *
+ ************************************************************************/
+package craterdog.smart;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.BeanDescription;
+import com.fasterxml.jackson.databind.DeserializationConfig;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializationConfig;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.cfg.MapperConfig;
+import com.fasterxml.jackson.databind.deser.Deserializers;
+import com.fasterxml.jackson.databind.jsontype.TypeSerializer;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.ser.Serializers;
+import java.io.IOException;
+import java.util.function.Function;
+
+/**
+ * This class is a Jackson module that applies the <code>@MapperScope</code> annotation wherever
+ * an instance of a scoped class is serialized or deserialized, not just when it is the root
+ * value. A scoped value that is found inside an unscoped object, collection or map, or inside a
+ * value with a different scope, is handed to the corresponding mapper of the snapshot that is
+ * derived for the scope of its class.
+ *
+ * @author Derk Norton
+ */
+final class ScopeModule extends SimpleModule {
+
+    // the key of the configuration attribute that binds each mapper to its snapshot
+    static private final Object BINDING = new Object();
+
+
+    /**
+     * The default constructor creates a module that delegates the scoped classes to the mappers
+     * for their scopes.
+     */
+    ScopeModule() {
+        super("ScopeModule");
+    }
+
+
+    @Override
+    public void setupModule(SetupContext context) {
+        super.setupModule(context);
+        context.addSerializers(new ScopedSerializers());
+        context.addDeserializers(new ScopedDeserializers());
+    }
+
+
+    /**
+     * This function binds the specified mapper to the snapshot it belongs to. A mapper that has
+     * not been bound does not delegate any values.
+     *
+     * @param mapper The mapper.
+     * @param base The unscoped snapshot that the snapshot of the mapper was derived from.
+     * @param scope The scope that the mapper handles.
+     * @param role The function that selects the corresponding mapper from another snapshot.
+     */
+    static void bind(SmartObjectMapper mapper, MapperSnapshot base, ScopeFingerprint scope,
+            Function<MapperSnapshot, SmartObjectMapper> role) {
+        mapper.setAttribute(BINDING, new Binding(base, scope, role));
+    }
+
+
+    /*
+     * This function returns the mapper that should handle the specified class instead of a mapper
+     * with the specified configuration, or null if the mapper can handle it itself.
+     */
+    static private SmartObjectMapper delegateFor(MapperConfig<?> config, Class<?> type) {
+        Binding binding = (Binding) config.getAttributes().getAttribute(BINDING);
+        if (binding == null) return null;
+        ScopeFingerprint scope = ScopeFingerprint.of(type);
+        if (scope == ScopeFingerprint.NONE || scope.equals(binding.scope)) return null;
+        return binding.role.apply(binding.base.scoped(scope));
+    }
+
+
+    /**
+     * This class records which mapper of which snapshot a mapper is.
+     */
+    static private class Binding {
+
+        private final MapperSnapshot base;
+        private final ScopeFingerprint scope;
+        private final Function<MapperSnapshot, SmartObjectMapper> role;
+
+        Binding(MapperSnapshot base, ScopeFingerprint scope, Function<MapperSnapshot, SmartObjectMapper> role) {
+            this.base = base;
+            this.scope = scope;
+            this.role = role;
+        }
+
+    }
+
+
+    /**
+     * This class finds the scoped classes that must be serialized by another mapper.
+     */
+    static private class ScopedSerializers extends Serializers.Base {
+
+        @Override
+        public JsonSerializer<?> findSerializer(SerializationConfig config, JavaType type, BeanDescription description) {
+            SmartObjectMapper mapper = delegateFor(config, type.getRawClass());
+            return mapper == null ? null : new ScopedSerializer(mapper);
+        }
+
+    }
+
+
+    /**
+     * This class finds the scoped classes that must be deserialized by another mapper.
+     */
+    static private class ScopedDeserializers extends Deserializers.Base {
+
+        @Override
+        public JsonDeserializer<?> findBeanDeserializer(JavaType type, DeserializationConfig config, BeanDescription description) {
+            SmartObjectMapper mapper = delegateFor(config, type.getRawClass());
+            return mapper == null ? null : new ScopedDeserializer(mapper, type);
+        }
+
+    }
+
+
+    /**
+     * This class serializes a value using the serializer that another mapper has for it. The
+     * value is written to the same generator so it is nested and indented as usual.
+     */
+    static private class ScopedSerializer extends JsonSerializer<Object> {
+
+        private final SmartObjectMapper mapper;
+
+        ScopedSerializer(SmartObjectMapper mapper) {
+            this.mapper = mapper;
+        }
+
+        @Override
+        public void serialize(Object value, JsonGenerator generator, SerializerProvider provider) throws IOException {
+            SerializerProvider scoped = mapper.serializerProvider();
+            scoped.findValueSerializer(value.getClass(), null).serialize(value, generator, scoped);
+        }
+
+        @Override
+        public void serializeWithType(Object value, JsonGenerator generator, SerializerProvider provider,
+                TypeSerializer typeSerializer) throws IOException {
+            SerializerProvider scoped = mapper.serializerProvider();
+            scoped.findValueSerializer(value.getClass(), null).serializeWithType(value, generator, scoped, typeSerializer);
+        }
+
+    }
+
+
+    /**
+     * This class deserializes a value using the deserializer that another mapper has for it. A
+     * polymorphic value has its type id resolved by the outer mapper first, which then delegates
+     * the concrete type to this deserializer.
+     */
+    static private class ScopedDeserializer extends JsonDeserializer<Object> {
+
+        private final SmartObjectMapper mapper;
+        private final JavaType type;
+
+        ScopedDeserializer(SmartObjectMapper mapper, JavaType type) {
+            this.mapper = mapper;
+            this.type = type;
+        }
+
+        @Override
+        public Object deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+            DeserializationContext scoped = mapper.deserializationContext(parser);
+            return scoped.findContextualValueDeserializer(type, null).deserialize(parser, scoped);
+        }
+
+        @Override
+        public boolean isCachable() {
+            return true;
+        }
+
+    }
+
+}
@@ -35,11 +35,37 @@ public @interface Sensitive {
     /**
      * The masking pattern that should be applied to the value of the annotated attribute. The
      * pattern is a regular expression that contains "(" and ")" surrounding the parts of the string
-     * that should be masked with "X"s.
+     * that should be masked with "X"s. If no pattern is specified the positional attributes below
+     * are used instead. An empty pattern leaves the value unmasked.
      *
      * @return The masking pattern.
      */
-    public String mask();
+    public String mask() default MASK_BY_POSITION;
+
+    /**
+     * The number of leading characters that should be left unmasked when no masking pattern is
+     * specified. The default is zero.
+     *
+     * @return The number of leading characters to keep.
+     */
+    public int keepFirst() default 0;
+
+    /**
+     * The number of trailing characters that should be left unmasked when no masking pattern is
+     * specified. The default is zero. For example, <code>keepLast = 4</code> masks everything but
+     * the last four characters.
+     *
+     * @return The number of trailing characters to keep.
+     */
+    public int keepLast() default 0;
+
+    /**
+     * The characters (e.g. separators like "-") that should be left unmasked wherever they occur
+     * when no masking pattern is specified. The default is none.
+     *
+     * @return The characters to keep.
+     */
+    public String keepChars() default "";
 
     /**
      * The character that should be used to mask the value of the annotated attribute. The default
@@ -50,6 +76,12 @@ public @interface Sensitive {
     public char character() default 'X';
 
     //Defining some constants for frequently used mask annotations
+    /**
+     * The default mask, which is not a masking pattern but means that the value is masked using
+     * the positional attributes instead.
+     */
+    static public final String MASK_BY_POSITION = "\u0000";
+
     /**
      * Mask for a password or alphanumeric pin with various lengths (min length = 4, max length =
      * 100): mask all characters
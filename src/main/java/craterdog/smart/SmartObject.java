@@ -13,8 +13,31 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.Module;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
+import com.fasterxml.jackson.databind.util.ByteBufferBackedOutputStream;
 import craterdog.core.Composite;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import org.slf4j.ext.XLogger;
+import org.slf4j.ext.XLoggerFactory;
 
 /**
  * This abstract class provides implementations for the standard methods defined in the
@@ -30,31 +53,73 @@ import java.io.IOException;
  */
 public abstract class SmartObject<S extends SmartObject<S>> implements Composite<S> {
 
+    static private final XLogger logger = XLoggerFactory.getXLogger(SmartObject.class);
+
     /*
-    NOTE: the following mappers are defined as static attributes so that they are shared across
-    all smart objects of all types.  The ObjectMapper class is thread-safe when used this way
-    but it is important to note that all serializable classes or modules that are added for one
-    subclass of SmartObject affect all subclasses of SmartObject.  In general this is still worth
-    the performance benefits of the shared ObjectMappers.
+    NOTE: the following mappers are shared across all smart objects of all types.  The ObjectMapper
+    class is thread-safe when used this way but it is important to note that all serializable
+    classes or modules that are registered for one subclass of SmartObject affect all subclasses of
+    SmartObject.  In general this is still worth the performance benefits of the shared
+    ObjectMappers.  The mappers are never modified once they are in use, registering a class or
+    module publishes a new snapshot of the mappers instead.  A subclass that needs mixins or
+    modules that must not affect other subclasses can declare them using the @MapperScope
+    annotation, its instances are then handled by cached mappers derived from the shared ones
+    wherever they appear, even when they are nested inside the attributes of other objects.
     */
+    static private volatile MapperSnapshot mappers = new MapperSnapshot();
+
+    // the mixins and modules that have been registered, used to make registration idempotent
+    static private final ConcurrentHashMap<Class<?>, Class<?>> registeredMixIns = new ConcurrentHashMap<>();
+    static private final ConcurrentHashMap<Object, Boolean> registeredModules = new ConcurrentHashMap<>();
+    static private final Object registrationLock = new Object();
+
+    // files of at least this size are memory mapped when they are read
+    static private final long MAPPING_THRESHOLD = 1024 * 1024;
+
+    // whether or not each smart object class is marked as immutable
+    static private final ClassValue<Boolean> immutableClasses = new ClassValue<Boolean>() {
+        @Override
+        protected Boolean computeValue(Class<?> type) {
+            return type.isAnnotationPresent(Immutable.class);
+        }
+    };
+
+    // whether or not the cached state of immutable objects is checked for modifications on each use
+    static private volatile boolean immutabilityChecks = Boolean.getBoolean("craterdog.smart.immutabilityChecks");
 
-    // define a safe mapper that censors any sensitive attributes marked with the @Sensitive annotation
-    static private final SmartObjectMapper safeMapper = new SmartObjectMapper(new CensorshipModule());
 
-    // define a full mapper that outputs all attributes as stored
-    static private final SmartObjectMapper fullMapper = new SmartObjectMapper();
+    // the cached state of an immutable object, like the hash in java.lang.String races are benign
+    private transient String cachedString;
+    private transient String cachedExposedString;
+    private transient int cachedHash;
+
+    // the number of unnamed modules that the constructors of this object have registered so far
+    private transient int unnamedModules;
 
 
     /**
      * This method returns a string containing a structured, human readable version of the object.
-     * The string is formatted in Javascript Object Notation (JSON).
+     * The string is formatted in Javascript Object Notation (JSON). The string for an object whose
+     * class is marked as <code>@Immutable</code> is generated only once.
      *
      * @return The formatted JSON string.
      */
     @Override
     public String toString() {
+        if (!isImmutable()) return generateString();
+        checkImmutability();
+        String string = cachedString;
+        if (string == null) {
+            string = generateString();
+            cachedString = string;
+        }
+        return string;
+    }
+
+
+    private String generateString() {
         try {
-            return safeMapper.writeValueAsString(this);  // masks any sensitive attributes!
+            return mappersFor(getClass()).safeMapper.writeValueAsString(this);  // masks any sensitive attributes!
         } catch (JsonProcessingException e) {
             throw new RuntimeException("The attempt to map an object to a string failed", e);
         }
@@ -64,7 +129,23 @@ public abstract class SmartObject<S extends SmartObject<S>> implements Composite
     @Override
     public String toString(String indentation) {
         try {
-            return safeMapper.writeValueAsString(this, indentation);  // masks any sensitive attributes!
+            return mappersFor(getClass()).safeMapper.writeValueAsString(this, indentation);  // masks any sensitive attributes!
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("The attempt to map an object to a string failed", e);
+        }
+    }
+
+
+    /**
+     * This method behaves similarly to the <code>toString()</code> method except that the
+     * resulting string is not indented. The compact form is better suited for sending over the
+     * wire or writing to logs.
+     *
+     * @return The compact JSON string.
+     */
+    public String toCompactString() {
+        try {
+            return mappersFor(getClass()).safeMapper.writeValueAsCompactString(this);  // masks any sensitive attributes!
         } catch (JsonProcessingException e) {
             throw new RuntimeException("The attempt to map an object to a string failed", e);
         }
@@ -79,17 +160,186 @@ public abstract class SmartObject<S extends SmartObject<S>> implements Composite
      * @return The formatted JSON string.
      */
     protected String toExposedString() {
+        if (!isImmutable()) return generateExposedString();
+        checkImmutability();
+        String string = cachedExposedString;
+        if (string == null) {
+            string = generateExposedString();
+            cachedExposedString = string;
+        }
+        return string;
+    }
+
+
+    private String generateExposedString() {
         try {
-            return fullMapper.writeValueAsString(this);  // exposes any sensitive attributes!
+            return mappersFor(getClass()).fullMapper.writeValueAsString(this);  // exposes any sensitive attributes!
         } catch (JsonProcessingException e) {
             throw new RuntimeException("The attempt to map an object to a string failed", e);
         }
     }
 
 
+    /**
+     * This method behaves similarly to the <code>toCompactString()</code> method except that it
+     * does not perform any censorship of sensitive attributes. It should only be used when
+     * the resulting output will not be stored or seen by anyone.
+     *
+     * @return The compact JSON string.
+     */
+    protected String toExposedCompactString() {
+        try {
+            return mappersFor(getClass()).fullMapper.writeValueAsCompactString(this);  // exposes any sensitive attributes!
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("The attempt to map an object to a string failed", e);
+        }
+    }
+
+
+    /**
+     * This method returns the same JSON as the <code>toString()</code> method encoded as UTF-8
+     * bytes. The bytes are generated directly without creating an intermediate string.
+     *
+     * @return The UTF-8 encoded JSON.
+     */
+    public byte[] toUtf8Bytes() {
+        try {
+            return mappersFor(getClass()).safeMapper.writeValueAsBytes(this);  // masks any sensitive attributes!
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("The attempt to map an object to bytes failed", e);
+        }
+    }
+
+
+    /**
+     * This method behaves similarly to the <code>toUtf8Bytes()</code> method except that it
+     * does not perform any censorship of sensitive attributes. It should only be used when
+     * the resulting output will not be stored or seen by anyone.
+     *
+     * @return The UTF-8 encoded JSON.
+     */
+    protected byte[] toExposedUtf8Bytes() {
+        try {
+            return mappersFor(getClass()).fullMapper.writeValueAsBytes(this);  // exposes any sensitive attributes!
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("The attempt to map an object to bytes failed", e);
+        }
+    }
+
+
+    /**
+     * This method writes the same JSON as the <code>toString()</code> method directly to the
+     * specified output stream as UTF-8 bytes. The stream is flushed but not closed.
+     *
+     * @param output The output stream to be written to.
+     * @throws IOException The object could not be written to the stream.
+     */
+    public void writeTo(OutputStream output) throws IOException {
+        mappersFor(getClass()).safeMapper.streamingWriter().writeValue(output, this);  // masks any sensitive attributes!
+    }
+
+
+    /**
+     * This method writes the same JSON as the <code>toString()</code> method directly to the
+     * specified writer. The writer is flushed but not closed.
+     *
+     * @param writer The writer to be written to.
+     * @throws IOException The object could not be written to the writer.
+     */
+    public void writeTo(Writer writer) throws IOException {
+        mappersFor(getClass()).safeMapper.streamingWriter().writeValue(writer, this);  // masks any sensitive attributes!
+    }
+
+
+    /**
+     * This method writes the same JSON as the <code>toString()</code> method directly to the
+     * specified buffer as UTF-8 bytes, starting at its current position.
+     *
+     * @param buffer The buffer to be written to.
+     * @throws IOException The object could not be written to the buffer.
+     * @throws java.nio.BufferOverflowException The buffer does not have enough space remaining.
+     */
+    public void writeTo(ByteBuffer buffer) throws IOException {
+        mappersFor(getClass()).safeMapper.streamingWriter().writeValue(new ByteBufferBackedOutputStream(buffer), this);  // masks any sensitive attributes!
+    }
+
+
+    /**
+     * This method behaves similarly to the <code>writeTo(OutputStream output)</code> method
+     * except that it does not perform any censorship of sensitive attributes. It should only be
+     * used when the resulting output will not be stored or seen by anyone.
+     *
+     * @param output The output stream to be written to.
+     * @throws IOException The object could not be written to the stream.
+     */
+    protected void writeExposedTo(OutputStream output) throws IOException {
+        mappersFor(getClass()).fullMapper.streamingWriter().writeValue(output, this);  // exposes any sensitive attributes!
+    }
+
+
+    /**
+     * This method behaves similarly to the <code>writeTo(Writer writer)</code> method except
+     * that it does not perform any censorship of sensitive attributes. It should only be used
+     * when the resulting output will not be stored or seen by anyone.
+     *
+     * @param writer The writer to be written to.
+     * @throws IOException The object could not be written to the writer.
+     */
+    protected void writeExposedTo(Writer writer) throws IOException {
+        mappersFor(getClass()).fullMapper.streamingWriter().writeValue(writer, this);  // exposes any sensitive attributes!
+    }
+
+
+    /**
+     * This method behaves similarly to the <code>writeTo(ByteBuffer buffer)</code> method
+     * except that it does not perform any censorship of sensitive attributes. It should only be
+     * used when the resulting output will not be stored or seen by anyone.
+     *
+     * @param buffer The buffer to be written to.
+     * @throws IOException The object could not be written to the buffer.
+     * @throws java.nio.BufferOverflowException The buffer does not have enough space remaining.
+     */
+    protected void writeExposedTo(ByteBuffer buffer) throws IOException {
+        mappersFor(getClass()).fullMapper.streamingWriter().writeValue(new ByteBufferBackedOutputStream(buffer), this);  // exposes any sensitive attributes!
+    }
+
+
+    /**
+     * This method returns the object encoded in the binary Smile format. It uses the same rules
+     * as the <code>toString()</code> method but the result is smaller and faster to generate and
+     * parse, so it is better suited for sending between services or caching.
+     *
+     * @return The Smile encoded bytes.
+     */
+    public byte[] toSmileBytes() {
+        try {
+            return mappersFor(getClass()).safeBinaryMapper.writeValueAsBytes(this);  // masks any sensitive attributes!
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("The attempt to map an object to bytes failed", e);
+        }
+    }
+
+
+    /**
+     * This method behaves similarly to the <code>toSmileBytes()</code> method except that it
+     * does not perform any censorship of sensitive attributes. It should only be used when
+     * the resulting output will not be stored or seen by anyone.
+     *
+     * @return The Smile encoded bytes.
+     */
+    protected byte[] toExposedSmileBytes() {
+        try {
+            return mappersFor(getClass()).fullBinaryMapper.writeValueAsBytes(this);  // exposes any sensitive attributes!
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("The attempt to map an object to bytes failed", e);
+        }
+    }
+
+
     /**
      * This method determines whether or not two objects are equal. Two objects are equal if they
      * have the same class type and all their attributes and sub-components are equal.
+     * The comparison is generated at compile time for classes marked as <code>@Precompiled</code>.
      *
      * @param object The object to be compared with this object.
      * @return Whether or not the two objects are equal.
@@ -105,27 +355,57 @@ public abstract class SmartObject<S extends SmartObject<S>> implements Composite
         if (!this.getClass().equals(object.getClass())) {
             return false;
         }
-        @SuppressWarnings("unchecked")
-        S that = (S) object;
+        if (isImmutable()) {
+            // objects with different hash codes cannot be equal
+            SmartObject<?> that = (SmartObject<?>) object;
+            if (hashCode() != that.hashCode()) return false;
+            String thisString = cachedExposedString;
+            String thatString = that.cachedExposedString;
+            if (thisString != null && thatString != null) return thisString.equals(thatString);
+        }
+        CompiledSupport<?> support = compiledSupport();
+        if (support != null) return support.equalObjects(this, object);
         // NOTE: we must use the "exposed" version so that masking doesn't hide any differences!
-        return this.toExposedString().equals(that.toExposedString());
+        try {
+            return mappersFor(getClass()).comparator.areEqual(this, object);
+        } catch (IOException e) {
+            throw new RuntimeException("The attempt to compare two objects failed", e);
+        }
     }
 
 
+    /**
+     * This method compares this object with another object using the natural ordering of their
+     * exposed string forms. The string forms are generated lazily and only until the order of the
+     * two objects is known.
+     *
+     * @param object The object to be compared with this object.
+     * @return The relative ordering of the two objects.
+     */
     @Override
     public int compareTo(S object) {
         if (object == null) return 1;  // everything is greater than null
         if (this == object) {
             return 0;
         }
+        if (isImmutable()) {
+            String thisString = cachedExposedString;
+            String thatString = ((SmartObject<?>) object).cachedExposedString;
+            if (thisString != null && thatString != null) return thisString.compareTo(thatString);
+        }
         // NOTE: we must use the "exposed" version so that masking doesn't hide any differences!
-        return this.toExposedString().compareTo(object.toExposedString());
+        try {
+            return mappersFor(getClass()).comparator.compare(this, object);
+        } catch (IOException e) {
+            throw new RuntimeException("The attempt to compare two objects failed", e);
+        }
     }
 
 
     /**
-     * This method should work for all objects. However, it is very inefficient and should only be
-     * used sparingly and for unit testing.
+     * This method should work for all objects. The attributes of the object are written out as
+     * JSON tokens (not a JSON string) which are then used to construct the copy. Any immutable
+     * attribute values like tags and URIs are shared with the copy.
      *
      * @param <T> The concrete type of the smart object.
      * @return An exact copy of the smart object.
@@ -133,9 +413,8 @@ public abstract class SmartObject<S extends SmartObject<S>> implements Composite
     @Override
     public <T extends Composite<S>> T copy() {
         try {
-            String fullJSON = fullMapper.writeValueAsString(this);
             @SuppressWarnings("unchecked")
-            T copy = (T) fullMapper.readValue(fullJSON, getClass());
+            T copy = (T) mappersFor(getClass()).comparator.copy(this, getClass());
             return copy;
         } catch (IOException e) {
             throw new RuntimeException("The attempted copy of an object failed.", e);
@@ -144,14 +423,67 @@ public abstract class SmartObject<S extends SmartObject<S>> implements Composite
 
 
     /**
-     * This method returns a hash code for the object based on its string form. This is not a very
-     * efficient method.
+     * This method returns a hash code for the object based on its exposed string form. The
+     * attributes of the object are walked directly rather than generating the string itself.
+     * The hash code for an object whose class is marked as <code>@Immutable</code> is
+     * computed only once.
      *
      * @return A hash code for the object.
      */
     @Override
     public int hashCode() {
-        return toExposedString().hashCode();
+        if (!isImmutable()) return generateHash();
+        checkImmutability();
+        int hash = cachedHash;
+        if (hash == 0) {
+            hash = generateHash();  // a hash of zero is simply recomputed each time
+            cachedHash = hash;
+        }
+        return hash;
+    }
+
+
+    private int generateHash() {
+        CompiledSupport<?> support = compiledSupport();
+        if (support != null) return support.hashObject(this);
+        try {
+            return mappersFor(getClass()).comparator.hashCodeOf(this);
+        } catch (IOException e) {
+            throw new RuntimeException("The attempt to hash an object failed", e);
+        }
+    }
+
+
+    /*
+     * This method returns the generated support for the class of this object, or null if there
+     * is none or the full mapper for the class has been configured so that it does not use it.
+     */
+    private CompiledSupport<?> compiledSupport() {
+        if (CompiledSupport.supportFor(getClass()) == null) return null;
+        return CompiledModule.writingSupportFor(mappersFor(getClass()).fullMapper.getSerializationConfig(), getClass());
+    }
+
+
+    private boolean isImmutable() {
+        return immutableClasses.get(getClass());
+    }
+
+
+    /*
+     * This method checks that an immutable object has not been modified since its state was
+     * first cached by comparing its current exposed string with the cached one. It only does
+     * so when immutability checks are turned on.
+     */
+    private void checkImmutability() {
+        if (!immutabilityChecks) return;
+        String current = generateExposedString();
+        String cached = cachedExposedString;
+        if (cached == null) {
+            cachedExposedString = current;
+        } else if (!cached.equals(current)) {
+            throw new IllegalStateException("An instance of the immutable class " + getClass().getName() +
+                    " was modified after its state was cached.");
+        }
     }
 
 
@@ -170,7 +502,7 @@ public abstract class SmartObject<S extends SmartObject<S>> implements Composite
      * @throws IOException The JSON string could not be parsed correctly.
      */
     static public <T> T fromString(Class<T> classType, String json) throws IOException {
-        return safeMapper.readerFor(classType).readValue(json);
+        return mappersFor(classType).safeMapper.cachedReader(classType).readValue(json);
     }
 
 
@@ -191,7 +523,322 @@ public abstract class SmartObject<S extends SmartObject<S>> implements Composite
      * @throws IOException The JSON string could not be parsed correctly.
      */
     static public <T> T fromString(TypeReference<T> classType, String json) throws IOException {
-        return safeMapper.readerFor(classType).readValue(json);
+        return mappers.safeMapper.cachedReader(classType).readValue(json);
+    }
+
+
+    /**
+     * This function reads Javascript Object Notation (JSON) from an input stream and uses it to
+     * construct the corresponding smart object. The UTF-8 bytes are parsed directly without
+     * decoding them into a string first. The stream is not closed.
+     *
+     * @param <T> The type of object being constructed.
+     * @param classType The concrete class type being constructed.
+     * @param input The input stream containing the JSON.
+     * @return The corresponding object.
+     * @throws IOException The JSON could not be read or parsed correctly.
+     */
+    static public <T> T fromStream(Class<T> classType, InputStream input) throws IOException {
+        return mappersFor(classType).safeMapper.cachedReader(classType).readValue(input);
+    }
+
+
+    /**
+     * This function reads Javascript Object Notation (JSON) from an input stream and uses it to
+     * construct the corresponding parameterized object. The UTF-8 bytes are parsed directly
+     * without decoding them into a string first. The stream is not closed.
+     *
+     * @param <T> The type of object being constructed.
+     * @param classType The parameterized class type being constructed.
+     * @param input The input stream containing the JSON.
+     * @return The corresponding object.
+     * @throws IOException The JSON could not be read or parsed correctly.
+     */
+    static public <T> T fromStream(TypeReference<T> classType, InputStream input) throws IOException {
+        return mappers.safeMapper.cachedReader(classType).readValue(input);
+    }
+
+
+    /**
+     * This function takes a range of UTF-8 bytes containing Javascript Object Notation (JSON)
+     * and uses it to construct the corresponding smart object.
+     *
+     * @param <T> The type of object being constructed.
+     * @param classType The concrete class type being constructed.
+     * @param bytes The array containing the JSON.
+     * @param offset The index of the first byte of the JSON.
+     * @param length The number of bytes in the JSON.
+     * @return The corresponding object.
+     * @throws IOException The JSON could not be parsed correctly.
+     */
+    static public <T> T fromBytes(Class<T> classType, byte[] bytes, int offset, int length) throws IOException {
+        return mappersFor(classType).safeMapper.cachedReader(classType).readValue(bytes, offset, length);
+    }
+
+
+    /**
+     * This function takes a range of UTF-8 bytes containing Javascript Object Notation (JSON)
+     * and uses it to construct the corresponding parameterized object.
+     *
+     * @param <T> The type of object being constructed.
+     * @param classType The parameterized class type being constructed.
+     * @param bytes The array containing the JSON.
+     * @param offset The index of the first byte of the JSON.
+     * @param length The number of bytes in the JSON.
+     * @return The corresponding object.
+     * @throws IOException The JSON could not be parsed correctly.
+     */
+    static public <T> T fromBytes(TypeReference<T> classType, byte[] bytes, int offset, int length) throws IOException {
+        return mappers.safeMapper.cachedReader(classType).readValue(bytes, offset, length);
+    }
+
+
+    /**
+     * This function takes the remaining UTF-8 bytes in a buffer containing Javascript Object
+     * Notation (JSON) and uses them to construct the corresponding smart object. The position
+     * of the buffer is not changed.
+     *
+     * @param <T> The type of object being constructed.
+     * @param classType The concrete class type being constructed.
+     * @param buffer The buffer containing the JSON.
+     * @return The corresponding object.
+     * @throws IOException The JSON could not be parsed correctly.
+     */
+    static public <T> T fromByteBuffer(Class<T> classType, ByteBuffer buffer) throws IOException {
+        return readBuffer(mappersFor(classType).safeMapper.cachedReader(classType), buffer);
+    }
+
+
+    /**
+     * This function takes the remaining UTF-8 bytes in a buffer containing Javascript Object
+     * Notation (JSON) and uses them to construct the corresponding parameterized object. The
+     * position of the buffer is not changed.
+     *
+     * @param <T> The type of object being constructed.
+     * @param classType The parameterized class type being constructed.
+     * @param buffer The buffer containing the JSON.
+     * @return The corresponding object.
+     * @throws IOException The JSON could not be parsed correctly.
+     */
+    static public <T> T fromByteBuffer(TypeReference<T> classType, ByteBuffer buffer) throws IOException {
+        return readBuffer(mappers.safeMapper.cachedReader(classType), buffer);
+    }
+
+
+    /**
+     * This function reads a file containing Javascript Object Notation (JSON) and uses it to
+     * construct the corresponding smart object. Large files are memory mapped and parsed in
+     * place rather than being copied onto the heap.
+     *
+     * @param <T> The type of object being constructed.
+     * @param classType The concrete class type being constructed.
+     * @param file The path to the file containing the JSON.
+     * @return The corresponding object.
+     * @throws IOException The file could not be read or parsed correctly.
+     */
+    static public <T> T fromFile(Class<T> classType, Path file) throws IOException {
+        return readFile(mappersFor(classType).safeMapper.cachedReader(classType), file);
+    }
+
+
+    /**
+     * This function reads a file containing Javascript Object Notation (JSON) and uses it to
+     * construct the corresponding parameterized object. Large files are memory mapped and
+     * parsed in place rather than being copied onto the heap.
+     *
+     * @param <T> The type of object being constructed.
+     * @param classType The parameterized class type being constructed.
+     * @param file The path to the file containing the JSON.
+     * @return The corresponding object.
+     * @throws IOException The file could not be read or parsed correctly.
+     */
+    static public <T> T fromFile(TypeReference<T> classType, Path file) throws IOException {
+        return readFile(mappers.safeMapper.cachedReader(classType), file);
+    }
+
+
+    /**
+     * This function takes UTF-8 bytes containing a large top level JSON array and parses its
+     * elements in parallel using the common fork-join pool. For example:
+     * <pre>
+     *     List&lt;Customer&gt; customers = SmartObject.fromJsonArray(Customer.class, bytes);
+     * </pre>
+     *
+     * @param <T> The type of the elements being constructed.
+     * @param elementType The concrete class type of the elements.
+     * @param bytes The UTF-8 encoded JSON array.
+     * @return A list containing the elements in their original order.
+     * @throws IOException The JSON array could not be parsed correctly.
+     */
+    static public <T> List<T> fromJsonArray(Class<T> elementType, byte[] bytes) throws IOException {
+        return fromJsonArray(elementType, bytes, ForkJoinPool.commonPool());
+    }
+
+
+    /**
+     * This function takes UTF-8 bytes containing a large top level JSON array and parses its
+     * elements in parallel using the specified executor.
+     *
+     * @param <T> The type of the elements being constructed.
+     * @param elementType The concrete class type of the elements.
+     * @param bytes The UTF-8 encoded JSON array.
+     * @param executor The executor to be used to parse the elements.
+     * @return A list containing the elements in their original order.
+     * @throws IOException The JSON array could not be parsed correctly.
+     */
+    static public <T> List<T> fromJsonArray(Class<T> elementType, byte[] bytes, Executor executor) throws IOException {
+        return new BulkReader(mappersFor(elementType).safeMapper.cachedReader(elementType), executor).readArray(bytes, 0, bytes.length);
+    }
+
+
+    /**
+     * This function takes UTF-8 bytes containing a large top level JSON array and parses its
+     * parameterized elements in parallel using the common fork-join pool.
+     *
+     * @param <T> The type of the elements being constructed.
+     * @param elementType The parameterized class type of the elements.
+     * @param bytes The UTF-8 encoded JSON array.
+     * @return A list containing the elements in their original order.
+     * @throws IOException The JSON array could not be parsed correctly.
+     */
+    static public <T> List<T> fromJsonArray(TypeReference<T> elementType, byte[] bytes) throws IOException {
+        return fromJsonArray(elementType, bytes, ForkJoinPool.commonPool());
+    }
+
+
+    /**
+     * This function takes UTF-8 bytes containing a large top level JSON array and parses its
+     * parameterized elements in parallel using the specified executor.
+     *
+     * @param <T> The type of the elements being constructed.
+     * @param elementType The parameterized class type of the elements.
+     * @param bytes The UTF-8 encoded JSON array.
+     * @param executor The executor to be used to parse the elements.
+     * @return A list containing the elements in their original order.
+     * @throws IOException The JSON array could not be parsed correctly.
+     */
+    static public <T> List<T> fromJsonArray(TypeReference<T> elementType, byte[] bytes, Executor executor) throws IOException {
+        return new BulkReader(mappers.safeMapper.cachedReader(elementType), executor).readArray(bytes, 0, bytes.length);
+    }
+
+
+    /**
+     * This function returns an iterator that lazily reads smart objects from an input stream
+     * containing JSON lines, one object per line. Only one line is held in memory at a time.
+     * The stream is closed when the iterator reaches the end of the input or is closed.
+     *
+     * @param <T> The type of object being constructed.
+     * @param classType The concrete class type being constructed.
+     * @param input The input stream containing the JSON lines.
+     * @return An iterator over the corresponding objects.
+     */
+    static public <T> JsonLinesIterator<T> fromJsonLines(Class<T> classType, InputStream input) {
+        return new JsonLinesIterator<>(mappersFor(classType).safeMapper.cachedReader(classType), input, -1);
+    }
+
+
+    /**
+     * This function returns an iterator that lazily reads parameterized objects from an input
+     * stream containing JSON lines, one object per line. Only one line is held in memory at a
+     * time. The stream is closed when the iterator reaches the end of the input or is closed.
+     *
+     * @param <T> The type of object being constructed.
+     * @param classType The parameterized class type being constructed.
+     * @param input The input stream containing the JSON lines.
+     * @return An iterator over the corresponding objects.
+     */
+    static public <T> JsonLinesIterator<T> fromJsonLines(TypeReference<T> classType, InputStream input) {
+        return new JsonLinesIterator<>(mappers.safeMapper.cachedReader(classType), input, -1);
+    }
+
+
+    /**
+     * This function returns an iterator that lazily reads smart objects from a file containing
+     * JSON lines, one object per line. Only one line is held in memory at a time. The iterator
+     * should be closed if it is not read to the end.
+     *
+     * @param <T> The type of object being constructed.
+     * @param classType The concrete class type being constructed.
+     * @param file The path to the file containing the JSON lines.
+     * @return An iterator over the corresponding objects.
+     * @throws IOException The file could not be opened.
+     */
+    static public <T> JsonLinesIterator<T> fromJsonLines(Class<T> classType, Path file) throws IOException {
+        return new JsonLinesIterator<>(mappersFor(classType).safeMapper.cachedReader(classType), Files.newInputStream(file), Files.size(file));
+    }
+
+
+    /**
+     * This function returns an iterator that lazily reads parameterized objects from a file
+     * containing JSON lines, one object per line. Only one line is held in memory at a time.
+     * The iterator should be closed if it is not read to the end.
+     *
+     * @param <T> The type of object being constructed.
+     * @param classType The parameterized class type being constructed.
+     * @param file The path to the file containing the JSON lines.
+     * @return An iterator over the corresponding objects.
+     * @throws IOException The file could not be opened.
+     */
+    static public <T> JsonLinesIterator<T> fromJsonLines(TypeReference<T> classType, Path file) throws IOException {
+        return new JsonLinesIterator<>(mappers.safeMapper.cachedReader(classType), Files.newInputStream(file), Files.size(file));
+    }
+
+
+    static private <T> T readBuffer(ObjectReader reader, ByteBuffer buffer) throws IOException {
+        if (buffer.hasArray()) {
+            return reader.readValue(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        }
+        return reader.readValue(new ByteBufferBackedInputStream(buffer.duplicate()));
+    }
+
+
+    static private <T> T readFile(ObjectReader reader, Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < MAPPING_THRESHOLD || size > Integer.MAX_VALUE) {
+                return reader.readValue(Channels.newInputStream(channel));
+            }
+            // the mapping is released by the garbage collector once the buffer is unreachable
+            return readBuffer(reader, channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+        }
+    }
+
+
+    /**
+     * This function takes bytes encoded in the binary Smile format and uses them to construct
+     * the corresponding smart object.  This function can be used for any non-parameterized
+     * type for example:
+     * <pre>
+     *     Customer customer = SmartObject.fromSmileBytes(Customer.class, bytes);
+     * </pre>
+     *
+     * @param <T> The type of object being constructed.
+     * @param classType The concrete class type being constructed.
+     * @param bytes The Smile encoded bytes.
+     * @return The corresponding object.
+     * @throws IOException The bytes could not be parsed correctly.
+     */
+    static public <T> T fromSmileBytes(Class<T> classType, byte[] bytes) throws IOException {
+        return mappersFor(classType).safeBinaryMapper.cachedReader(classType).readValue(bytes);
+    }
+
+
+    /**
+     * This function takes bytes encoded in the binary Smile format and uses them to construct
+     * the corresponding smart object.  This function can be used for any parameterized type
+     * for example:
+     * <pre>
+     *     List&lt;String&gt; list = SmartObject.fromSmileBytes(new TypeReference&lt;List&lt;String&gt;&gt;() { }, bytes);
+     * </pre>
+     *
+     * @param <T> The type of object being constructed.
+     * @param classType The parameterized class type being constructed.
+     * @param bytes The Smile encoded bytes.
+     * @return The corresponding object.
+     * @throws IOException The bytes could not be parsed correctly.
+     */
+    static public <T> T fromSmileBytes(TypeReference<T> classType, byte[] bytes) throws IOException {
+        return mappers.safeBinaryMapper.cachedReader(classType).readValue(bytes);
     }
 
 
@@ -204,13 +851,135 @@ public abstract class SmartObject<S extends SmartObject<S>> implements Composite
      */
     static public String toString(Object object) {
         try {
-            return safeMapper.writeValueAsString(object);  // masks any sensitive attributes!
+            return mappersOf(object).safeMapper.writeValueAsString(object);  // masks any sensitive attributes!
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("The attempt to map an object to a string failed", e);
+        }
+    }
+
+
+    /**
+     * This function generates a compact Javascript Object Notation (JSON) string from
+     * an object. The string is not indented.
+     *
+     * @param object The object to be turned into a JSON string.
+     * @return The corresponding compact JSON string.
+     */
+    static public String toCompactString(Object object) {
+        try {
+            return mappersOf(object).safeMapper.writeValueAsCompactString(object);  // masks any sensitive attributes!
         } catch (JsonProcessingException e) {
             throw new RuntimeException("The attempt to map an object to a string failed", e);
         }
     }
 
 
+    /**
+     * This function generates a Javascript Object Notation (JSON) string from an object and
+     * returns it encoded as UTF-8 bytes, without creating an intermediate string.
+     *
+     * @param object The object to be turned into JSON.
+     * @return The corresponding UTF-8 encoded JSON.
+     */
+    static public byte[] toUtf8Bytes(Object object) {
+        try {
+            return mappersOf(object).safeMapper.writeValueAsBytes(object);  // masks any sensitive attributes!
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("The attempt to map an object to bytes failed", e);
+        }
+    }
+
+
+    /**
+     * This function writes a Javascript Object Notation (JSON) string for an object directly
+     * to the specified output stream as UTF-8 bytes. The stream is flushed but not closed.
+     *
+     * @param object The object to be written out as JSON.
+     * @param output The output stream to be written to.
+     * @throws IOException The object could not be written to the stream.
+     */
+    static public void writeTo(Object object, OutputStream output) throws IOException {
+        mappersOf(object).safeMapper.streamingWriter().writeValue(output, object);  // masks any sensitive attributes!
+    }
+
+
+    /**
+     * This function writes a large number of objects to an output stream as a single compact
+     * JSON array. The objects are encoded in parallel using the common fork-join pool and then
+     * written in their original order. The objects may come from a collection or a stream:
+     * <pre>
+     *     SmartObject.writeJsonArray(customers.iterator(), output);
+     * </pre>
+     * The stream is flushed but not closed.
+     *
+     * @param objects The objects to be written.
+     * @param output The output stream to be written to.
+     * @throws IOException The objects could not be written to the stream.
+     */
+    static public void writeJsonArray(Iterator<?> objects, OutputStream output) throws IOException {
+        writeJsonArray(objects, output, ForkJoinPool.commonPool());
+    }
+
+
+    /**
+     * This function writes a large number of objects to an output stream as a single compact
+     * JSON array. The objects are encoded in parallel using the specified executor and then
+     * written in their original order. The stream is flushed but not closed.
+     *
+     * @param objects The objects to be written.
+     * @param output The output stream to be written to.
+     * @param executor The executor to be used to encode the objects.
+     * @throws IOException The objects could not be written to the stream.
+     */
+    static public void writeJsonArray(Iterator<?> objects, OutputStream output, Executor executor) throws IOException {
+        new BulkWriter(mappers.safeMapper.compactWriter(), executor).writeArray(objects, output);  // masks any sensitive attributes!
+    }
+
+
+    /**
+     * This function writes a large number of objects to an output stream as JSON lines, one
+     * compact object per line. The objects are encoded in parallel using the common fork-join
+     * pool and then written in their original order. The stream is flushed but not closed.
+     *
+     * @param objects The objects to be written.
+     * @param output The output stream to be written to.
+     * @throws IOException The objects could not be written to the stream.
+     */
+    static public void writeJsonLines(Iterator<?> objects, OutputStream output) throws IOException {
+        writeJsonLines(objects, output, ForkJoinPool.commonPool());
+    }
+
+
+    /**
+     * This function writes a large number of objects to an output stream as JSON lines, one
+     * compact object per line. The objects are encoded in parallel using the specified executor
+     * and then written in their original order. The stream is flushed but not closed.
+     *
+     * @param objects The objects to be written.
+     * @param output The output stream to be written to.
+     * @param executor The executor to be used to encode the objects.
+     * @throws IOException The objects could not be written to the stream.
+     */
+    static public void writeJsonLines(Iterator<?> objects, OutputStream output, Executor executor) throws IOException {
+        new BulkWriter(mappers.safeMapper.compactWriter(), executor).writeLines(objects, output);  // masks any sensitive attributes!
+    }
+
+
+    /**
+     * This function encodes an object in the binary Smile format.
+     *
+     * @param object The object to be encoded.
+     * @return The corresponding Smile encoded bytes.
+     */
+    static public byte[] toSmileBytes(Object object) {
+        try {
+            return mappersOf(object).safeBinaryMapper.writeValueAsBytes(object);  // masks any sensitive attributes!
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("The attempt to map an object to bytes failed", e);
+        }
+    }
+
+
     /**
      * This function generates an indented Javascript Object Notation (JSON) string from
      * an object.
@@ -221,13 +990,68 @@ public abstract class SmartObject<S extends SmartObject<S>> implements Composite
      */
     static public String toString(Object object, String indentation) {
         try {
-            return safeMapper.writeValueAsString(object, indentation);  // masks any sensitive attributes!
+            return mappersOf(object).safeMapper.writeValueAsString(object, indentation);  // masks any sensitive attributes!
         } catch (JsonProcessingException e) {
             throw new RuntimeException("The attempt to map an object to a string failed", e);
         }
     }
 
 
+    /**
+     * This function prepares the mappers for the specified classes so that the first calls to
+     * methods like <code>toString()</code> and <code>fromString()</code> for those classes don't
+     * pay for the resolution of their serializers and deserializers. All masks in
+     * <code>@Sensitive</code> annotations are validated as well. It should be called during
+     * startup for the classes that are used most often, for example:
+     * <pre>
+     *     SmartObject.warmUp(Customer.class, Order.class);
+     * </pre>
+     *
+     * @param classes The classes to be prepared.
+     * @return The time in nanoseconds that it took to prepare each class.
+     * @throws IOException One of the classes cannot be serialized or deserialized.
+     */
+    static public Map<Class<?>, Long> warmUp(Class<?>... classes) throws IOException {
+        Map<Class<?>, Long> timings = new LinkedHashMap<>();
+        for (Class<?> type : classes) {
+            long start = System.nanoTime();
+            MapperSnapshot snapshot = mappersFor(type);
+            snapshot.safeMapper.warmUp(type);
+            snapshot.fullMapper.warmUp(type);
+            long elapsed = System.nanoTime() - start;
+            logger.info("Resolved the serializers and deserializers for {} in {} ms.",
+                    type.getName(), elapsed / 1000000.0);
+            timings.put(type, elapsed);
+        }
+        return timings;
+    }
+
+
+    /**
+     * This function turns on or off the checking of objects whose classes are marked as
+     * <code>@Immutable</code> for modifications after their string forms or hash codes were
+     * cached. The checks are expensive and should only be turned on during testing. They may
+     * also be turned on by setting the <code>craterdog.smart.immutabilityChecks</code> system
+     * property to <code>true</code>.
+     *
+     * @param enabled Whether or not the checks should be performed.
+     */
+    static public void setImmutabilityChecks(boolean enabled) {
+        immutabilityChecks = enabled;
+    }
+
+
+    /**
+     * This function returns whether or not objects whose classes are marked as
+     * <code>@Immutable</code> are checked for modifications after their state was cached.
+     *
+     * @return Whether or not the checks are performed.
+     */
+    static public boolean getImmutabilityChecks() {
+        return immutabilityChecks;
+    }
+
+
     /**
      * This function generates a new object mapper with the specified modules.  For example,
      * to create object mapper that masks sensitive attributes do the following:
@@ -235,11 +1059,146 @@ public abstract class SmartObject<S extends SmartObject<S>> implements Composite
      * ObjectMapper mapper = SmartObject.createMapper(new CensorshipModule());
      * </pre>
      *
+     * If the modules are known to be stateless, the new mapper is a copy of a prototype that is
+     * cached by the <code>MapperFactory</code> class, so the modules are only registered once
+     * for each set of modules.
+     *
      * @param modules The list of modules that should be added to the object mapper.
      * @return A new object mapper containing the specified modules.
      */
     static public ObjectMapper createMapper(Module... modules) {
-        return new SmartObjectMapper(modules);
+        return MapperFactory.createMapper(modules);
+    }
+
+
+    static private MapperSnapshot mappersFor(Class<?> type) {
+        return mappers.scoped(ScopeFingerprint.of(type));
+    }
+
+
+    /**
+     * This function returns the structural comparator that follows the rules of the full mapper
+     * for the specified class.
+     *
+     * @param type The class.
+     * @return The structural comparator.
+     */
+    static StructuralComparator comparatorFor(Class<?> type) {
+        return mappersFor(type).comparator;
+    }
+
+
+    static private MapperSnapshot mappersOf(Object object) {
+        return object == null ? mappers : mappersFor(object.getClass());
+    }
+
+
+    /**
+     * This function registers with the mappers a class type that can be serialized using its
+     * toString() method. Registering the same class more than once has no effect, so it is
+     * safe and cheap to call this function from the constructor of a subclass.
+     *
+     * @param serializable The type of class that can be serialized using its toString() method.
+     */
+    static public void registerSerializableClass(Class<?> serializable) {
+        registerSerializableClass(serializable, UseToStringAsValueMixIn.class);
+    }
+
+
+    /**
+     * This function registers with the mappers a class type that can be serialized using a
+     * mixin class. Registering the same mixin for a class more than once has no effect.
+     *
+     * @param serializable The type of class that can be serialized using the mixin class.
+     * @param mixin The type of class that can be used to serialize the serializable class.
+     */
+    static public void registerSerializableClass(Class<?> serializable, Class<?> mixin) {
+        if (mixin.equals(registeredMixIns.get(serializable))) return;  // the lock free fast path
+        synchronized (registrationLock) {
+            if (mixin.equals(registeredMixIns.get(serializable))) return;
+            mappers = mappers.withMixIn(serializable, mixin);
+            registeredMixIns.put(serializable, mixin);
+        }
+    }
+
+
+    /**
+     * This function registers with the mappers a Jackson module that can be used to serialize
+     * and deserialize instances of smart object classes. Like Jackson itself, modules with the
+     * same type id are only registered once, and so are plain simple modules with the same name.
+     * A plain simple module without a name cannot be told apart from a different one so it is
+     * rejected, give it a name instead.
+     *
+     * @param module The module to be registered.
+     * @throws IllegalArgumentException The module has neither a type id nor a name.
+     */
+    static public void registerModule(Module module) {
+        Object key = keyFor(module);
+        if (key == null) {
+            throw new IllegalArgumentException("An unnamed module cannot be registered more than once, give it a name.");
+        }
+        registerModule(key, module);
+    }
+
+
+    /*
+     * This function returns the key that identifies the specified module, either its type id or
+     * its class and name, or null if it is a plain simple module with a generated name.
+     */
+    static private Object keyFor(Module module) {
+        String name = module.getModuleName();
+        if (module.getClass() == SimpleModule.class && isGeneratedName(name)) {
+            return null;  // the name was generated for this instance
+        }
+        Object id = module.getTypeId();
+        if (id != null) return id;
+        if (name == null) return null;
+        return Arrays.asList(module.getClass(), name);
+    }
+
+
+    /*
+     * This function determines whether or not the specified name was generated by Jackson for a
+     * plain simple module that was not given a name, "SimpleModule-" followed by a number.
+     */
+    static private boolean isGeneratedName(String name) {
+        String prefix = "SimpleModule-";
+        if (name == null || !name.startsWith(prefix) || name.length() == prefix.length()) return false;
+        for (int i = prefix.length(); i < name.length(); i++) {
+            if (!Character.isDigit(name.charAt(i))) return false;
+        }
+        return true;
+    }
+
+
+    static private void registerModule(Object key, Module module) {
+        if (registeredModules.containsKey(key)) return;  // the lock free fast path
+        synchronized (registrationLock) {
+            if (registeredModules.containsKey(key)) return;
+            mappers = mappers.withModule(module);
+            registeredModules.put(key, Boolean.TRUE);
+        }
+    }
+
+
+    /**
+     * This function returns the current snapshot of the shared mappers.
+     *
+     * @return The current snapshot.
+     */
+    static MapperSnapshot currentMappers() {
+        return mappers;
+    }
+
+
+    /**
+     * This function switches the mappers over to generated accessors for reading and writing the
+     * attributes of smart objects instead of reflection. See the <code>AccessorModule</code>
+     * class for the details. The generated accessors may also be turned on by setting the
+     * <code>craterdog.smart.generatedAccessors</code> system property to <code>true</code>.
+     */
+    static public void enableGeneratedAccessors() {
+        registerModule(new AccessorModule());
     }
 
 
@@ -248,10 +1207,11 @@ public abstract class SmartObject<S extends SmartObject<S>> implements Composite
      * serialized using its toString().
      *
      * @param serializable The type of class that can be serialized using its toString() method.
+     * @deprecated Use the static <code>registerSerializableClass(Class)</code> function instead.
      */
+    @Deprecated
     protected void addSerializableClass(Class<?> serializable) {
-        safeMapper.addMixIn(serializable, UseToStringAsValueMixIn.class);
-        fullMapper.addMixIn(serializable, UseToStringAsValueMixIn.class);
+        registerSerializableClass(serializable);
     }
 
 
@@ -261,22 +1221,29 @@ public abstract class SmartObject<S extends SmartObject<S>> implements Composite
      *
      * @param serializable The type of class that can be serialized using its toString() method.
      * @param mixin The type of class that can be used to serialized the serializable class.
+     * @deprecated Use the static <code>registerSerializableClass(Class, Class)</code> function instead.
      */
+    @Deprecated
     protected void addSerializableClass(Class<?> serializable, Class<?> mixin) {
-        safeMapper.addMixIn(serializable, mixin);
-        fullMapper.addMixIn(serializable, mixin);
+        registerSerializableClass(serializable, mixin);
     }
 
 
     /**
      * This protected method allows a subclass to add to the mappers a Jackson module that can
-     * be used to serialize and deserialize instances of the subclass.
+     * be used to serialize and deserialize instances of the subclass. A plain simple module
+     * without a name is identified by the class of this object and the order in which the
+     * constructors of this object register their unnamed modules, so the modules that are
+     * registered again each time an object is constructed are only registered the first time.
      *
      * @param module The type of class that can be serialized using its toString() method.
+     * @deprecated Use the static <code>registerModule(Module)</code> function instead.
      */
+    @Deprecated
     protected void addSerializableClass(Module module) {
-        safeMapper.registerModule(module);
-        fullMapper.registerModule(module);
+        Object key = keyFor(module);
+        if (key == null) key = Arrays.asList(getClass(), module.getClass(), unnamedModules++);
+        registerModule(key, module);
     }
 
 }
@@ -9,26 +9,38 @@
  ************************************************************************/
 package craterdog.smart;
 
+import java.lang.reflect.Type;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.Map;
 import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonInclude.Include;
 import com.fasterxml.jackson.annotation.JsonInclude.Value;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.PrettyPrinter;
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.core.util.DefaultIndenter;
 import com.fasterxml.jackson.core.util.DefaultPrettyPrinter;
+import com.fasterxml.jackson.databind.DeserializationContext;
 import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.Module;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.SerializerProvider;
 import com.fasterxml.jackson.datatype.joda.JodaModule;
 
 /**
- * This object mapper handles the conversion of a smart object to and from a JSON string. The mapper
+ * This object mapper handles the conversion of a smart object to and from a JSON string, or to and
+ * from a binary format like Smile when it is created with the corresponding factory. The mapper
  * can be configured to censor sensitive attributes that are marked with the <code>@Sensitive</code>
  * annotation.
  *
@@ -39,16 +51,39 @@ import com.fasterxml.jackson.datatype.joda.JodaModule;
 @SuppressWarnings("serial")
 class SmartObjectMapper extends ObjectMapper {
 
+    // the depth of the writer that does not indent its output
+    static private final int COMPACT = -1;
+
+    // the depth of the writer that indents its output like this mapper but leaves its target open
+    static private final int STREAMING = -2;
+
+    // the writers and readers that have been built for this mapper, they must be rebuilt when the mapper changes
+    private final transient ConcurrentHashMap<Integer, ObjectWriter> writers = new ConcurrentHashMap<>();
+    private final transient ConcurrentHashMap<Type, ObjectReader> readers = new ConcurrentHashMap<>();
+
     /**
      * This constructor creates a new smart object mapper for the specified modules.
      *
      * @param modules The modules to be registered.
      */
     SmartObjectMapper(Module... modules) {
-        super();
+        this(null, modules);
+    }
+
+
+    /**
+     * This constructor creates a new smart object mapper for the specified modules that uses the
+     * specified factory to read and write its format. The mapping rules are the same for all
+     * formats, only text formats are indented.
+     *
+     * @param factory The factory for the format, or null for JSON.
+     * @param modules The modules to be registered.
+     */
+    SmartObjectMapper(JsonFactory factory, Module... modules) {
+        super(factory);
 
-        // indent the output
-        enable(SerializationFeature.INDENT_OUTPUT);
+        // indent the output unless it is binary
+        if (getFactory().canUseCharArrays()) enable(SerializationFeature.INDENT_OUTPUT);
 
         // allow empty beans
         disable(SerializationFeature.FAIL_ON_EMPTY_BEANS);
@@ -68,6 +103,10 @@ class SmartObjectMapper extends ObjectMapper {
 
         // handle joda types
         registerModule(new JodaModule());
+        registerModule(StructuralComparator.sharingModule());  // lets copies share the immutable date times
+
+        // handle smart object classes whose support was generated at compile time
+        registerModule(new CompiledModule());
 
         // handle primitive types that can generate strings
         addMixIn(craterdog.primitives.BinaryString.class, UseToStringAsValueMixIn.class);
@@ -88,6 +127,24 @@ class SmartObjectMapper extends ObjectMapper {
     }
 
 
+    /**
+     * This constructor creates a new smart object mapper with the same configuration as the
+     * specified mapper. None of the serializers or deserializers that the specified mapper has
+     * already built are shared with the new one.
+     *
+     * @param source The mapper to be copied.
+     */
+    SmartObjectMapper(SmartObjectMapper source) {
+        super(source);
+    }
+
+
+    @Override
+    public SmartObjectMapper copy() {
+        return new SmartObjectMapper(this);
+    }
+
+
     /**
      * This method behaves similarly to the <code>writeValueAsString(Object value)</code> method
      * except that it includes an indentation prefix that will be prepended to each line of the
@@ -99,8 +156,176 @@ class SmartObjectMapper extends ObjectMapper {
      * @throws JsonProcessingException The JSON object mapper was not able to serialize the object.
      */
     String writeValueAsString(Object value, String indentation) throws JsonProcessingException {
-        PrettyPrinter printer = new BetterPrettyPrinter(indentation).withArrayIndenter(new DefaultIndenter());
-        return writer(printer).writeValueAsString(value);
+        return cachedWriter(indentation.length() / 2).writeValueAsString(value);  // two spaces per level
+    }
+
+
+    /**
+     * This method behaves similarly to the <code>writeValueAsString(Object value)</code> method
+     * except that the resulting string is not indented. It is the most compact form of the JSON.
+     *
+     * @param value The smart object to be written out as a string.
+     * @return The compact string.
+     * @throws JsonProcessingException The JSON object mapper was not able to serialize the object.
+     */
+    String writeValueAsCompactString(Object value) throws JsonProcessingException {
+        return cachedWriter(COMPACT).writeValueAsString(value);
+    }
+
+
+    /**
+     * This method returns the writer that generates the most compact form of the JSON. The
+     * writer is built once and then reused until the configuration of this mapper changes.
+     *
+     * @return The compact writer.
+     */
+    ObjectWriter compactWriter() {
+        return cachedWriter(COMPACT);
+    }
+
+
+    /**
+     * This method returns the writer that writes the same JSON as this mapper to an output stream
+     * or writer without closing it afterwards, that is left up to the caller. The writer is built
+     * once and then reused until the configuration of this mapper changes.
+     *
+     * @return The streaming writer.
+     */
+    ObjectWriter streamingWriter() {
+        return cachedWriter(STREAMING);
+    }
+
+
+    /**
+     * This method eagerly builds and caches the serializer and deserializer that this mapper uses
+     * for the specified type, including the serializers for all of its attributes. Any problems
+     * with the type, like an invalid <code>@Sensitive</code> mask, are reported immediately.
+     *
+     * @param type The type to be prepared.
+     * @throws JsonMappingException The type cannot be serialized or deserialized.
+     */
+    void warmUp(Class<?> type) throws JsonMappingException {
+        serializerProvider().findTypedValueSerializer(type, true, null);
+        cachedReader(type);  // the reader fetches its root deserializer when it is created
+    }
+
+
+    /**
+     * This method returns a reader for the specified type. The reader is built once and then
+     * reused until the configuration of this mapper changes. It does not close any stream that it
+     * reads from, that is left up to the caller.
+     *
+     * @param type The type of object to be read.
+     * @return The corresponding reader.
+     */
+    ObjectReader cachedReader(Class<?> type) {
+        ObjectReader reader = readers.get(type);
+        if (reader == null) {
+            reader = readerFor(type).without(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+            readers.putIfAbsent(type, reader);
+        }
+        return reader;
+    }
+
+
+    /**
+     * This method returns a reader for the specified parameterized type. The reader is built once
+     * and then reused until the configuration of this mapper changes. It does not close any
+     * stream that it reads from, that is left up to the caller.
+     *
+     * @param type The parameterized type of object to be read.
+     * @return The corresponding reader.
+     */
+    ObjectReader cachedReader(TypeReference<?> type) {
+        ObjectReader reader = readers.get(type.getType());
+        if (reader == null) {
+            reader = readerFor(type).without(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+            readers.putIfAbsent(type.getType(), reader);
+        }
+        return reader;
+    }
+
+
+    /*
+     * This method returns a writer that indents its output starting at the specified depth, or
+     * a compact writer for the COMPACT depth, or a writer that leaves its target open for the
+     * STREAMING depth. The writer is built once and then reused until the configuration of this
+     * mapper changes.
+     */
+    private ObjectWriter cachedWriter(int depth) {
+        ObjectWriter writer = writers.get(depth);
+        if (writer == null) {
+            if (depth == COMPACT) {
+                writer = writer().without(SerializationFeature.INDENT_OUTPUT);
+            } else if (depth == STREAMING) {
+                writer = writer().without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            } else {
+                PrettyPrinter printer = new BetterPrettyPrinter(depth).withArrayIndenter(new DefaultIndenter());
+                writer = writer(printer);
+            }
+            writers.putIfAbsent(depth, writer);
+        }
+        return writer;
+    }
+
+
+    @Override
+    public ObjectMapper registerModule(Module module) {
+        ObjectMapper mapper = super.registerModule(module);
+        clearCachedWritersAndReaders();  // they have a copy of the old configuration
+        return mapper;
+    }
+
+
+    @Override
+    public ObjectMapper addMixIn(Class<?> target, Class<?> mixinSource) {
+        ObjectMapper mapper = super.addMixIn(target, mixinSource);
+        clearCachedWritersAndReaders();  // they have a copy of the old configuration
+        return mapper;
+    }
+
+
+    private void clearCachedWritersAndReaders() {
+        writers.clear();
+        readers.clear();
+    }
+
+
+    /**
+     * This method returns a new serializer provider instance that is bound to the current
+     * configuration of this mapper. It can be used to look up the serializers that this mapper
+     * would use for specific types.
+     *
+     * @return A new serializer provider instance.
+     */
+    SerializerProvider serializerProvider() {
+        return _serializerProvider(getSerializationConfig());
+    }
+
+
+    /**
+     * This method returns a new deserialization context that is bound to the current
+     * configuration of this mapper and reads from the specified parser.
+     *
+     * @param parser The parser.
+     * @return A new deserialization context.
+     */
+    DeserializationContext deserializationContext(JsonParser parser) {
+        return createDeserializationContext(parser, getDeserializationConfig());
+    }
+
+
+    /**
+     * This method sets an attribute of the configuration of this mapper that the serializers
+     * and deserializers it builds can look up. It must not be called once the mapper is in use.
+     *
+     * @param key The key of the attribute.
+     * @param value The value of the attribute.
+     */
+    void setAttribute(Object key, Object value) {
+        _serializationConfig = _serializationConfig.withAttribute(key, value);
+        _deserializationConfig = _deserializationConfig.withAttribute(key, value);
+        clearCachedWritersAndReaders();  // they have a copy of the old configuration
     }
 
 
@@ -110,9 +335,9 @@ class SmartObjectMapper extends ObjectMapper {
             super();
         }
 
-        BetterPrettyPrinter(String indentation) {
+        BetterPrettyPrinter(int depth) {
             super();
-            _nesting = indentation.length() / 2;  // two spaces per level
+            _nesting = depth;
         }
 
     }
@@ -0,0 +1,1195 @@
+/************************************************************************
+ * Copyright (c) Crater Dog Technologies(TM).  All Rights Reserved.     *
+ ************************************************************************
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.        *
+ *                                                                      *
+ * This code is free software; you can redistribute it and/or modify it *
+ * under the terms of The MIT License (MIT), as published by the Open   *
+ * Source Initiative. (See http://opensource.org/licenses/MIT)          *
+ ************************************************************************/
+package craterdog.smart;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.AnnotationIntrospector;
+import com.fasterxml.jackson.databind.BeanDescription;
+import com.fasterxml.jackson.databind.BeanProperty;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.Module;
+import com.fasterxml.jackson.databind.SerializationConfig;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.deser.std.DelegatingDeserializer;
+import com.fasterxml.jackson.databind.introspect.AnnotatedMember;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.ser.BeanPropertyWriter;
+import com.fasterxml.jackson.databind.ser.BeanSerializer;
+import com.fasterxml.jackson.databind.ser.PropertyWriter;
+import com.fasterxml.jackson.databind.ser.std.AsArraySerializerBase;
+import com.fasterxml.jackson.databind.ser.std.BooleanSerializer;
+import com.fasterxml.jackson.databind.ser.std.JsonValueSerializer;
+import com.fasterxml.jackson.databind.ser.std.MapSerializer;
+import com.fasterxml.jackson.databind.ser.std.NumberSerializer;
+import com.fasterxml.jackson.databind.ser.std.NumberSerializers;
+import com.fasterxml.jackson.databind.ser.std.ObjectArraySerializer;
+import com.fasterxml.jackson.databind.ser.std.StaticListSerializerBase;
+import com.fasterxml.jackson.databind.ser.std.StdKeySerializers;
+import com.fasterxml.jackson.databind.ser.std.StringSerializer;
+import com.fasterxml.jackson.databind.ser.std.ToStringSerializer;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import com.fasterxml.jackson.datatype.joda.deser.DateTimeDeserializer;
+import craterdog.primitives.BinaryString;
+import craterdog.primitives.Tag;
+import craterdog.primitives.TextString;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Field;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.net.URI;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import org.joda.time.DateTime;
+import org.slf4j.ext.XLogger;
+import org.slf4j.ext.XLoggerFactory;
+
+/**
+ * This class implements the structural comparison (and copying) of objects for a smart object
+ * mapper. Rather than generating a JSON string for each object it walks the same properties, in the
+ * same order, that the Jackson serializers of the mapper would write out and produces the
+ * corresponding sequence of JSON tokens directly. Two objects whose token sequences match would
+ * produce the same JSON string and vice versa, so the results agree exactly with those based on the
+ * JSON strings.
+ * <p>
+ * The accessors for the properties of each class are looked up once and cached as method handles,
+ * except for the properties that the <code>AccessorModule</code> has generated accessors for.
+ * The attributes of a precompiled smart object are read through its generated support instead.
+ * Any value whose serializer is not understood by this class (e.g. dates or enumerations) is
+ * serialized by Jackson itself into a token buffer and the resulting tokens are used instead. If
+ * the mapper is configured in a way that this class does not support, the JSON strings are used.
+ *
+ * @author Derk Norton
+ */
+final class StructuralComparator {
+
+    static private final XLogger logger = XLoggerFactory.getXLogger(StructuralComparator.class);
+
+    // immutable types that can be shared between an object and its copy
+    static private final Set<Class<?>> immutableTypes = new HashSet<Class<?>>(Arrays.asList(
+            BinaryString.class, Tag.class, TextString.class, URI.class, DateTime.class));
+
+    private final SmartObjectMapper mapper;
+    private final Slot root = new Slot(null, null, false);
+    private final ConcurrentHashMap<BeanSerializer, BeanPlan> beanPlans = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Class<?>, ValuePlan> valuePlans = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<CompiledSupport<?>, Slot[]> compiledSlots = new ConcurrentHashMap<>();
+    private volatile Boolean sharesDateTimes;  // null until the date time deserializer has been looked up
+
+
+    /**
+     * This constructor creates a new structural comparator for the specified mapper.
+     *
+     * @param mapper The mapper whose serialization rules should be followed.
+     */
+    StructuralComparator(SmartObjectMapper mapper) {
+        this.mapper = mapper;
+    }
+
+
+    /**
+     * This function returns a module that lets the Joda date time deserializer accept a date time
+     * that a copy shares with its original, rather than only its string form. It is registered
+     * with every smart object mapper after the Joda module.
+     *
+     * @return The module.
+     */
+    static Module sharingModule() {
+        @SuppressWarnings("unchecked")
+        JsonDeserializer<DateTime> deserializer = (JsonDeserializer<DateTime>) (JsonDeserializer<?>)
+                new SharedValueDeserializer(DateTime.class, DateTimeDeserializer.forType(DateTime.class));
+        return new SimpleModule("SharingModule").addDeserializer(DateTime.class, deserializer);
+    }
+
+
+    /**
+     * This method determines whether or not the JSON strings generated by the mapper for the
+     * two specified objects would be equal. It stops at the first difference that is found.
+     *
+     * @param first The first object.
+     * @param second The second object.
+     * @return Whether or not the two objects would be serialized the same way.
+     * @throws IOException The objects could not be serialized.
+     */
+    boolean areEqual(Object first, Object second) throws IOException {
+        try {
+            SerializerProvider provider = supportedProvider();
+            if (provider != null) {
+                TokenStream firstStream = new TokenStream(provider, first);
+                TokenStream secondStream = new TokenStream(provider, second);
+                while (true) {
+                    JsonToken token = firstStream.nextToken();
+                    if (!sameKind(token, secondStream.nextToken())) return false;
+                    if (token == null) return true;
+                    if (token.isScalarValue() || token == JsonToken.FIELD_NAME) {
+                        if (!firstStream.text.equals(secondStream.text)) return false;
+                    }
+                }
+            }
+        } catch (UnsupportedStructureException e) {
+            logger.debug("Falling back on a JSON string comparison: {}", e.getMessage());
+        }
+        // the indentation is the same for equal objects so the compact strings can be compared
+        return mapper.writeValueAsCompactString(first).equals(mapper.writeValueAsCompactString(second));
+    }
+
+
+    /**
+     * This method returns a hash code for the specified object that is based solely on the JSON
+     * string that the mapper would generate for the object. Objects whose JSON strings are equal
+     * have equal hash codes.
+     *
+     * @param object The object to be hashed.
+     * @return The hash code for the object.
+     * @throws IOException The object could not be serialized.
+     */
+    int hashCodeOf(Object object) throws IOException {
+        try {
+            SerializerProvider provider = supportedProvider();
+            if (provider != null) {
+                return hashTokens(new TokenStream(provider, object));
+            }
+        } catch (UnsupportedStructureException e) {
+            logger.debug("Falling back on a JSON string hash: {}", e.getMessage());
+        }
+        // hash the tokens of the actual JSON string so that the result is consistent with the above
+        String json = mapper.writeValueAsCompactString(object);
+        try (JsonParser parser = mapper.getFactory().createParser(json)) {
+            return hashTokens(new TokenStream(parser));
+        }
+    }
+
+
+    /**
+     * This method compares the JSON strings that the mapper would generate for the two specified
+     * objects. The strings are generated lazily, a token at a time, and only until the order of
+     * the two strings is known. The result is identical to that of <code>String.compareTo()</code>
+     * on the complete strings.
+     *
+     * @param first The first object.
+     * @param second The second object.
+     * @return The result of comparing the JSON strings for the two objects.
+     * @throws IOException The objects could not be serialized.
+     */
+    int compare(Object first, Object second) throws IOException {
+        try {
+            SerializerProvider provider = supportedProvider();
+            if (provider != null) {
+                TextCursor firstCursor = new TextCursor(new TokenStream(provider, first));
+                TextCursor secondCursor = new TextCursor(new TokenStream(provider, second));
+                while (firstCursor.fill() && secondCursor.fill()) {
+                    int length = Math.min(firstCursor.available(), secondCursor.available());
+                    for (int i = 0; i < length; i++) {
+                        char firstChar = firstCursor.take();
+                        char secondChar = secondCursor.take();
+                        if (firstChar != secondChar) return firstChar - secondChar;
+                    }
+                }
+                // one string is a prefix of the other so the longer one is greater
+                return firstCursor.drain() - secondCursor.drain();
+            }
+        } catch (UnsupportedStructureException e) {
+            logger.debug("Falling back on a JSON string comparison: {}", e.getMessage());
+        }
+        return mapper.writeValueAsString(first).compareTo(mapper.writeValueAsString(second));
+    }
+
+
+    /**
+     * This method creates a copy of the specified object. The tokens for the object are written
+     * into a token buffer, rather than a JSON string, which is then used to construct the copy.
+     * The values of any immutable attributes (e.g. tags and URIs) are shared by the copy rather
+     * than being converted to strings and parsed again.
+     *
+     * @param <T> The type of the copy.
+     * @param object The object to be copied.
+     * @param type The type of the copy.
+     * @return A copy of the object.
+     * @throws IOException The object could not be copied.
+     */
+    <T> T copy(Object object, Class<T> type) throws IOException {
+        TokenBuffer buffer = new TokenBuffer(mapper, false);
+        try {
+            SerializerProvider provider = supportedProvider();
+            if (provider != null) {
+                TokenStream stream = new TokenStream(provider, object, true);
+                while (stream.nextToken() != null) {
+                    stream.writeTo(buffer);
+                }
+            } else {
+                mapper.writeValue(buffer, object);
+            }
+        } catch (UnsupportedStructureException e) {
+            logger.debug("Falling back on a token buffer copy: {}", e.getMessage());
+            buffer = new TokenBuffer(mapper, false);
+            mapper.writeValue(buffer, object);
+        }
+        try (JsonParser parser = buffer.asParser(mapper)) {
+            return mapper.readValue(parser, type);
+        }
+    }
+
+
+    private int hashTokens(TokenStream stream) throws IOException {
+        int hash = 1;
+        JsonToken token;
+        while ((token = stream.nextToken()) != null) {
+            hash = 31 * hash + kindOf(token);
+            if (token.isScalarValue() || token == JsonToken.FIELD_NAME) {
+                hash = 31 * hash + stream.text.hashCode();
+            }
+        }
+        return hash;
+    }
+
+
+    /*
+     * This method returns a serializer provider for the current configuration of the mapper, or
+     * null if the mapper has been configured in a way that changes how the JSON strings would be
+     * generated from the tokens.
+     */
+    @SuppressWarnings("deprecation")
+    private SerializerProvider supportedProvider() {
+        SerializationConfig config = mapper.getSerializationConfig();
+        if (config.getActiveView() != null
+                || config.isEnabled(SerializationFeature.WRAP_ROOT_VALUE)
+                || config.isEnabled(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS)
+                || config.isEnabled(SerializationFeature.WRITE_SINGLE_ELEM_ARRAYS_UNWRAPPED)
+                || !config.isEnabled(SerializationFeature.WRITE_NULL_MAP_VALUES)
+                || !config.isEnabled(SerializationFeature.WRITE_EMPTY_JSON_ARRAYS)
+                || mapper.getFactory().isEnabled(JsonGenerator.Feature.WRITE_NUMBERS_AS_STRINGS)
+                || mapper.getFactory().isEnabled(JsonGenerator.Feature.WRITE_BIGDECIMAL_AS_PLAIN)
+                || config.getDefaultTyper(mapper.constructType(Object.class)) != null) {
+            return null;
+        }
+        return mapper.serializerProvider();
+    }
+
+
+    static private boolean sameKind(JsonToken first, JsonToken second) {
+        if (first == null || second == null) return first == second;
+        return kindOf(first) == kindOf(second);
+    }
+
+
+    static private int kindOf(JsonToken token) {
+        // integer and floating point numbers are distinguished by their text alone
+        return token == JsonToken.VALUE_NUMBER_FLOAT ? JsonToken.VALUE_NUMBER_INT.ordinal() : token.ordinal();
+    }
+
+
+    static private boolean isAllowed(JsonInclude.Include inclusion) {
+        return inclusion == null
+                || inclusion == JsonInclude.Include.ALWAYS
+                || inclusion == JsonInclude.Include.NON_NULL
+                || inclusion == JsonInclude.Include.USE_DEFAULTS;
+    }
+
+
+    static private MethodHandle accessorFor(AnnotatedMember member) {
+        try {
+            Member javaMember = member.getMember();
+            if (javaMember instanceof AccessibleObject) {
+                ((AccessibleObject) javaMember).setAccessible(true);
+            }
+            MethodHandle handle;
+            if (javaMember instanceof Field) {
+                handle = MethodHandles.lookup().unreflectGetter((Field) javaMember);
+            } else if (javaMember instanceof Method && ((Method) javaMember).getParameterTypes().length == 0) {
+                handle = MethodHandles.lookup().unreflect((Method) javaMember);
+            } else {
+                return null;
+            }
+            return handle.asType(MethodType.methodType(Object.class, Object.class));
+        } catch (IllegalAccessException | RuntimeException e) {
+            logger.debug("Unable to access member {}: {}", member.getName(), e.getMessage());
+            return null;
+        }
+    }
+
+
+    static private Object read(PropertyPlan property, Object bean) throws IOException {
+        if (property.accessor != null) return invoke(property.accessor, bean);
+        try {
+            return property.writer.get(bean);
+        } catch (IOException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("Unable to access a property of " + bean.getClass().getName(), e);
+        }
+    }
+
+
+    static private Object invoke(MethodHandle accessor, Object object) throws IOException {
+        try {
+            return (Object) accessor.invokeExact(object);
+        } catch (IOException | RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IOException("Unable to access a property of " + object.getClass().getName(), e);
+        }
+    }
+
+
+    /*
+     * This method returns the cached plan for walking the properties of the specified bean class
+     * using the specified bean serializer. The plans are cached per serializer since a property may
+     * contextualize the serializer for its value (e.g. to ignore some of the properties).
+     */
+    private BeanPlan beanPlanFor(Class<?> type, BeanSerializer serializer, SerializerProvider provider) {
+        BeanPlan plan = beanPlans.get(serializer);
+        if (plan == null) {
+            plan = new BeanPlan(buildProperties(type, serializer, provider));
+            beanPlans.put(serializer, plan);
+        }
+        return plan;
+    }
+
+
+    private PropertyPlan[] buildProperties(Class<?> type, BeanSerializer serializer, SerializerProvider provider) {
+        try {
+            SerializationConfig config = mapper.getSerializationConfig();
+            AnnotationIntrospector introspector = config.getAnnotationIntrospector();
+            JavaType javaType = mapper.constructType(type);
+            BeanDescription description = config.introspect(javaType);
+            if (description.findAnyGetter() != null || description.getObjectIdInfo() != null
+                    || introspector.findFilterId(description.getClassInfo()) != null
+                    || provider.findTypeSerializer(javaType) != null) {
+                return null;
+            }
+            JsonInclude.Value classInclusion = description.findPropertyInclusion(null);
+            if (classInclusion != null && !isAllowed(classInclusion.getValueInclusion())) return null;
+            List<PropertyPlan> properties = new ArrayList<>();
+            Iterator<PropertyWriter> iterator = serializer.properties();
+            while (iterator.hasNext()) {
+                PropertyWriter writer = iterator.next();
+                if (writer.getClass() != BeanPropertyWriter.class
+                        && writer.getClass() != AccessorModule.AccessorPropertyWriter.class) return null;
+                BeanPropertyWriter property = (BeanPropertyWriter) writer;
+                if (property.getTypeSerializer() != null || property.hasNullSerializer() || property.isUnwrapping()) {
+                    return null;
+                }
+                JsonInclude.Value memberInclusion = introspector.findPropertyInclusion(property.getMember());
+                JsonInclude.Value typeInclusion = config.getDefaultPropertyInclusion(property.getType().getRawClass());
+                if (memberInclusion != null && !isAllowed(memberInclusion.getValueInclusion())
+                        || typeInclusion != null && !isAllowed(typeInclusion.getValueInclusion())) {
+                    return null;
+                }
+                MethodHandle accessor = null;
+                if (property.getClass() == BeanPropertyWriter.class) {
+                    accessor = accessorFor(property.getMember());
+                    if (accessor == null) return null;
+                }  // otherwise the value is read through the generated accessor of the writer
+                JsonSerializer<Object> assigned = property.hasSerializer() ? property.getSerializer() : null;
+                properties.add(new PropertyPlan(property.getName(), accessor, property, property.willSuppressNulls(),
+                        new Slot(property, assigned, true)));
+            }
+            return properties.toArray(new PropertyPlan[properties.size()]);
+        } catch (JsonMappingException | RuntimeException e) {
+            logger.debug("Unable to plan the properties of {}: {}", type.getName(), e.getMessage());
+            return null;
+        }
+    }
+
+
+    /*
+     * This method returns the cached slots for the attributes of a precompiled class.
+     */
+    private Slot[] compiledSlotsFor(CompiledSupport<?> support) {
+        Slot[] slots = compiledSlots.get(support);
+        if (slots == null) {
+            slots = new Slot[support.attributeNames().length];
+            for (int i = 0; i < slots.length; i++) {
+                slots[i] = new Slot(null, null, false);  // the support serializes values without a property
+            }
+            compiledSlots.put(support, slots);
+        }
+        return slots;
+    }
+
+
+    /*
+     * This method determines whether or not the mapper reads Joda date times using the deserializer
+     * of the sharing module, which is not the case if another module has replaced it.
+     */
+    private boolean sharesDateTimes() {
+        Boolean shares = sharesDateTimes;
+        if (shares == null) {
+            try {
+                shares = mapper.deserializationContext(null).findRootValueDeserializer(
+                        mapper.constructType(DateTime.class)) instanceof SharedValueDeserializer;
+            } catch (JsonMappingException | RuntimeException e) {
+                logger.debug("Unable to find the deserializer for date times: {}", e.getMessage());
+                shares = false;
+            }
+            sharesDateTimes = shares;
+        }
+        return shares;
+    }
+
+
+    /*
+     * This method returns the cached accessor for the @JsonValue member of the specified class.
+     */
+    private MethodHandle valueAccessorFor(Class<?> type) {
+        ValuePlan plan = valuePlans.get(type);
+        if (plan == null) {
+            AnnotatedMember member = mapper.getSerializationConfig()
+                    .introspect(mapper.constructType(type)).findJsonValueAccessor();
+            plan = new ValuePlan(member == null ? null : accessorFor(member));
+            valuePlans.put(type, plan);
+        }
+        return plan.accessor;
+    }
+
+
+    /**
+     * This class is thrown when a structure is encountered part way through a token stream that
+     * cannot be handled. The caller falls back on the JSON strings in this case.
+     */
+    @SuppressWarnings("serial")
+    static private class UnsupportedStructureException extends RuntimeException {
+
+        UnsupportedStructureException(String message) {
+            super(message, null, false, false);
+        }
+
+    }
+
+
+    /**
+     * This class captures a cached plan for walking the properties of a bean.
+     */
+    static private class BeanPlan {
+
+        final PropertyPlan[] properties;  // null if the bean is not supported
+
+        BeanPlan(PropertyPlan[] properties) {
+            this.properties = properties;
+        }
+
+    }
+
+
+    /**
+     * This class captures a cached accessor for a single property of a bean.
+     */
+    static private class PropertyPlan {
+
+        final String name;
+        final MethodHandle accessor;  // null if the value is read through the writer
+        final BeanPropertyWriter writer;
+        final boolean suppressNulls;
+        final Slot slot;
+
+        PropertyPlan(String name, MethodHandle accessor, BeanPropertyWriter writer, boolean suppressNulls, Slot slot) {
+            this.name = name;
+            this.accessor = accessor;
+            this.writer = writer;
+            this.suppressNulls = suppressNulls;
+            this.slot = slot;
+        }
+
+    }
+
+
+    /**
+     * This class captures a cached accessor for the @JsonValue member of a class.
+     */
+    static private class ValuePlan {
+
+        final MethodHandle accessor;  // null if there is no usable accessor
+
+        ValuePlan(MethodHandle accessor) {
+            this.accessor = accessor;
+        }
+
+    }
+
+
+    /**
+     * This class reads a value exactly like the deserializer it delegates to except that it also
+     * accepts an embedded value of its type, which is returned as is.
+     */
+    @SuppressWarnings("serial")
+    static private class SharedValueDeserializer extends DelegatingDeserializer {
+
+        private final Class<?> type;
+
+        SharedValueDeserializer(Class<?> type, JsonDeserializer<?> delegate) {
+            super(delegate);
+            this.type = type;
+        }
+
+        @Override
+        protected JsonDeserializer<?> newDelegatingInstance(JsonDeserializer<?> delegate) {
+            return new SharedValueDeserializer(type, delegate);
+        }
+
+        @Override
+        public Object deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+            if (parser.hasToken(JsonToken.VALUE_EMBEDDED_OBJECT) && type.isInstance(parser.getEmbeddedObject())) {
+                return parser.getEmbeddedObject();
+            }
+            return super.deserialize(parser, context);
+        }
+
+    }
+
+
+    /**
+     * This class represents a position in an object graph (a property, or the elements of a
+     * collection that is stored in a property) and caches the serializer that was most recently
+     * used for the values found at that position.
+     */
+    static private class Slot {
+
+        final BeanProperty property;
+        final JsonSerializer<Object> assigned;
+        final boolean primary;
+        volatile Slot child;
+        volatile CachedSerializer cached;
+        volatile MapRules mapRules;
+
+        Slot(BeanProperty property, JsonSerializer<Object> assigned, boolean primary) {
+            this.property = property;
+            this.assigned = assigned;
+            this.primary = primary;
+        }
+
+        JsonSerializer<Object> serializerFor(Class<?> type, SerializerProvider provider) throws JsonMappingException {
+            if (assigned != null) return assigned;
+            CachedSerializer last = cached;
+            if (last != null && last.type == type) return last.serializer;
+            JsonSerializer<Object> serializer = primary
+                    ? provider.findPrimaryPropertySerializer(type, property)
+                    : provider.findValueSerializer(type, property);
+            cached = new CachedSerializer(type, serializer);
+            return serializer;
+        }
+
+        MapRules mapRules(SerializerProvider provider) throws JsonMappingException {
+            MapRules rules = mapRules;
+            if (rules == null) {
+                rules = new MapRules(provider, property);
+                mapRules = rules;
+            }
+            return rules;
+        }
+
+        Slot child() {
+            Slot result = child;
+            if (result == null) {
+                result = new Slot(property, null, false);
+                child = result;
+            }
+            return result;
+        }
+
+    }
+
+
+    /**
+     * This class captures how the entries of the maps found at a slot are written out.
+     */
+    static private class MapRules {
+
+        final boolean suppressNulls;
+        final String unsupported;  // the reason the maps cannot be walked, or null
+
+        MapRules(SerializerProvider provider, BeanProperty property) throws JsonMappingException {
+            SerializationConfig config = provider.getConfig();
+            JsonInclude.Value inclusion = property == null
+                    ? config.getDefaultPropertyInclusion(Map.class)
+                    : property.findPropertyInclusion(config, Map.class);
+            JsonInclude.Include content = inclusion == null ? null : inclusion.getContentInclusion();
+            this.suppressNulls = content == JsonInclude.Include.NON_NULL;
+            if (!isAllowed(content)) {
+                this.unsupported = "Unsupported map content inclusion: " + content;
+            } else if (property != null && Boolean.TRUE.equals(property.findPropertyFormat(config, Map.class)
+                    .getFeature(JsonFormat.Feature.WRITE_SORTED_MAP_ENTRIES))) {
+                this.unsupported = "Sorted map entries are not supported.";
+            } else if (!(provider.findKeySerializer(String.class, property) instanceof StdKeySerializers.StringKeySerializer)) {
+                this.unsupported = "Custom map key serializers are not supported.";
+            } else {
+                this.unsupported = null;
+            }
+        }
+
+    }
+
+
+    /**
+     * This class pairs a value type with the serializer that handles it.
+     */
+    static private class CachedSerializer {
+
+        final Class<?> type;
+        final JsonSerializer<Object> serializer;
+
+        CachedSerializer(Class<?> type, JsonSerializer<Object> serializer) {
+            this.type = type;
+            this.serializer = serializer;
+        }
+
+    }
+
+
+    /**
+     * This class renders the tokens from a token stream into JSON text on demand using a generator
+     * that is configured exactly like the ones the mapper uses for its JSON strings.
+     */
+    private class TextCursor extends Writer {
+
+        private final TokenStream stream;
+        private final JsonGenerator generator;
+        private char[] buffer = new char[256];
+        private int start;
+        private int end;
+        private int consumed;  // the number of characters that have been taken from the buffer
+        private boolean finished;
+
+        TextCursor(TokenStream stream) throws IOException {
+            this.stream = stream;
+            this.generator = mapper.getFactory().createGenerator(this);
+            mapper.getSerializationConfig().initialize(generator);
+        }
+
+        /*
+         * This method makes sure there is at least one character available unless the end of the
+         * text has been reached, in which case it returns false.
+         */
+        boolean fill() throws IOException {
+            while (start == end && !finished) {
+                JsonToken token = stream.nextToken();
+                if (token == null) {
+                    finished = true;
+                    generator.close();
+                } else {
+                    stream.writeTo(generator);
+                    generator.flush();
+                }
+            }
+            return start < end;
+        }
+
+        int available() {
+            return end - start;
+        }
+
+        char take() {
+            consumed++;
+            return buffer[start++];
+        }
+
+        /*
+         * This method consumes the rest of the text and returns its total length.
+         */
+        int drain() throws IOException {
+            while (fill()) {
+                consumed += end - start;
+                start = end;
+            }
+            return consumed;
+        }
+
+        @Override
+        public void write(char[] characters, int offset, int length) {
+            if (start > 0 && end + length > buffer.length) {
+                System.arraycopy(buffer, start, buffer, 0, end - start);
+                end -= start;
+                start = 0;
+            }
+            if (end + length > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, end + length));
+            }
+            System.arraycopy(characters, offset, buffer, end, length);
+            end += length;
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+
+    }
+
+
+    /**
+     * This interface is implemented by each frame on the stack of a token stream. Each call to
+     * the <code>next()</code> method emits exactly one token, or returns false if the frame has
+     * been exhausted.
+     */
+    private interface Frame {
+
+        boolean next(TokenStream stream) throws IOException;
+
+    }
+
+
+    /**
+     * This class lazily generates the sequence of JSON tokens for an object, one token at a time.
+     */
+    final class TokenStream {
+
+        private final SerializerProvider provider;
+        private final boolean shareImmutables;
+        private final ArrayDeque<Frame> frames = new ArrayDeque<>();
+        JsonToken token;
+        String text;
+        Object value;  // the number, boolean or string that is associated with a scalar token
+
+        TokenStream(SerializerProvider provider, final Object object) {
+            this(provider, object, false);
+        }
+
+        TokenStream(SerializerProvider provider, final Object object, boolean shareImmutables) {
+            this.provider = provider;
+            this.shareImmutables = shareImmutables;
+            frames.push(new Frame() {
+                private boolean done;
+
+                @Override
+                public boolean next(TokenStream stream) throws IOException {
+                    if (done) return false;
+                    done = true;
+                    emitValue(object, root);
+                    return true;
+                }
+            });
+        }
+
+        TokenStream(JsonParser parser) {
+            this.provider = null;
+            this.shareImmutables = false;
+            frames.push(new BufferFrame(parser));
+        }
+
+        JsonToken nextToken() throws IOException {
+            while (!frames.isEmpty()) {
+                if (frames.peek().next(this)) return token;
+                frames.pop();
+            }
+            token = null;
+            return null;
+        }
+
+        /*
+         * This method writes the current token out to the specified generator.
+         */
+        void writeTo(JsonGenerator generator) throws IOException {
+            switch (token) {
+                case START_OBJECT:
+                    generator.writeStartObject();
+                    break;
+                case END_OBJECT:
+                    generator.writeEndObject();
+                    break;
+                case START_ARRAY:
+                    generator.writeStartArray();
+                    break;
+                case END_ARRAY:
+                    generator.writeEndArray();
+                    break;
+                case FIELD_NAME:
+                    generator.writeFieldName(text);
+                    break;
+                case VALUE_STRING:
+                    generator.writeString(text);
+                    break;
+                case VALUE_NUMBER_INT:
+                case VALUE_NUMBER_FLOAT:
+                    writeNumber(generator);
+                    break;
+                case VALUE_TRUE:
+                case VALUE_FALSE:
+                    generator.writeBoolean(token == JsonToken.VALUE_TRUE);
+                    break;
+                case VALUE_NULL:
+                    generator.writeNull();
+                    break;
+                case VALUE_EMBEDDED_OBJECT:
+                    generator.writeEmbeddedObject(value);
+                    break;
+                default:
+                    throw new UnsupportedStructureException("Unexpected token: " + token);
+            }
+        }
+
+        private void writeNumber(JsonGenerator generator) throws IOException {
+            // the text of a number is exactly what the generator would write for its value
+            if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+                generator.writeNumber(((Number) value).intValue());
+            } else if (value instanceof Long) {
+                generator.writeNumber((Long) value);
+            } else if (value instanceof Double) {
+                generator.writeNumber((Double) value);
+            } else if (value instanceof Float) {
+                generator.writeNumber((Float) value);
+            } else if (value instanceof BigInteger) {
+                generator.writeNumber((BigInteger) value);
+            } else if (value instanceof BigDecimal) {
+                generator.writeNumber((BigDecimal) value);
+            } else {
+                generator.writeNumber(text);
+            }
+        }
+
+        void emit(JsonToken token, String text, Object value) {
+            this.token = token;
+            this.text = text;
+            this.value = value;
+        }
+
+        void emitValue(Object object, Slot slot) throws IOException {
+            if (object == null) {
+                emit(JsonToken.VALUE_NULL, "null", null);
+                return;
+            }
+            Class<?> type = object.getClass();
+            JsonSerializer<Object> serializer = slot.serializerFor(type, provider);
+            Class<?> serializerType = serializer.getClass();
+            if (shareImmutables && slot.primary && immutableTypes.contains(type)
+                    && slot.property.getType().getRawClass() == type
+                    && (type != DateTime.class || sharesDateTimes())) {
+                // the deserializer can use the immutable value directly
+                emit(JsonToken.VALUE_EMBEDDED_OBJECT, null, object);
+            } else if (serializerType == StringSerializer.class && object instanceof String) {
+                emit(JsonToken.VALUE_STRING, (String) object, object);
+            } else if (serializerType == ToStringSerializer.class) {
+                String string = object.toString();
+                emit(JsonToken.VALUE_STRING, string, string);
+            } else if (serializerType == BooleanSerializer.class && object instanceof Boolean) {
+                boolean flag = (Boolean) object;
+                emit(flag ? JsonToken.VALUE_TRUE : JsonToken.VALUE_FALSE, flag ? "true" : "false", object);
+            } else if ((serializer instanceof NumberSerializers.Base || serializerType == NumberSerializer.class)
+                    && emitNumber(object)) {
+                // the number has been emitted
+            } else if (serializerType == JsonValueSerializer.class) {
+                MethodHandle accessor = valueAccessorFor(type);
+                if (accessor != null) {
+                    emitValue(invoke(accessor, object), slot.child());
+                } else {
+                    emitBuffered(object, serializer);
+                }
+            } else if (serializerType == CompiledModule.CompiledSerializer.class
+                    && !((CompiledModule.CompiledSerializer) serializer).censored) {
+                CompiledSupport<?> support = ((CompiledModule.CompiledSerializer) serializer).support;
+                emit(JsonToken.START_OBJECT, null, null);
+                frames.push(new CompiledFrame(object, support, compiledSlotsFor(support)));
+            } else if (serializerType == BeanSerializer.class) {
+                PropertyPlan[] properties = beanPlanFor(type, (BeanSerializer) serializer, provider).properties;
+                if (properties != null) {
+                    emit(JsonToken.START_OBJECT, null, null);
+                    frames.push(new BeanFrame(object, properties));
+                } else {
+                    emitBuffered(object, serializer);
+                }
+            } else if ((serializer instanceof AsArraySerializerBase || serializer instanceof StaticListSerializerBase)
+                    && object instanceof Iterable) {
+                emit(JsonToken.START_ARRAY, null, null);
+                frames.push(new ArrayFrame(((Iterable<?>) object).iterator(), slot.child()));
+            } else if (serializerType == ObjectArraySerializer.class && object instanceof Object[]) {
+                emit(JsonToken.START_ARRAY, null, null);
+                frames.push(new ArrayFrame(Arrays.asList((Object[]) object).iterator(), slot.child()));
+            } else if (serializerType == MapSerializer.class && object instanceof Map) {
+                emitMap((Map<?, ?>) object, slot);
+            } else {
+                emitBuffered(object, serializer);
+            }
+        }
+
+        private boolean emitNumber(Object number) {
+            Class<?> type = number.getClass();
+            if (type == Integer.class || type == Long.class || type == Short.class || type == Byte.class
+                    || type == BigInteger.class) {
+                emit(JsonToken.VALUE_NUMBER_INT, number.toString(), number);
+                return true;
+            }
+            if (type == Double.class || type == Float.class || type == BigDecimal.class) {
+                emitFloat(number.toString(), (Number) number);
+                return true;
+            }
+            return false;
+        }
+
+        @SuppressWarnings("deprecation")
+        void emitFloat(String string, Number number) {
+            if ((number instanceof Double && (((Double) number).isNaN() || ((Double) number).isInfinite())
+                    || number instanceof Float && (((Float) number).isNaN() || ((Float) number).isInfinite()))
+                    && mapper.getFactory().isEnabled(JsonGenerator.Feature.QUOTE_NON_NUMERIC_NUMBERS)) {
+                // the generator writes out non-numeric values as strings
+                emit(JsonToken.VALUE_STRING, string, string);
+            } else {
+                emit(JsonToken.VALUE_NUMBER_FLOAT, string, number);
+            }
+        }
+
+        private void emitMap(Map<?, ?> map, Slot slot) throws IOException {
+            MapRules rules = slot.mapRules(provider);
+            if (rules.unsupported != null) {
+                throw new UnsupportedStructureException(rules.unsupported);
+            }
+            emit(JsonToken.START_OBJECT, null, null);
+            frames.push(new MapFrame(map.entrySet().iterator(), slot.child(), rules.suppressNulls));
+        }
+
+        private void emitBuffered(Object object, JsonSerializer<Object> serializer) throws IOException {
+            TokenBuffer buffer = new TokenBuffer(mapper, false);
+            serializer.serialize(object, buffer, provider);
+            BufferFrame frame = new BufferFrame(buffer.asParser());
+            frames.push(frame);
+            if (!frame.next(this)) {
+                throw new UnsupportedStructureException("The serializer for " + object.getClass().getName() + " wrote nothing.");
+            }
+        }
+
+    }
+
+
+    /**
+     * This class walks the properties of a bean.
+     */
+    private class BeanFrame implements Frame {
+
+        private final Object bean;
+        private final PropertyPlan[] properties;
+        private int index;
+        private Object pending;
+        private Slot pendingSlot;
+        private boolean ended;
+
+        BeanFrame(Object bean, PropertyPlan[] properties) {
+            this.bean = bean;
+            this.properties = properties;
+        }
+
+        @Override
+        public boolean next(TokenStream stream) throws IOException {
+            if (pendingSlot != null) {
+                Slot slot = pendingSlot;
+                pendingSlot = null;
+                stream.emitValue(pending, slot);
+                return true;
+            }
+            while (index < properties.length) {
+                PropertyPlan property = properties[index++];
+                Object propertyValue = read(property, bean);
+                if (propertyValue == null && property.suppressNulls) continue;
+                pending = propertyValue;
+                pendingSlot = property.slot;
+                stream.emit(JsonToken.FIELD_NAME, property.name, null);
+                return true;
+            }
+            if (ended) return false;
+            ended = true;
+            stream.emit(JsonToken.END_OBJECT, null, null);
+            return true;
+        }
+
+    }
+
+
+    /**
+     * This class walks the attributes of a precompiled smart object in the order in which its
+     * generated support writes them, skipping the null attributes like the support does.
+     */
+    private class CompiledFrame implements Frame {
+
+        private final Object object;
+        private final CompiledSupport<?> support;
+        private final String[] names;
+        private final Slot[] slots;
+        private int index;
+        private Object pending;
+        private Slot pendingSlot;
+        private boolean ended;
+
+        CompiledFrame(Object object, CompiledSupport<?> support, Slot[] slots) {
+            this.object = object;
+            this.support = support;
+            this.names = support.attributeNames();
+            this.slots = slots;
+        }
+
+        @Override
+        public boolean next(TokenStream stream) throws IOException {
+            if (pendingSlot != null) {
+                Slot slot = pendingSlot;
+                pendingSlot = null;
+                stream.emitValue(pending, slot);
+                return true;
+            }
+            while (index < names.length) {
+                int current = index++;
+                Object attributeValue = support.objectAttributeValue(object, current);
+                if (attributeValue == null) continue;
+                pending = attributeValue;
+                pendingSlot = slots[current];
+                stream.emit(JsonToken.FIELD_NAME, names[current], null);
+                return true;
+            }
+            if (ended) return false;
+            ended = true;
+            stream.emit(JsonToken.END_OBJECT, null, null);
+            return true;
+        }
+
+    }
+
+
+    /**
+     * This class walks the elements of a collection or array.
+     */
+    private class ArrayFrame implements Frame {
+
+        private final Iterator<?> elements;
+        private final Slot slot;
+        private boolean ended;
+
+        ArrayFrame(Iterator<?> elements, Slot slot) {
+            this.elements = elements;
+            this.slot = slot;
+        }
+
+        @Override
+        public boolean next(TokenStream stream) throws IOException {
+            if (elements.hasNext()) {
+                stream.emitValue(elements.next(), slot);
+                return true;
+            }
+            if (ended) return false;
+            ended = true;
+            stream.emit(JsonToken.END_ARRAY, null, null);
+            return true;
+        }
+
+    }
+
+
+    /**
+     * This class walks the entries of a map.
+     */
+    private class MapFrame implements Frame {
+
+        private final Iterator<? extends Map.Entry<?, ?>> entries;
+        private final Slot slot;
+        private final boolean suppressNulls;
+        private Object pending;
+        private boolean hasPending;
+        private boolean ended;
+
+        MapFrame(Iterator<? extends Map.Entry<?, ?>> entries, Slot slot, boolean suppressNulls) {
+            this.entries = entries;
+            this.slot = slot;
+            this.suppressNulls = suppressNulls;
+        }
+
+        @Override
+        public boolean next(TokenStream stream) throws IOException {
+            if (hasPending) {
+                hasPending = false;
+                stream.emitValue(pending, slot);
+                return true;
+            }
+            while (entries.hasNext()) {
+                Map.Entry<?, ?> entry = entries.next();
+                Object entryValue = entry.getValue();
+                if (entryValue == null && suppressNulls) continue;
+                if (!(entry.getKey() instanceof String)) {
+                    throw new UnsupportedStructureException("Only string map keys are supported.");
+                }
+                pending = entryValue;
+                hasPending = true;
+                stream.emit(JsonToken.FIELD_NAME, (String) entry.getKey(), null);
+                return true;
+            }
+            if (ended) return false;
+            ended = true;
+            stream.emit(JsonToken.END_OBJECT, null, null);
+            return true;
+        }
+
+    }
+
+
+    /**
+     * This class replays the tokens that Jackson generated for a value.
+     */
+    private class BufferFrame implements Frame {
+
+        private final JsonParser parser;
+
+        BufferFrame(JsonParser parser) {
+            this.parser = parser;
+        }
+
+        @Override
+        public boolean next(TokenStream stream) throws IOException {
+            JsonToken token = parser.nextToken();
+            if (token == null) return false;
+            switch (token) {
+                case FIELD_NAME:
+                case VALUE_STRING:
+                    stream.emit(token, parser.getText(), parser.getText());
+                    break;
+                case VALUE_NUMBER_INT:
+                    stream.emit(token, parser.getText(), parser.getNumberValue());
+                    break;
+                case VALUE_NUMBER_FLOAT:
+                    stream.emitFloat(parser.getText(), parser.getNumberValue());
+                    break;
+                case VALUE_TRUE:
+                case VALUE_FALSE:
+                    stream.emit(token, parser.getText(), parser.getBooleanValue());
+                    break;
+                case VALUE_EMBEDDED_OBJECT:
+                    Object embedded = parser.getEmbeddedObject();
+                    if (!(embedded instanceof byte[])) {
+                        throw new UnsupportedStructureException("Unsupported embedded value: " + embedded);
+                    }
+                    // binary values are written out as base 64 strings
+                    String encoded = mapper.getSerializationConfig().getBase64Variant().encode((byte[]) embedded);
+                    stream.emit(JsonToken.VALUE_STRING, encoded, encoded);
+                    break;
+                default:
+                    stream.emit(token, token == JsonToken.VALUE_NULL ? "null" : null, null);
+            }
+            return true;
+        }
+
+    }
+
+}
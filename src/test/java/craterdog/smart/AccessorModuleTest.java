@@ -0,0 +1,163 @@
+/************************************************************************
+ * Copyright (c) Crater Dog Technologies(TM).  All Rights Reserved.     *
+ ************************************************************************
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.        *
+ *                                                                      *
+ * This code is free software; you can redistribute it and/or modify it *
+ * under the terms of The MIT License (MIT), as published by the Open   *
+ * Source Initiative. (See http://opensource.org/licenses/MIT)          *
+ ************************************************************************/
+package craterdog.smart;
+
+import java.io.IOException;
+import org.junit.AfterClass;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.ext.XLogger;
+import org.slf4j.ext.XLoggerFactory;
+
+/**
+ * This class tests the generated accessors that are used by the <code>AccessorModule</code>.
+ *
+ * @author Derk Norton
+ */
+public class AccessorModuleTest {
+
+    static private final XLogger logger = XLoggerFactory.getXLogger(AccessorModuleTest.class);
+
+    static private final SmartObjectMapper generated = new SmartObjectMapper(new CensorshipModule(), new AccessorModule());
+    static private final SmartObjectMapper reflected = new SmartObjectMapper(new CensorshipModule());
+
+
+    /**
+     * Log a message at the beginning of the tests.
+     */
+    @BeforeClass
+    static public void setUpClass() {
+        logger.info("Running AccessorModule Unit Tests...\n");
+    }
+
+
+    /**
+     * Log a message at the end of the tests.
+     */
+    @AfterClass
+    static public void tearDownClass() {
+        logger.info("Completed AccessorModule Unit Tests.\n");
+    }
+
+
+    /**
+     * This unit test method tests that the generated accessors produce the same JSON as reflection
+     * for a class with public fields.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testPublicFields() throws IOException {
+        logger.info("Testing the generated accessors for public fields...");
+
+        ExampleSmartObject object = new ExampleSmartObject();
+        object.bar = 42;
+        String json = reflected.writeValueAsString(object);
+        assertEquals(json, generated.writeValueAsString(object));
+        ExampleSmartObject copy = generated.readValue(new ExampleSmartObject().toExposedString(), ExampleSmartObject.class);
+        assertEquals(new ExampleSmartObject().toExposedString(), copy.toExposedString());
+
+        logger.info("The generated accessors for public fields testing completed.\n");
+    }
+
+
+    /**
+     * This unit test method tests the generated accessors for getters, setters and creators,
+     * including those of a class that is not public.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testPropertiesAndCreators() throws IOException {
+        logger.info("Testing the generated accessors for properties and creators...");
+
+        Person person = new Person();
+        person.setName("Albert");
+        person.setAge(76);
+        String json = reflected.writeValueAsString(person);
+        assertEquals(json, generated.writeValueAsString(person));
+        Person copy = generated.readValue(json, Person.class);
+        assertEquals("Albert", copy.getName());
+        assertEquals(76, copy.getAge());
+
+        Hidden hidden = generated.readValue("{\"secret\":\"1234-5678-9012-3456\"}", Hidden.class);
+        assertEquals("1234-5678-9012-3456", hidden.secret);
+        assertEquals(reflected.writeValueAsString(hidden), generated.writeValueAsString(hidden));
+
+        logger.info("The generated accessors for properties and creators testing completed.\n");
+    }
+
+
+    /**
+     * This unit test method tests which members accessors are generated for.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testAccessors() throws Exception {
+        logger.info("Testing the generation of accessors...");
+
+        assertNotNull(Accessors.getterFor(Person.class.getMethod("getAge")));
+        assertNotNull(Accessors.setterFor(Person.class.getMethod("setAge", int.class)));
+        assertNotNull(Accessors.creatorFor(Person.class.getConstructor()));
+        assertNull(Accessors.getterFor(Hidden.class.getDeclaredField("secret")));  // fields are left to Jackson
+        assertNull(Accessors.setterFor(Hidden.class.getDeclaredField("secret")));
+        assertNull(Accessors.creatorFor(Hidden.class.getDeclaredConstructor()));  // not linkable
+        Person person = new Person();
+        person.setAge(76);
+        assertEquals(76, Accessors.getterFor(Person.class.getMethod("getAge")).apply(person));
+
+        logger.info("The generation of accessors testing completed.\n");
+    }
+
+
+    /**
+     * This class exposes its attributes through getters and setters.
+     */
+    static public class Person {
+
+        private String name;
+        private int age;
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public int getAge() {
+            return age;
+        }
+
+        public void setAge(int age) {
+            this.age = age;
+        }
+
+    }
+
+
+    /**
+     * This class cannot be reached by the generated lambda classes.
+     */
+    static private class Hidden {
+
+        @Sensitive(type = "credit card", mask = Sensitive.MASK_CREDIT_CARD_NUMBER)
+        public String secret;
+
+        public final String type = "hidden";
+
+    }
+
+}
@@ -0,0 +1,134 @@
+/************************************************************************
+ * Copyright (c) Crater Dog Technologies(TM).  All Rights Reserved.     *
+ ************************************************************************
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.        *
+ *                                                                      *
+ * This code is free software; you can redistribute it and/or modify it *
+ * under the terms of The MIT License (MIT), as published by the Open   *
+ * Source Initiative. (See http://opensource.org/licenses/MIT)          *
+ ************************************************************************/
+package craterdog.smart;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.AfterClass;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.ext.XLogger;
+import org.slf4j.ext.XLoggerFactory;
+
+/**
+ * This class tests the parallel parsing of large JSON arrays using the <code>BulkReader</code>
+ * class.
+ *
+ * @author Derk Norton
+ */
+public class BulkReaderTest {
+
+    static private final XLogger logger = XLoggerFactory.getXLogger(BulkReaderTest.class);
+
+
+    /**
+     * Log a message at the beginning of the tests.
+     */
+    @BeforeClass
+    static public void setUpClass() {
+        logger.info("Running BulkReader Unit Tests...\n");
+    }
+
+
+    /**
+     * Log a message at the end of the tests.
+     */
+    @AfterClass
+    static public void tearDownClass() {
+        logger.info("Completed BulkReader Unit Tests.\n");
+    }
+
+
+    /**
+     * This unit test method tests the parallel parsing of a large JSON array of smart objects.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testFromJsonArray() throws IOException {
+        logger.info("Testing the parallel parsing of a large JSON array...");
+
+        List<ExampleSmartObject> objects = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            ExampleSmartObject object = new ExampleSmartObject();
+            object.bar = i;
+            object.foo = "A \"quoted\" string with [brackets], {braces} and a \\";
+            objects.add(object);
+        }
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        SmartObject.writeJsonArray(objects.iterator(), output);
+        byte[] bytes = output.toByteArray();
+        TypeReference<List<ExampleSmartObject>> type = new TypeReference<List<ExampleSmartObject>>() {};
+        List<ExampleSmartObject> expected = SmartObject.fromString(type, new String(bytes, StandardCharsets.UTF_8));
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            assertEquals(expected, SmartObject.fromJsonArray(ExampleSmartObject.class, bytes, pool));
+        } finally {
+            pool.shutdown();
+        }
+        assertEquals(expected, SmartObject.fromJsonArray(ExampleSmartObject.class, bytes));
+
+        // the indented form has whitespace everywhere
+        bytes = SmartObject.toUtf8Bytes(objects);
+        assertEquals(expected, SmartObject.fromJsonArray(ExampleSmartObject.class, bytes));
+
+        logger.info("The parallel parsing of a large JSON array testing completed.");
+    }
+
+
+    /**
+     * This unit test method tests the scanning of JSON arrays with different kinds of elements.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testScanning() throws IOException {
+        logger.info("Testing the scanning of JSON arrays...");
+
+        assertEquals(0, SmartObject.fromJsonArray(String.class, utf8(" [ ] ")).size());
+        assertEquals("[a, ,b, ]\"c\\\u00e9]", SmartObject.fromJsonArray(String.class,
+                utf8("\ufeff[\"a\", \",b\", \"]\\\"c\\\\\u00e9\"]")).toString());
+        TypeReference<Map<String, List<Integer>>> type = new TypeReference<Map<String, List<Integer>>>() {};
+        List<Map<String, List<Integer>>> maps = SmartObject.fromJsonArray(type, utf8("[{\"a\": [1, 2]}, null,\n{}]"));
+        assertEquals(3, maps.size());
+        assertEquals(2, (int) maps.get(0).get("a").get(1));
+        assertEquals(null, maps.get(1));
+
+        String[] malformed = {
+            "", "{}", "[", "[1,", "[1,]", "[,1]", "[1 2]", "[{]", "[\"abc]", "[1] 2", "[{\"a\": }]"
+        };
+        for (String json : malformed) {
+            try {
+                SmartObject.fromJsonArray(Object.class, utf8(json));
+                fail("  The malformed array was not detected: " + json);
+            } catch (JsonProcessingException e) {
+                logger.info("  The expected exception was thrown for {}: {}", json, e.getOriginalMessage());
+            }
+        }
+
+        logger.info("The scanning of JSON arrays testing completed.");
+    }
+
+
+    static private byte[] utf8(String json) {
+        return json.getBytes(StandardCharsets.UTF_8);
+    }
+
+}
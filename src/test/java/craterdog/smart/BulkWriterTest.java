@@ -0,0 +1,182 @@
+/************************************************************************
+ * Copyright (c) Crater Dog Technologies(TM).  All Rights Reserved.     *
+ ************************************************************************
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.        *
+ *                                                                      *
+ * This code is free software; you can redistribute it and/or modify it *
+ * under the terms of The MIT License (MIT), as published by the Open   *
+ * Source Initiative. (See http://opensource.org/licenses/MIT)          *
+ ************************************************************************/
+package craterdog.smart;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.AfterClass;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.ext.XLogger;
+import org.slf4j.ext.XLoggerFactory;
+
+/**
+ * This class tests the parallel writing of many smart objects using the <code>BulkWriter</code>
+ * class.
+ *
+ * @author Derk Norton
+ */
+public class BulkWriterTest {
+
+    static private final XLogger logger = XLoggerFactory.getXLogger(BulkWriterTest.class);
+
+
+    /**
+     * Log a message at the beginning of the tests.
+     */
+    @BeforeClass
+    static public void setUpClass() {
+        logger.info("Running BulkWriter Unit Tests...\n");
+    }
+
+
+    /**
+     * Log a message at the end of the tests.
+     */
+    @AfterClass
+    static public void tearDownClass() {
+        logger.info("Completed BulkWriter Unit Tests.\n");
+    }
+
+
+    /**
+     * This unit test method tests the writing of smart objects as a JSON array.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testWriteJsonArray() throws IOException {
+        logger.info("Testing the writing of smart objects as a JSON array...");
+
+        List<ExampleSmartObject> objects = createObjects(1000);
+        StringBuilder expected = new StringBuilder("[");
+        for (ExampleSmartObject object : objects) {
+            if (expected.length() > 1) expected.append(',');
+            expected.append(object.toCompactString());
+        }
+        expected.append(']');
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        SmartObject.writeJsonArray(objects.iterator(), output);
+        assertEquals(expected.toString(), output.toString("UTF-8"));
+
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            output.reset();
+            SmartObject.writeJsonArray(objects.stream().iterator(), output, executor);
+            assertEquals(expected.toString(), output.toString("UTF-8"));
+        } finally {
+            executor.shutdown();
+        }
+
+        output.reset();
+        SmartObject.writeJsonArray(Collections.emptyIterator(), output);
+        assertEquals("[]", output.toString("UTF-8"));
+
+        logger.info("The writing of a JSON array testing completed.");
+    }
+
+
+    /**
+     * This unit test method tests the writing of smart objects as JSON lines.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testWriteJsonLines() throws IOException {
+        logger.info("Testing the writing of smart objects as JSON lines...");
+
+        List<ExampleSmartObject> objects = createObjects(1000);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        SmartObject.writeJsonLines(objects.iterator(), output);
+        JsonLinesIterator<ExampleSmartObject> lines =
+                SmartObject.fromJsonLines(ExampleSmartObject.class, new ByteArrayInputStream(output.toByteArray()));
+        int count = 0;
+        while (lines.hasNext()) {
+            assertEquals(count, lines.next().bar);
+            count++;
+        }
+        assertEquals(objects.size(), count);
+        assertEquals(output.size(), lines.getBytesRead());
+
+        StringBuilder expected = new StringBuilder();
+        for (ExampleSmartObject object : objects) {
+            expected.append(object.toCompactString()).append('\n');
+        }
+        assertEquals(expected.toString(), output.toString("UTF-8"));
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            output.reset();
+            SmartObject.writeJsonLines(objects.iterator(), output, executor);
+            assertEquals(expected.toString(), output.toString("UTF-8"));
+        } finally {
+            executor.shutdown();
+        }
+
+        output.reset();
+        SmartObject.writeJsonLines(Collections.emptyIterator(), output);
+        assertEquals(0, output.size());
+
+        logger.info("The writing of JSON lines testing completed.");
+    }
+
+
+    /**
+     * This unit test method tests that a failure to encode an object is reported.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testEncodingFailure() throws IOException {
+        logger.info("Testing the reporting of an encoding failure...");
+
+        List<Object> objects = new ArrayList<Object>(createObjects(500));
+        objects.add(300, new Unserializable());
+        try {
+            SmartObject.writeJsonLines(objects.iterator(), new ByteArrayOutputStream());
+            fail("  The encoding failure was not reported.");
+        } catch (IOException e) {
+            logger.info("  The expected exception was thrown: {}", e.getMessage());
+        }
+
+        logger.info("The reporting of an encoding failure testing completed.");
+    }
+
+
+    static private List<ExampleSmartObject> createObjects(int count) {
+        List<ExampleSmartObject> objects = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            ExampleSmartObject object = new ExampleSmartObject();
+            object.bar = i;
+            objects.add(object);
+        }
+        return objects;
+    }
+
+
+    static private class Unserializable {
+
+        @JsonProperty
+        public String getValue() {
+            throw new IllegalStateException("This object cannot be serialized.");
+        }
+
+    }
+
+}
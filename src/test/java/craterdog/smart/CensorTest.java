@@ -0,0 +1,437 @@
+/************************************************************************
+ * Copyright (c) Crater Dog Technologies(TM).  All Rights Reserved.     *
+ ************************************************************************
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.        *
+ *                                                                      *
+ * This code is free software; you can redistribute it and/or modify it *
+ * under the terms of The MIT License (MIT), as published by the Open   *
+ * Source Initiative. (See http://opensource.org/licenses/MIT)          *
+ ************************************************************************/
+package craterdog.smart;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.PatternSyntaxException;
+import org.junit.AfterClass;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.ext.XLogger;
+import org.slf4j.ext.XLoggerFactory;
+
+/**
+ * This class tests the masking of values by the <code>Censor</code> class.
+ *
+ * @author Derk Norton
+ */
+public class CensorTest {
+
+    static private final XLogger logger = XLoggerFactory.getXLogger(CensorTest.class);
+
+
+    /**
+     * Log a message at the beginning of the tests.
+     */
+    @BeforeClass
+    static public void setUpClass() {
+        logger.info("Running Censor Unit Tests...\n");
+    }
+
+
+    /**
+     * Log a message at the end of the tests.
+     */
+    @AfterClass
+    static public void tearDownClass() {
+        logger.info("Completed Censor Unit Tests.\n");
+    }
+
+
+    /**
+     * This unit test method tests that each mask is only compiled once.
+     */
+    @Test
+    public void testCompiledMaskCache() {
+        logger.info("Testing the compiled mask cache...");
+
+        Censor.clearCache();
+        Censor censor = new Censor();
+        for (int i = 0; i < 100; i++) {
+            assertEquals("1234-XXXX-XXXX-3456", censor.process("1234-5678-9012-3456", Sensitive.MASK_CREDIT_CARD_NUMBER));
+            assertEquals("XXXXXXX6789", censor.process("123-45-6789", Sensitive.MASK_SSN));
+        }
+        assertEquals(2, Censor.getCacheMisses());
+        assertEquals(198, Censor.getCacheHits());
+        assertEquals(2, Censor.getCacheSize());
+
+        // a mask that fails to compile is only compiled once as well
+        for (int i = 0; i < 10; i++) {
+            assertEquals("MASKING_ERROR", censor.process("1234-5678-9012-3456", "^\\d{4}-(\\d{4}"));
+        }
+        assertEquals(3, Censor.getCacheMisses());
+        assertEquals(207, Censor.getCacheHits());
+
+        logger.info("Compiled mask cache testing completed.\n");
+    }
+
+
+    /**
+     * This unit test method tests that the cache does not grow beyond its bounds.
+     */
+    @Test
+    public void testBoundedCache() {
+        logger.info("Testing the bounds of the compiled mask cache...");
+
+        Censor censor = new Censor();
+        for (int i = 0; i < 1000; i++) {
+            assertEquals("XXXX" + i, censor.process("abcd" + i, "^(\\w{4})" + i + "$"));
+        }
+        assertTrue(Censor.getCacheSize() <= 256);
+
+        logger.info("Bounds of the compiled mask cache testing completed.\n");
+    }
+
+
+    /**
+     * This unit test method tests that invalid masks are rejected when they are compiled.
+     */
+    @Test
+    public void testMaskPlanCompilation() {
+        logger.info("Testing the compilation of mask plans...");
+
+        MaskPlan plan = MaskPlan.compile(Sensitive.MASK_PHONE_NUMBER);
+        assertEquals("XXX-XXX-4567", plan.apply("123-456-4567", 'X'));
+        assertNull(plan.apply("not a phone number", 'X'));
+        try {
+            MaskPlan.compile("(^\\d{3}-\\d{2}-\\d{4}$");
+            fail("A mask with an unclosed group should have been rejected.");
+        } catch (PatternSyntaxException e) {
+            logger.info("  Rejected mask: {}", e.getDescription());
+        }
+        try {
+            MaskPlan.compile("^\\d{3}-\\d{2}-\\d{4}$");
+            fail("A mask without any groups should have been rejected.");
+        } catch (IllegalArgumentException e) {
+            logger.info("  Rejected mask: {}", e.getMessage());
+        }
+
+        logger.info("Compilation of mask plans testing completed.\n");
+    }
+
+
+    /**
+     * This unit test method tests that the specialized maskers produce the same results as the
+     * regular expression matcher.
+     */
+    @Test
+    public void testSpecializedMaskers() {
+        logger.info("Testing the specialized maskers...");
+
+        String[] masks = {
+            Sensitive.MASK_PASSWORD,
+            Sensitive.MASK_EMAIL_ADDRESS,
+            Sensitive.MASK_PHONE_NUMBER,
+            Sensitive.MASK_CREDIT_CARD_NUMBER,
+            Sensitive.MASK_SSN,
+            "^([A-Z]{2})\\d{2,4}-(\\w)$",
+            "(^[^@]+)@[^@]{1,5}$",
+            "^[a-c\\-]?(\\d)\\s(\\W*)$",
+            "^(\\w+)@\\w+\\.com$"
+        };
+        for (String mask : masks) {
+            assertTrue("The mask should be specialized: " + mask, MaskPlan.compile(mask).isSpecialized());
+        }
+        String[] unsupported = {
+            "(\\d{3})-\\d{4}$",   // not anchored at the start
+            "^(\\d+)\\d$",         // would require backtracking
+            "^(\\w+)@.+$",          // the dot is not supported
+            "^((\\d{4}-){3})\\d{4}$"  // nested groups
+        };
+        for (String mask : unsupported) {
+            assertFalse("The mask should not be specialized: " + mask, MaskPlan.compile(mask).isSpecialized());
+        }
+
+        Random random = new Random(42);
+        String alphabet = "0123456789-@abcXYZ_ \r\n\u00e9";
+        String[] templates = {"ddd-dd-dddd", "ddd-ddd-dddd", "dddd-dddd-dddd-dddd", "abc@d", "AZdd-d"};
+        for (String mask : masks) {
+            MaskPlan specialized = MaskPlan.compile(mask);
+            MaskPlan regex = MaskPlan.compileRegex(mask);
+            for (int i = 0; i < 20000; i++) {
+                StringBuilder value = new StringBuilder();
+                if (random.nextBoolean()) {
+                    for (char character : templates[random.nextInt(templates.length)].toCharArray()) {
+                        value.append(character == 'd' ? (char) ('0' + random.nextInt(10)) : character);
+                    }
+                    if (random.nextInt(4) == 0) value.append(alphabet.charAt(random.nextInt(alphabet.length())));
+                    if (random.nextInt(4) == 0) value.append(random.nextBoolean() ? "\n" : "\r\n");
+                } else {
+                    int length = random.nextInt(12);
+                    for (int j = 0; j < length; j++) {
+                        value.append(alphabet.charAt(random.nextInt(alphabet.length())));
+                    }
+                }
+                String string = value.toString();
+                assertEquals(mask + " applied to \"" + string + "\"",
+                        regex.apply(string, 'X'), specialized.apply(string, 'X'));
+            }
+        }
+
+        logger.info("Specialized maskers testing completed.\n");
+    }
+
+
+    /**
+     * This unit test method tests the cases where the specialized maskers must defer to the
+     * regular expression matcher to produce the same results.
+     */
+    @Test
+    public void testSpecializedMaskerEdgeCases() {
+        logger.info("Testing the edge cases of the specialized maskers...");
+
+        // a hyphen between two ranges is not a range
+        assertFalse(MaskPlan.compile("^([a-c-e]{2})$").isSpecialized());
+        assertTrue(MaskPlan.compile("^([-a-c]{2})$").isSpecialized());
+        assertTrue(MaskPlan.compile("^([a-c-]{2})$").isSpecialized());
+
+        // values containing surrogate pairs are matched by code point
+        String[] masks = {"^(\\W{2})\\d$", "^(\\W*)$", "(^[^@]+)@[^@]{1,2}$"};
+        String[] values = {"\ud83d\ude00!1", "\ud83d\ude00\ud83d", "a@\ud83d\ude00", "a@\ud83d\ude00b", "!!1"};
+        for (String mask : masks) {
+            MaskPlan specialized = MaskPlan.compile(mask);
+            MaskPlan regex = MaskPlan.compileRegex(mask);
+            assertTrue("The mask should be specialized: " + mask, specialized.isSpecialized());
+            for (String value : values) {
+                assertEquals(mask + " applied to \"" + value + "\"", regex.apply(value, 'X'), specialized.apply(value, 'X'));
+            }
+        }
+
+        logger.info("The edge cases of the specialized maskers testing completed.\n");
+    }
+
+
+    /**
+     * This unit test method tests that the automaton produces the same results as the regular
+     * expression matcher.
+     */
+    @Test
+    public void testMaskAutomaton() {
+        logger.info("Testing the mask automaton...");
+
+        String[] masks = {
+            "^((\\d{4}-){3})\\d{4}$",
+            "^\\d{4}(-(\\d{4}-){2})\\d{4}$",
+            "(\\d{2})",
+            "^(a|ab)(c|bcd)(d*)$",
+            "(a+?)(b*)",
+            "^(.*)@(.+)$",
+            "(?:x|(y))+(z?)",
+            "^(\\w+)(\\W)?(\\d{1,3}?)(\\d*)$",
+            "([^a-c\\s]{2,})\\1?",
+            "(a|b|)(c)"
+        };
+        Random random = new Random(7);
+        String alphabet = "0123456789-@abcdxyz \r\n\u00e9\u2028";
+        for (String mask : masks) {
+            MaskPlan automaton;
+            try {
+                automaton = MaskPlan.compile(mask);
+            } catch (IllegalArgumentException e) {
+                continue;
+            }
+            MaskPlan regex = MaskPlan.compileRegex(mask);
+            if (!automaton.isLinear()) {
+                logger.info("  The mask {} uses unsupported syntax.", mask);
+                continue;
+            }
+            assertFalse(automaton.isSpecialized());
+            for (int i = 0; i < 20000; i++) {
+                int length = random.nextInt(20);
+                StringBuilder value = new StringBuilder();
+                for (int j = 0; j < length; j++) {
+                    value.append(alphabet.charAt(random.nextInt(alphabet.length())));
+                }
+                String string = value.toString();
+                assertEquals(mask + " applied to \"" + string + "\"",
+                        regex.apply(string, 'X'), automaton.apply(string, 'X'));
+            }
+        }
+        assertFalse(MaskPlan.compile("([^a-c\\s]{2,})\\1?").isLinear());
+
+        logger.info("Mask automaton testing completed.\n");
+    }
+
+
+    /**
+     * This unit test method tests that masks that would backtrack catastrophically either run in
+     * linear time or are limited by the step budget.
+     */
+    @Test
+    public void testCatastrophicBacktracking() {
+        logger.info("Testing catastrophic backtracking...");
+
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 40; i++) {
+            builder.append('a');
+        }
+        String value = builder.append('b').toString();
+        Censor censor = new Censor();
+
+        // the automaton handles this mask in linear time
+        String mask = "^((?:a|a)+)+$";
+        assertTrue(MaskPlan.compile(mask).isLinear());
+        assertEquals("MASKING_ERROR", censor.process(value, mask));
+
+        // the look ahead is not supported by the automaton so the matcher runs out of steps
+        long overruns = Censor.getBudgetOverruns();
+        mask = "^(?=a)((?:a|a)+)+$";
+        assertFalse(MaskPlan.compile(mask).isLinear());
+        assertEquals(value.replaceAll(".", "X"), censor.process(value, mask));
+        assertEquals(overruns + 1, Censor.getBudgetOverruns());
+
+        // the budget does not affect values that match normally
+        assertEquals("XXXXb", censor.process("aaaab", "^(?=a)((?:a|a)+)+b$"));
+        assertEquals(overruns + 1, Censor.getBudgetOverruns());
+
+        logger.info("Catastrophic backtracking testing completed.\n");
+    }
+
+
+    /**
+     * This unit test method tests that the linear time automaton can be turned off.
+     */
+    @Test
+    public void testLinearMatchingOptOut() {
+        logger.info("Testing turning off the linear time automaton...");
+
+        String mask = "^((?:a|a)+)+$";
+        String value = "aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaab";
+        Censor censor = new Censor();
+        long overruns = Censor.getBudgetOverruns();
+        Censor.setLinearMatching(false);
+        try {
+            assertFalse(MaskPlan.compile(mask).isLinear());
+            assertTrue(MaskPlan.compile(Sensitive.MASK_SSN).isLinear());  // the scanner is still used
+            assertEquals(value.replaceAll(".", "X"), censor.process(value, mask));
+            assertEquals(overruns + 1, Censor.getBudgetOverruns());
+            assertEquals("XXXX", censor.process("aaaa", mask));
+        } finally {
+            Censor.setLinearMatching(true);
+        }
+        assertTrue(MaskPlan.compile(mask).isLinear());
+        assertEquals("MASKING_ERROR", censor.process(value, mask));
+
+        logger.info("Turning off the linear time automaton testing completed.\n");
+    }
+
+
+    /**
+     * This unit test method tests that masking a value directly into a generator allocates no
+     * memory once the masks have been compiled.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testAllocationFreeMasking() throws Exception {
+        logger.info("Testing allocation free masking...");
+
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean) ||
+                !((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemorySupported()) {
+            logger.info("  Skipping since the allocated memory cannot be measured.");
+            return;
+        }
+        com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+
+        CensorshipSerializer cards = new CensorshipSerializer(Censor.planFor(Sensitive.MASK_CREDIT_CARD_NUMBER), 'X');
+        CensorshipSerializer emails = new CensorshipSerializer(Censor.planFor(Sensitive.MASK_EMAIL_ADDRESS), '*');
+        StringWriter output = new StringWriter();
+        JsonGenerator generator = new JsonFactory().createGenerator(new Writer() {
+            @Override public void write(char[] buffer, int offset, int length) { }
+            @Override public void flush() { }
+            @Override public void close() { }
+        });
+        generator.writeStartArray();
+        String card = "1234-5678-9012-3456";
+        String email = "someone@example.com";
+        int iterations = 100000;
+        for (int i = 0; i < iterations; i++) {  // warm up
+            cards.serialize(card, generator, null);
+            emails.serialize(email, generator, null);
+        }
+        long threadId = Thread.currentThread().getId();
+        long before = allocations.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < iterations; i++) {
+            cards.serialize(card, generator, null);
+            emails.serialize(email, generator, null);
+        }
+        long allocated = allocations.getThreadAllocatedBytes(threadId) - before;
+        logger.info("  Allocated {} bytes for {} masked values.", allocated, 2 * iterations);
+        assertTrue("Masking allocated " + allocated + " bytes.", allocated < iterations);
+
+        // make sure that the values were masked correctly (root values are separated by a space)
+        generator = new JsonFactory().createGenerator(output);
+        cards.serialize(card, generator, null);
+        emails.serialize(email, generator, null);
+        generator.flush();
+        assertEquals("\"1234-XXXX-XXXX-3456\" \"*******@example.com\"", output.toString());
+
+        logger.info("Allocation free masking testing completed.\n");
+    }
+
+
+    /**
+     * This unit test method tests the concurrent use of the cached masks and matchers.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testConcurrentMasking() throws Exception {
+        logger.info("Testing concurrent masking...");
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int t = 0; t < 16; t++) {
+                final int seed = t;
+                results.add(executor.submit(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() {
+                        Censor censor = new Censor('*');
+                        for (int i = 0; i < 1000; i++) {
+                            String user = "user" + seed + "x" + i;
+                            if (!censor.process(user + "@mail.com", Sensitive.MASK_EMAIL_ADDRESS)
+                                    .equals(user.replaceAll(".", "*") + "@mail.com")) {
+                                return false;
+                            }
+                        }
+                        return true;
+                    }
+                }));
+            }
+            for (Future<Boolean> result : results) {
+                assertTrue(result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        logger.info("Concurrent masking testing completed.\n");
+    }
+
+}
@@ -0,0 +1,235 @@
+/************************************************************************
+ * Copyright (c) Crater Dog Technologies(TM).  All Rights Reserved.     *
+ ************************************************************************
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.        *
+ *                                                                      *
+ * This code is free software; you can redistribute it and/or modify it *
+ * under the terms of The MIT License (MIT), as published by the Open   *
+ * Source Initiative. (See http://opensource.org/licenses/MIT)          *
+ ************************************************************************/
+package craterdog.smart;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import org.junit.AfterClass;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.ext.XLogger;
+import org.slf4j.ext.XLoggerFactory;
+
+/**
+ * This class tests the runtime handling of the support classes that are generated for the
+ * smart object classes marked with the <code>@Precompiled</code> annotation.
+ *
+ * @author Derk Norton
+ */
+public class CompiledSupportTest {
+
+    static private final XLogger logger = XLoggerFactory.getXLogger(CompiledSupportTest.class);
+
+
+    /**
+     * Log a message at the beginning of the tests.
+     */
+    @BeforeClass
+    static public void setUpClass() {
+        logger.info("Running CompiledSupport Unit Tests...\n");
+    }
+
+
+    /**
+     * Log a message at the end of the tests.
+     */
+    @AfterClass
+    static public void tearDownClass() {
+        logger.info("Completed CompiledSupport Unit Tests.\n");
+    }
+
+
+    /**
+     * This unit test method tests that the generated support is only found for the classes that
+     * are marked as precompiled.
+     */
+    @Test
+    public void testSupportLookup() {
+        logger.info("Testing the lookup of generated support...");
+
+        assertNotNull(CompiledSupport.supportFor(ExamplePrecompiledObject.class));
+        assertNull(CompiledSupport.supportFor(RuntimeObject.class));  // the annotation is not inherited
+        assertNull(CompiledSupport.supportFor(ExampleSmartObject.class));
+
+        logger.info("The lookup of generated support testing completed.\n");
+    }
+
+
+    /**
+     * This unit test method tests that the generated support writes the same JSON as the runtime
+     * handling, with and without masking.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testSerialization() throws IOException {
+        logger.info("Testing the serialization using generated support...");
+
+        ExamplePrecompiledObject compiled = new ExamplePrecompiledObject();
+        compiled.tags.add("alpha");
+        compiled.name = null;
+        RuntimeObject runtime = new RuntimeObject();
+        runtime.tags.add("alpha");
+        runtime.name = null;
+        assertEquals(runtime.toString(), compiled.toString());
+        assertEquals(runtime.toExposedString(), compiled.toExposedString());
+        assertTrue(compiled.toString().contains("1234-XXXX-XXXX-3456"));
+        assertTrue(compiled.toExposedString().contains("1234-5678-9012-3456"));
+
+        logger.info("The serialization using generated support testing completed.\n");
+    }
+
+
+    /**
+     * This unit test method tests that the generated support reads what it writes and ignores
+     * unknown attributes.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testDeserialization() throws IOException {
+        logger.info("Testing the deserialization using generated support...");
+
+        ExamplePrecompiledObject expected = new ExamplePrecompiledObject();
+        expected.count = 7;
+        expected.ratio = 2;
+        expected.tags.add("beta");
+        ExamplePrecompiledObject copy = SmartObject.fromString(ExamplePrecompiledObject.class, expected.toExposedString());
+        assertEquals(expected.toExposedString(), copy.toExposedString());
+        assertEquals(expected, copy);
+
+        copy = SmartObject.fromString(ExamplePrecompiledObject.class, "{\"count\":\"3\",\"unknown\":{\"a\":[1,2]},\"name\":null}");
+        assertEquals(3, copy.count);
+        assertNull(copy.name);
+
+        logger.info("The deserialization using generated support testing completed.\n");
+    }
+
+
+    /**
+     * This unit test method tests that the generated support writes and reads the type id of a
+     * polymorphic attribute.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testPolymorphicAttribute() throws IOException {
+        logger.info("Testing the polymorphic handling using generated support...");
+
+        ObjectMapper mapper = SmartObject.createMapper();
+        TypedHolder holder = new TypedHolder();
+        ExamplePrecompiledObject expected = new ExamplePrecompiledObject();
+        expected.tags.add("delta");
+        holder.value = expected;
+        String json = mapper.writeValueAsString(holder);
+        assertTrue(json.contains("\"@class\" : \"craterdog.smart.ExamplePrecompiledObject\""));
+        TypedHolder copy = mapper.readValue(json, TypedHolder.class);
+        assertEquals(expected, copy.value);
+
+        logger.info("The polymorphic handling using generated support testing completed.\n");
+    }
+
+
+    /**
+     * This unit test method tests that a mapper that has been configured differently than the
+     * generated support assumes handles a precompiled class exactly like any other class.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testReconfiguredMapper() throws IOException {
+        logger.info("Testing the handling of a precompiled class by a reconfigured mapper...");
+
+        ObjectMapper mapper = SmartObject.createMapper();
+        mapper.enable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+        try {
+            mapper.readValue("{\"count\":3,\"unknown\":true}", ExamplePrecompiledObject.class);
+            fail("  The unknown attribute should have been rejected.");
+        } catch (JsonMappingException e) {
+            logger.info("  The expected exception was thrown: {}", e.getMessage());
+        }
+
+        mapper = SmartObject.createMapper();
+        mapper.addMixIn(ExamplePrecompiledObject.class, NameOnlyMixIn.class);
+        assertEquals("{\n  \"name\" : \"example\"\n}", mapper.writeValueAsString(new ExamplePrecompiledObject()));
+        ExamplePrecompiledObject copy = mapper.readValue("{\"count\":3,\"name\":\"copy\"}", ExamplePrecompiledObject.class);
+        assertEquals(5, copy.count);
+        assertEquals("copy", copy.name);
+
+        logger.info("The handling of a precompiled class by a reconfigured mapper testing completed.\n");
+    }
+
+
+    /**
+     * This unit test method tests that the generated equality and hash code agree with the
+     * exposed JSON strings.
+     */
+    @Test
+    public void testEqualsAndHashCode() {
+        logger.info("Testing the equality using generated support...");
+
+        ExamplePrecompiledObject first = new ExamplePrecompiledObject();
+        ExamplePrecompiledObject second = new ExamplePrecompiledObject();
+        assertEquals(first, second);
+        assertEquals(first.hashCode(), second.hashCode());
+
+        second.tags.add("gamma");
+        assertNotEquals(first, second);
+        first.tags.add("gamma");
+        assertEquals(first, second);
+        assertEquals(first.hashCode(), second.hashCode());
+
+        second.ratio = -0.0;
+        first.ratio = 0.0;
+        assertNotEquals(first, second);  // the JSON strings differ
+        assertNotEquals(first, new RuntimeObject());
+
+        logger.info("The equality using generated support testing completed.\n");
+    }
+
+
+    /**
+     * This class holds a value whose class is written out along with it.
+     */
+    static public class TypedHolder {
+
+        @JsonTypeInfo(use = JsonTypeInfo.Id.CLASS)
+        public Object value;
+
+    }
+
+
+    /**
+     * This mixin limits the attributes of the precompiled class to its name.
+     */
+    @JsonIgnoreProperties({ "count", "ratio", "card", "tags", "map" })
+    static private abstract class NameOnlyMixIn {
+
+    }
+
+
+    /**
+     * This class has the same attributes as the precompiled class but is handled at runtime.
+     */
+    static public class RuntimeObject extends ExamplePrecompiledObject {
+
+    }
+
+}
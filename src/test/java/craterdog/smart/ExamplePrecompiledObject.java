@@ -0,0 +1,34 @@
+/************************************************************************
+ * Copyright (c) Crater Dog Technologies(TM).  All Rights Reserved.     *
+ ************************************************************************
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.        *
+ *                                                                      *
+ * This code is free software; you can redistribute it and/or modify it *
+ * under the terms of The MIT License (MIT), as published by the Open   *
+ * Source Initiative. (See http://opensource.org/licenses/MIT)          *
+ ************************************************************************/
+package craterdog.smart;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class implements a simple example smart object whose support is generated at compile
+ * time.
+ *
+ * @author Derk Norton
+ */
+@Precompiled
+public class ExamplePrecompiledObject extends SmartObject<ExamplePrecompiledObject> {
+
+    public int count = 5;
+    public double ratio = 0.25;
+    public String name = "example";
+
+    @Sensitive(type = "credit card", mask = Sensitive.MASK_CREDIT_CARD_NUMBER)
+    public String card = "1234-5678-9012-3456";
+
+    public List<String> tags = new ArrayList<>();
+    public ExampleSmartMap map = new ExampleSmartMap();
+
+}
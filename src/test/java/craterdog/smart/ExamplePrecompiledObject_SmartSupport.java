@@ -0,0 +1,157 @@
+/************************************************************************
+ * Copyright (c) Crater Dog Technologies(TM).  All Rights Reserved.     *
+ ************************************************************************
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.        *
+ *                                                                      *
+ * This code is free software; you can redistribute it and/or modify it *
+ * under the terms of The MIT License (MIT), as published by the Open   *
+ * Source Initiative. (See http://opensource.org/licenses/MIT)          *
+ ************************************************************************/
+package craterdog.smart;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import java.io.IOException;
+import java.util.Objects;
+
+/**
+ * This class has the same shape as the class that the SmartObjectProcessor generates for the
+ * <code>ExamplePrecompiledObject</code> class. It is maintained by hand so that the runtime
+ * support can be tested without running the annotation processor, which is tested in its own
+ * module.
+ *
+ * @author Derk Norton
+ */
+public final class ExamplePrecompiledObject_SmartSupport extends CompiledSupport<ExamplePrecompiledObject> {
+
+    static private final SerializedString NAME_count = new SerializedString("count");
+    static private final SerializedString NAME_ratio = new SerializedString("ratio");
+    static private final SerializedString NAME_name = new SerializedString("name");
+    static private final SerializedString NAME_card = new SerializedString("card");
+    static private final Mask MASK_card = mask("^\\d{4}-(\\d{4})-(\\d{4})-\\d{4}$", 0, 0, "", 'X');
+    static private final SerializedString NAME_tags = new SerializedString("tags");
+    static private final SerializedString NAME_map = new SerializedString("map");
+    private final JavaType TYPE_tags = attributeType("tags");
+
+
+    public ExamplePrecompiledObject_SmartSupport() {
+        super(ExamplePrecompiledObject.class, "count", "ratio", "name", "card", "tags", "map");
+    }
+
+
+    @Override
+    public void writeFields(ExamplePrecompiledObject object, JsonGenerator generator, SerializerProvider provider,
+            boolean censored) throws IOException {
+        generator.writeFieldName(NAME_count);
+        generator.writeNumber(object.count);
+        generator.writeFieldName(NAME_ratio);
+        generator.writeNumber(object.ratio);
+        if (object.name != null) {
+            generator.writeFieldName(NAME_name);
+            generator.writeString(object.name);
+        }
+        if (object.card != null) {
+            generator.writeFieldName(NAME_card);
+            if (censored) {
+                MASK_card.writeTo(object.card, generator);
+            } else {
+                generator.writeString(object.card);
+            }
+        }
+        if (object.tags != null) {
+            generator.writeFieldName(NAME_tags);
+            provider.defaultSerializeValue(object.tags, generator);
+        }
+        if (object.map != null) {
+            generator.writeFieldName(NAME_map);
+            provider.defaultSerializeValue(object.map, generator);
+        }
+    }
+
+
+    @Override
+    public Object attributeValue(ExamplePrecompiledObject object, int index) {
+        switch (index) {
+            case 0:
+                return object.count;
+            case 1:
+                return object.ratio;
+            case 2:
+                return object.name;
+            case 3:
+                return object.card;
+            case 4:
+                return object.tags;
+            case 5:
+                return object.map;
+            default:
+                throw new IndexOutOfBoundsException("There is no attribute " + index + ".");
+        }
+    }
+
+
+    @Override
+    public ExamplePrecompiledObject read(JsonParser parser, DeserializationContext context) throws IOException {
+        ExamplePrecompiledObject object = new ExamplePrecompiledObject();
+        JsonToken token = parser.getCurrentToken();
+        if (token == JsonToken.START_OBJECT) token = parser.nextToken();
+        for (; token == JsonToken.FIELD_NAME; token = parser.nextToken()) {
+            String name = parser.getCurrentName();
+            parser.nextToken();
+            switch (name) {
+                case "count":
+                    object.count = parser.hasToken(JsonToken.VALUE_NUMBER_INT) ? parser.getIntValue() : context.<java.lang.Integer>readValue(parser, int.class);
+                    break;
+                case "ratio":
+                    object.ratio = parser.hasToken(JsonToken.VALUE_NUMBER_FLOAT) ? parser.getDoubleValue() : context.<java.lang.Double>readValue(parser, double.class);
+                    break;
+                case "name":
+                    object.name = parser.hasToken(JsonToken.VALUE_STRING) ? parser.getText() : parser.hasToken(JsonToken.VALUE_NULL) ? null : context.<java.lang.String>readValue(parser, java.lang.String.class);
+                    break;
+                case "card":
+                    object.card = parser.hasToken(JsonToken.VALUE_STRING) ? parser.getText() : parser.hasToken(JsonToken.VALUE_NULL) ? null : context.<java.lang.String>readValue(parser, java.lang.String.class);
+                    break;
+                case "tags":
+                    object.tags = parser.hasToken(JsonToken.VALUE_NULL) ? null : context.readValue(parser, TYPE_tags);
+                    break;
+                case "map":
+                    object.map = parser.hasToken(JsonToken.VALUE_NULL) ? null : context.<craterdog.smart.ExampleSmartMap>readValue(parser, craterdog.smart.ExampleSmartMap.class);
+                    break;
+                default:
+                    parser.skipChildren();  // unknown attributes are ignored
+                    break;
+            }
+        }
+        return object;
+    }
+
+
+    @Override
+    public boolean areEqual(ExamplePrecompiledObject first, ExamplePrecompiledObject second) {
+        return first.count == second.count
+                && Double.compare(first.ratio, second.ratio) == 0
+                && Objects.equals(first.name, second.name)
+                && Objects.equals(first.card, second.card)
+                && valuesEqual(first.tags, second.tags)
+                && valuesEqual(first.map, second.map);
+    }
+
+
+    @Override
+    public int hashCodeOf(ExamplePrecompiledObject object) {
+        int hash = 1;
+        hash = 31 * hash + java.lang.Integer.hashCode(object.count);
+        hash = 31 * hash + java.lang.Double.hashCode(object.ratio);
+        hash = 31 * hash + Objects.hashCode(object.name);
+        hash = 31 * hash + Objects.hashCode(object.card);
+        hash = 31 * hash + valueHash(object.tags);
+        hash = 31 * hash + valueHash(object.map);
+        return hash;
+    }
+
+}
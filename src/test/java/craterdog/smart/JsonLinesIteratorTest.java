@@ -0,0 +1,209 @@
+/************************************************************************
+ * Copyright (c) Crater Dog Technologies(TM).  All Rights Reserved.     *
+ ************************************************************************
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.        *
+ *                                                                      *
+ * This code is free software; you can redistribute it and/or modify it *
+ * under the terms of The MIT License (MIT), as published by the Open   *
+ * Source Initiative. (See http://opensource.org/licenses/MIT)          *
+ ************************************************************************/
+package craterdog.smart;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.stream.Stream;
+import org.junit.AfterClass;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.ext.XLogger;
+import org.slf4j.ext.XLoggerFactory;
+
+/**
+ * This class tests the lazy reading of JSON lines using the <code>JsonLinesIterator</code> class.
+ *
+ * @author Derk Norton
+ */
+public class JsonLinesIteratorTest {
+
+    static private final XLogger logger = XLoggerFactory.getXLogger(JsonLinesIteratorTest.class);
+
+
+    /**
+     * Log a message at the beginning of the tests.
+     */
+    @BeforeClass
+    static public void setUpClass() {
+        logger.info("Running JsonLinesIterator Unit Tests...\n");
+    }
+
+
+    /**
+     * Log a message at the end of the tests.
+     */
+    @AfterClass
+    static public void tearDownClass() {
+        logger.info("Completed JsonLinesIterator Unit Tests.\n");
+    }
+
+
+    /**
+     * This unit test method tests the reading of smart objects from a JSON lines file.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testReadingAFile() throws IOException {
+        logger.info("Testing the reading of smart objects from a JSON lines file...");
+
+        ExampleSmartObject object = new ExampleSmartObject();
+        StringBuilder builder = new StringBuilder();
+        int count = 200;  // enough lines to span several buffer loads
+        for (int i = 0; i < count; i++) {
+            object.bar = i;
+            builder.append(object.toExposedCompactString()).append(i % 2 == 0 ? "\n" : "\r\n");
+        }
+        Path file = Files.createTempFile("smart", ".jsonl");
+        try {
+            Files.write(file, builder.toString().getBytes(StandardCharsets.UTF_8));
+            try (JsonLinesIterator<ExampleSmartObject> objects = SmartObject.fromJsonLines(ExampleSmartObject.class, file)) {
+                assertEquals(Files.size(file), objects.getTotalBytes());
+                int expected = 0;
+                while (objects.hasNext()) {
+                    ExampleSmartObject next = objects.next();
+                    assertEquals(expected++, next.bar);
+                    assertTrue(objects.getBytesRead() <= objects.getTotalBytes());
+                }
+                assertEquals(count, expected);
+                assertEquals(count, objects.getLineNumber());
+                assertEquals(objects.getTotalBytes(), objects.getBytesRead());
+            }
+        } finally {
+            Files.delete(file);
+        }
+
+        logger.info("The reading of a JSON lines file testing completed.");
+    }
+
+
+    /**
+     * This unit test method tests the handling of blank lines, long lines and a last line that
+     * does not end with a newline.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testLineHandling() throws IOException {
+        logger.info("Testing the handling of blank and long lines...");
+
+        StringBuilder longString = new StringBuilder();
+        for (int i = 0; i < 100000; i++) {
+            longString.append((char) ('a' + i % 26));
+        }
+        String input = "\n[\"alpha\"]\n  \n[\"" + longString + "\"]\r\n\r\n[\"beta\", \"gamma\"]";
+        byte[] bytes = input.getBytes(StandardCharsets.UTF_8);
+        TypeReference<List<String>> type = new TypeReference<List<String>>() {};
+        JsonLinesIterator<List<String>> lists = SmartObject.fromJsonLines(type, new ByteArrayInputStream(bytes));
+        assertEquals(-1, lists.getTotalBytes());
+        assertEquals("alpha", lists.next().get(0));
+        assertEquals(longString.toString(), lists.next().get(0));
+        assertEquals(2, lists.next().size());
+        assertFalse(lists.hasNext());
+        assertEquals(bytes.length, lists.getBytesRead());
+        try {
+            lists.next();
+            fail("  The iterator returned an object past the end of the input.");
+        } catch (NoSuchElementException e) {
+            logger.info("  The expected exception was thrown: {}", e.getMessage());
+        }
+
+        logger.info("The handling of blank and long lines testing completed.");
+    }
+
+
+    /**
+     * This unit test method tests the handling of malformed lines.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testMalformedLines() throws IOException {
+        logger.info("Testing the handling of malformed lines...");
+
+        String input = "{\"bar\": 1}\n{\"bar\": \n{\"bar\": 3}\nnot json\n{\"bar\": 5}\n";
+        TypeReference<Map<String, Integer>> type = new TypeReference<Map<String, Integer>>() {};
+
+        JsonLinesIterator<Map<String, Integer>> maps = SmartObject.fromJsonLines(type, stream(input));
+        assertEquals(1, (int) maps.next().get("bar"));
+        try {
+            maps.next();
+            fail("  The malformed line was not detected.");
+        } catch (RuntimeException e) {
+            logger.info("  The expected exception was thrown: {}", e.getMessage());
+            assertEquals(2, maps.getLineNumber());
+        }
+        maps.close();
+        assertFalse(maps.hasNext());
+
+        maps = SmartObject.fromJsonLines(type, stream(input)).skipMalformedLines(true);
+        List<Integer> values = new ArrayList<>();
+        while (maps.hasNext()) {
+            values.add(maps.next().get("bar"));
+        }
+        assertEquals(3, values.size());
+        assertEquals(5, (int) values.get(2));
+        assertEquals(2, maps.getMalformedLines());
+
+        logger.info("The handling of malformed lines testing completed.");
+    }
+
+
+    /**
+     * This unit test method tests the stream of objects returned by the iterator.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testStream() throws IOException {
+        logger.info("Testing the stream of objects read from JSON lines...");
+
+        String input = "{\"bar\": 1}\n{\"bar\": 2}\n{\"bar\": 3}\n";
+        final boolean[] closed = new boolean[1];
+        ByteArrayInputStream bytes = new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)) {
+            @Override
+            public void close() {
+                closed[0] = true;
+            }
+        };
+        JsonLinesIterator<ExampleSmartObject> objects = SmartObject.fromJsonLines(ExampleSmartObject.class, bytes);
+        int sum = 0;
+        try (Stream<ExampleSmartObject> stream = objects.stream().limit(2)) {
+            Iterator<ExampleSmartObject> iterator = stream.iterator();
+            while (iterator.hasNext()) {
+                sum += iterator.next().bar;
+            }
+        }
+        assertEquals(3, sum);
+        assertTrue(closed[0]);
+
+        logger.info("The stream of objects testing completed.");
+    }
+
+
+    static private ByteArrayInputStream stream(String input) {
+        return new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8));
+    }
+
+}
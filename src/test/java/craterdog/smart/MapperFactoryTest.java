@@ -0,0 +1,149 @@
+/************************************************************************
+ * Copyright (c) Crater Dog Technologies(TM).  All Rights Reserved.     *
+ ************************************************************************
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.        *
+ *                                                                      *
+ * This code is free software; you can redistribute it and/or modify it *
+ * under the terms of The MIT License (MIT), as published by the Open   *
+ * Source Initiative. (See http://opensource.org/licenses/MIT)          *
+ ************************************************************************/
+package craterdog.smart;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.Module;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import java.io.IOException;
+import org.junit.AfterClass;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.ext.XLogger;
+import org.slf4j.ext.XLoggerFactory;
+
+/**
+ * This class tests the caching of mapper prototypes by the <code>MapperFactory</code> class.
+ *
+ * @author Derk Norton
+ */
+public class MapperFactoryTest {
+
+    static private final XLogger logger = XLoggerFactory.getXLogger(MapperFactoryTest.class);
+
+
+    /**
+     * Log a message at the beginning of the tests.
+     */
+    @BeforeClass
+    static public void setUpClass() {
+        logger.info("Running MapperFactory Unit Tests...\n");
+    }
+
+
+    /**
+     * Log a message at the end of the tests.
+     */
+    @AfterClass
+    static public void tearDownClass() {
+        logger.info("Completed MapperFactory Unit Tests.\n");
+    }
+
+
+    /**
+     * This unit test method tests that the prototype for each set of modules is only created once.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testPrototypeCache() throws IOException {
+        logger.info("Testing the mapper prototype cache...");
+
+        MapperFactory.clearCache();
+        ObjectMapper shared = MapperFactory.getSharedMapper(new CensorshipModule());
+        for (int i = 0; i < 10; i++) {
+            assertSame(shared, MapperFactory.getSharedMapper(new CensorshipModule()));
+            ObjectMapper mapper = SmartObject.createMapper(new CensorshipModule());
+            assertNotSame(shared, mapper);
+            assertEquals(new ExampleSmartObject().toString(), mapper.writeValueAsString(new ExampleSmartObject()));
+        }
+        assertNotSame(shared, MapperFactory.getSharedMapper());
+        assertEquals(2, MapperFactory.getCacheMisses());
+        assertEquals(20, MapperFactory.getCacheHits());
+        assertEquals(2, MapperFactory.getCacheSize());
+
+        // reconfiguring the shared mapper does not affect the mappers created afterwards
+        shared.setSerializationInclusion(JsonInclude.Include.ALWAYS);
+        Nullable nullable = new Nullable();
+        assertEquals("{\n  \"value\" : null\n}", shared.writeValueAsString(nullable));
+        assertEquals("{ }", SmartObject.createMapper(new CensorshipModule()).writeValueAsString(nullable));
+        MapperFactory.clearCache();
+
+        logger.info("Mapper prototype cache testing completed.\n");
+    }
+
+
+    /**
+     * This unit test method tests that the cache does not grow beyond its bounds.
+     */
+    @Test
+    public void testBoundedCache() {
+        logger.info("Testing the bounds of the mapper prototype cache...");
+
+        MapperFactory.clearCache();
+        for (int i = 1; i <= 100; i++) {
+            Module[] modules = new Module[i];  // each number of modules is a different set of modules
+            for (int j = 0; j < i; j++) {
+                modules[j] = new CensorshipModule();
+            }
+            MapperFactory.getSharedMapper(modules);
+        }
+        assertTrue(MapperFactory.getCacheSize() <= 32);
+        assertTrue(MapperFactory.getCacheEvictions() > 0);
+
+        logger.info("Bounds of the mapper prototype cache testing completed.\n");
+    }
+
+
+    /**
+     * This unit test method tests that only the mappers for stateless modules are cached.
+     */
+    @Test
+    public void testStatefulModules() {
+        logger.info("Testing the mappers for stateful modules...");
+
+        MapperFactory.clearCache();
+        ObjectMapper mapper = MapperFactory.getSharedMapper(new SimpleModule());
+        assertNotSame(mapper, MapperFactory.getSharedMapper(new SimpleModule()));
+        mapper = MapperFactory.getSharedMapper(new CensorshipModule(), new SimpleModule("Named"));
+        assertNotSame(mapper, MapperFactory.getSharedMapper(new CensorshipModule(), new SimpleModule("Named")));
+        assertEquals(0, MapperFactory.getCacheSize());
+        assertEquals(0, MapperFactory.getCacheMisses());
+
+        MapperFactory.registerStatelessModule(ExampleModule.class);
+        mapper = MapperFactory.getSharedMapper(new ExampleModule());
+        assertSame(mapper, MapperFactory.getSharedMapper(new ExampleModule()));
+        assertEquals(1, MapperFactory.getCacheSize());
+
+        logger.info("Mappers for stateful modules testing completed.\n");
+    }
+
+
+    static public class Nullable {
+
+        public String value;
+
+    }
+
+
+    static private class ExampleModule extends SimpleModule {
+
+        ExampleModule() {
+            super("ExampleModule");
+        }
+
+    }
+
+}
@@ -0,0 +1,409 @@
+/************************************************************************
+ * Copyright (c) Crater Dog Technologies(TM).  All Rights Reserved.     *
+ ************************************************************************
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.        *
+ *                                                                      *
+ * This code is free software; you can redistribute it and/or modify it *
+ * under the terms of The MIT License (MIT), as published by the Open   *
+ * Source Initiative. (See http://opensource.org/licenses/MIT)          *
+ ************************************************************************/
+package craterdog.smart;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.AfterClass;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.ext.XLogger;
+import org.slf4j.ext.XLoggerFactory;
+
+/**
+ * This class contains simple benchmarks that compare the optimized implementations of the smart
+ * object methods with the original JSON string based ones. The timings are logged rather than
+ * asserted since they depend on the machine running the tests. The benchmarks take too long to
+ * be part of the unit tests, so they are only run when the "benchmarks" profile is activated by
+ * including "-P benchmarks" on the commandline.
+ *
+ * @author Derk Norton
+ */
+public class SmartObjectBenchmarks {
+
+    static private final XLogger logger = XLoggerFactory.getXLogger(SmartObjectBenchmarks.class);
+    static private final SmartObjectMapper mapper = new SmartObjectMapper();
+    static private final int WARMUP = 5000;
+    static private final int ITERATIONS = 20000;
+
+
+    /**
+     * Log a message at the beginning of the tests.
+     */
+    @BeforeClass
+    static public void setUpClass() {
+        logger.info("Running SmartObject Benchmarks...\n");
+    }
+
+
+    /**
+     * Log a message at the end of the tests.
+     */
+    @AfterClass
+    static public void tearDownClass() {
+        logger.info("Completed SmartObject Benchmarks.\n");
+    }
+
+
+    /**
+     * This benchmark compares the copy() method with a round trip through a JSON string.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void benchmarkCopy() throws IOException {
+        logger.info("Benchmarking the copy() method...");
+
+        final ExampleSmartObject object = new ExampleSmartObject();
+        long jsonTime = time(new Task() {
+            @Override
+            public Object run() throws IOException {
+                return mapper.readValue(mapper.writeValueAsString(object), ExampleSmartObject.class);
+            }
+        });
+        long copyTime = time(new Task() {
+            @Override
+            public Object run() {
+                return object.copy();
+            }
+        });
+        logger.info("  JSON round trip: {} ns/op, copy(): {} ns/op", jsonTime, copyTime);
+        assertEquals(object, object.copy());
+
+        logger.info("Copy benchmark completed.\n");
+    }
+
+
+    /**
+     * This benchmark compares the specialized maskers with the regular expression matcher.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void benchmarkMasking() throws IOException {
+        logger.info("Benchmarking the specialized maskers...");
+
+        String[][] examples = {
+            {Sensitive.MASK_CREDIT_CARD_NUMBER, "1234-5678-9012-3456"},
+            {Sensitive.MASK_SSN, "123-45-6789"},
+            {Sensitive.MASK_PHONE_NUMBER, "123-456-7890"},
+            {Sensitive.MASK_EMAIL_ADDRESS, "someone@example.com"},
+            {Sensitive.MASK_PASSWORD, "CorrectHorseBatteryStaple"}
+        };
+        for (String[] example : examples) {
+            final MaskPlan regex = MaskPlan.compileRegex(example[0]);
+            final MaskPlan specialized = MaskPlan.compile(example[0]);
+            final String value = example[1];
+            long regexTime = time(new Task() {
+                @Override
+                public Object run() {
+                    return regex.apply(value, 'X');
+                }
+            });
+            long specializedTime = time(new Task() {
+                @Override
+                public Object run() {
+                    return specialized.apply(value, 'X');
+                }
+            });
+            logger.info("  {}: regex: {} ns/op, specialized: {} ns/op", example[0], regexTime, specializedTime);
+            assertEquals(regex.apply(value, 'X'), specialized.apply(value, 'X'));
+        }
+
+        logger.info("Masking benchmark completed.\n");
+    }
+
+
+    /**
+     * This benchmark compares the toString() method, which censors sensitive attributes, with the
+     * toExposedString() method for a class that has no sensitive attributes.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void benchmarkCensorship() throws IOException {
+        logger.info("Benchmarking the censorship of a class with no sensitive attributes...");
+
+        final Insensitive object = new Insensitive();
+        long exposedTime = time(new Task() {
+            @Override
+            public Object run() {
+                return object.toExposedString();
+            }
+        });
+        long censoredTime = time(new Task() {
+            @Override
+            public Object run() {
+                return object.toString();
+            }
+        });
+        logger.info("  toExposedString(): {} ns/op, toString(): {} ns/op", exposedTime, censoredTime);
+        assertEquals(object.toExposedString(), object.toString());
+
+        logger.info("Censorship benchmark completed.\n");
+    }
+
+
+    /**
+     * This benchmark compares the generated accessors with reflection for writing and reading a
+     * smart object.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void benchmarkGeneratedAccessors() throws IOException {
+        logger.info("Benchmarking the generated accessors...");
+
+        final SmartObjectMapper generated = new SmartObjectMapper(new CensorshipModule(), new AccessorModule());
+        final SmartObjectMapper reflected = new SmartObjectMapper(new CensorshipModule());
+        final ExampleSmartObject object = new ExampleSmartObject();
+        final String json = reflected.writeValueAsCompactString(object);
+        long reflectedWriteTime = time(new Task() {
+            @Override
+            public Object run() throws IOException {
+                return reflected.writeValueAsCompactString(object);
+            }
+        });
+        long generatedWriteTime = time(new Task() {
+            @Override
+            public Object run() throws IOException {
+                return generated.writeValueAsCompactString(object);
+            }
+        });
+        long reflectedReadTime = time(new Task() {
+            @Override
+            public Object run() throws IOException {
+                return reflected.cachedReader(ExampleSmartObject.class).readValue(json);
+            }
+        });
+        long generatedReadTime = time(new Task() {
+            @Override
+            public Object run() throws IOException {
+                return generated.cachedReader(ExampleSmartObject.class).readValue(json);
+            }
+        });
+        logger.info("  write reflected: {} ns/op, write generated: {} ns/op", reflectedWriteTime, generatedWriteTime);
+        logger.info("  read reflected: {} ns/op, read generated: {} ns/op", reflectedReadTime, generatedReadTime);
+        assertEquals(json, generated.writeValueAsCompactString(object));
+
+        logger.info("Generated accessors benchmark completed.\n");
+    }
+
+
+    /**
+     * This benchmark compares the size and speed of the binary Smile format with compact JSON.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void benchmarkSmile() throws IOException {
+        logger.info("Benchmarking the binary Smile format...");
+
+        final ExampleSmartObject object = new ExampleSmartObject();
+        final String json = object.toExposedCompactString();
+        final byte[] smile = object.toExposedSmileBytes();
+        logger.info("  JSON: {} bytes, Smile: {} bytes", json.getBytes("UTF-8").length, smile.length);
+        long jsonWriteTime = time(new Task() {
+            @Override
+            public Object run() {
+                return object.toExposedCompactString();
+            }
+        });
+        long smileWriteTime = time(new Task() {
+            @Override
+            public Object run() {
+                return object.toExposedSmileBytes();
+            }
+        });
+        long jsonReadTime = time(new Task() {
+            @Override
+            public Object run() throws IOException {
+                return SmartObject.fromString(ExampleSmartObject.class, json);
+            }
+        });
+        long smileReadTime = time(new Task() {
+            @Override
+            public Object run() throws IOException {
+                return SmartObject.fromSmileBytes(ExampleSmartObject.class, smile);
+            }
+        });
+        logger.info("  write JSON: {} ns/op, write Smile: {} ns/op", jsonWriteTime, smileWriteTime);
+        logger.info("  read JSON: {} ns/op, read Smile: {} ns/op", jsonReadTime, smileReadTime);
+        assertEquals(object, SmartObject.fromSmileBytes(ExampleSmartObject.class, smile));
+
+        logger.info("Smile benchmark completed.\n");
+    }
+
+
+    /**
+     * This benchmark compares the parallel bulk writing of smart objects as JSON lines using
+     * different numbers of threads with a sequential loop that calls toCompactString().
+     *
+     * @throws IOException
+     */
+    @Test
+    public void benchmarkBulkWrite() throws IOException {
+        logger.info("Benchmarking the bulk writing of smart objects...");
+
+        final List<ExampleSmartObject> objects = new ArrayList<>();
+        for (int i = 0; i < 20000; i++) {
+            ExampleSmartObject object = new ExampleSmartObject();
+            object.bar = i;
+            objects.add(object);
+        }
+        final ByteArrayOutputStream output = new ByteArrayOutputStream(16 * 1024 * 1024);
+        long sequentialTime = timeExport(new Task() {
+            @Override
+            public Object run() throws IOException {
+                output.reset();
+                for (ExampleSmartObject object : objects) {
+                    output.write(object.toCompactString().getBytes(StandardCharsets.UTF_8));
+                    output.write('\n');
+                }
+                return output;
+            }
+        });
+        byte[] expected = output.toByteArray();
+        logger.info("  sequential loop: {} ms/export", sequentialTime / 1000000.0);
+        for (int threads = 1; threads <= 16; threads *= 2) {
+            final ForkJoinPool pool = new ForkJoinPool(threads);
+            try {
+                long bulkTime = timeExport(new Task() {
+                    @Override
+                    public Object run() throws IOException {
+                        output.reset();
+                        SmartObject.writeJsonLines(objects.iterator(), output, pool);
+                        return output;
+                    }
+                });
+                logger.info("  {} thread(s): {} ms/export, speedup: {}", threads, bulkTime / 1000000.0,
+                        (double) sequentialTime / bulkTime);
+                assertArrayEquals(expected, output.toByteArray());
+            } finally {
+                pool.shutdown();
+            }
+        }
+
+        logger.info("Bulk write benchmark completed.\n");
+    }
+
+
+    /**
+     * This benchmark compares the parallel parsing of a large JSON array using different numbers
+     * of threads with the single threaded parsing of the array as a list.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void benchmarkBulkRead() throws IOException {
+        logger.info("Benchmarking the parsing of a large JSON array...");
+
+        List<ExampleSmartObject> objects = new ArrayList<>();
+        for (int i = 0; i < 20000; i++) {
+            ExampleSmartObject object = new ExampleSmartObject();
+            object.bar = i;
+            objects.add(object);
+        }
+        final byte[] bytes = SmartObject.toUtf8Bytes(objects);
+        final TypeReference<List<ExampleSmartObject>> type = new TypeReference<List<ExampleSmartObject>>() {};
+        long sequentialTime = timeExport(new Task() {
+            @Override
+            public Object run() throws IOException {
+                return SmartObject.fromString(type, new String(bytes, StandardCharsets.UTF_8));
+            }
+        });
+        logger.info("  single threaded: {} ms/parse", sequentialTime / 1000000.0);
+        for (int threads = 1; threads <= 16; threads *= 2) {
+            final ForkJoinPool pool = new ForkJoinPool(threads);
+            try {
+                long bulkTime = timeExport(new Task() {
+                    @Override
+                    public Object run() throws IOException {
+                        return SmartObject.fromJsonArray(ExampleSmartObject.class, bytes, pool);
+                    }
+                });
+                logger.info("  {} thread(s): {} ms/parse, speedup: {}", threads, bulkTime / 1000000.0,
+                        (double) sequentialTime / bulkTime);
+                assertEquals(objects.size(), SmartObject.fromJsonArray(ExampleSmartObject.class, bytes, pool).size());
+            } finally {
+                pool.shutdown();
+            }
+        }
+
+        logger.info("Bulk read benchmark completed.\n");
+    }
+
+
+    /*
+     * This method returns the average time in nanoseconds that it takes to run a bulk task
+     * which takes too long to be timed using the standard number of iterations.
+     */
+    static private long timeExport(Task task) throws IOException {
+        for (int i = 0; i < 3; i++) {
+            task.run();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < 5; i++) {
+            task.run();
+        }
+        return (System.nanoTime() - start) / 5;
+    }
+
+
+    /**
+     * This method returns the average time in nanoseconds that it takes to run the specified task.
+     *
+     * @param task The task to be timed.
+     * @return The average time per run.
+     * @throws IOException The task failed.
+     */
+    static long time(Task task) throws IOException {
+        for (int i = 0; i < WARMUP; i++) {
+            task.run();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            task.run();
+        }
+        return (System.nanoTime() - start) / ITERATIONS;
+    }
+
+
+    /**
+     * This interface defines a task that can be benchmarked.
+     */
+    interface Task {
+
+        Object run() throws IOException;
+
+    }
+
+
+    /**
+     * This class contains only attributes that are not sensitive.
+     */
+    static public class Insensitive extends SmartObject<Insensitive> {
+
+        public String name = "Albert Einstein";
+        public String street = "112 Mercer Street";
+        public String city = "Princeton";
+        public String state = "New Jersey";
+        public String[] subjects = {"relativity", "photoelectric effect", "brownian motion"};
+
+    }
+
+}
@@ -10,10 +10,12 @@
 package craterdog.smart;
 
 import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectReader;
 import com.fasterxml.jackson.databind.module.SimpleModule;
 import java.io.IOException;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import static org.hamcrest.CoreMatchers.containsString;
 import org.joda.time.DateTime;
@@ -22,6 +24,8 @@ import org.joda.time.format.DateTimeFormat;
 import org.joda.time.format.ISODateTimeFormat;
 import org.junit.AfterClass;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -198,4 +202,34 @@ public class SmartObjectMapperTest {
         logger.info("Polymorphic objects testing completed.\n");
     }
 
+
+    /**
+     * This unit test method tests that the writers and readers are reused until the configuration
+     * of the mapper changes.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testCachedWritersAndReaders() throws IOException {
+        logger.info("Testing cached writers and readers...");
+
+        SmartObjectMapper cachingMapper = new SmartObjectMapper();
+        ObjectReader reader = cachingMapper.cachedReader(ExampleSmartObject.class);
+        assertSame(reader, cachingMapper.cachedReader(ExampleSmartObject.class));
+        ObjectReader listReader = cachingMapper.cachedReader(new TypeReference<List<String>>() { });
+        assertSame(listReader, cachingMapper.cachedReader(new TypeReference<List<String>>() { }));
+
+        ExampleSmartObject object = new ExampleSmartObject();
+        String indented = cachingMapper.writeValueAsString(object, "    ");
+        assertEquals(indented, cachingMapper.writeValueAsString(object, "    "));
+        assertTrue(indented.contains("\n      \""));
+
+        // changing the configuration invalidates the cached readers
+        cachingMapper.registerModule(new SimpleModule());
+        assertNotSame(reader, cachingMapper.cachedReader(ExampleSmartObject.class));
+        assertEquals(object, cachingMapper.cachedReader(ExampleSmartObject.class).readValue(indented));
+
+        logger.info("Cached writers and readers testing completed.\n");
+    }
+
 }
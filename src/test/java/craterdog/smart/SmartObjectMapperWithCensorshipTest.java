@@ -10,10 +10,18 @@
 package craterdog.smart;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import craterdog.primitives.TextString;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import net.sf.oval.constraint.MatchPattern;
 import org.junit.AfterClass;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import org.junit.BeforeClass;
 import org.junit.Test;
 import org.slf4j.ext.XLogger;
@@ -156,18 +164,23 @@ public class SmartObjectMapperWithCensorshipTest {
     }
 
     /**
-     * This unit test method tests an invalid masking pattern.
-     *
-     * @throws JsonProcessingException
+     * This unit test method tests an invalid masking pattern.  The mask is compiled when the
+     * serializer for the property is created so the error is reported rather than masked.
      */
     @Test
-    public void testInvalidMaskPattern() throws JsonProcessingException {
+    public void testInvalidMaskPattern() {
         logger.info("Testing invalid mask pattern...");
 
         SSNInvalidMask ssn = new SSNInvalidMask("123-45-6789");
-        String result = mapper.writeValueAsString(ssn);
-        assertTrue(result.contains("MASKING_ERROR"));
-        logger.info("  Masked value: {}", result);
+        try {
+            String result = mapper.writeValueAsString(ssn);
+            fail("An invalid mask should have been rejected: " + result);
+        } catch (JsonMappingException e) {
+            assertTrue(e.getMessage().contains("is invalid"));
+            logger.info("  Rejected mask: {}", e.getOriginalMessage());
+        } catch (JsonProcessingException e) {
+            fail("The wrong exception was thrown: " + e);
+        }
 
         logger.info("Invalid mask pattern testing completed.\n");
     }
@@ -254,6 +267,83 @@ public class SmartObjectMapperWithCensorshipTest {
     }
 
 
+    /**
+     * This unit test method tests the positional masking attributes.
+     *
+     * @throws JsonProcessingException
+     */
+    @Test
+    public void testPositionalMasks() throws JsonProcessingException {
+        logger.info("Testing positional masks...");
+
+        PositionalAccount account = new PositionalAccount("1234-5678-9012-3456");
+        String result = mapper.writeValueAsString(account);
+        assertTrue(result.contains("\"lastFour\" : \"XXXXXXXXXXXXXXX3456\""));
+        assertTrue(result.contains("\"separators\" : \"1234-****-****-3456\""));
+        assertTrue(result.contains("\"everything\" : \"XXXXXXXXXXXXXXXXXXX\""));
+        assertTrue(result.contains("\"tooShort\" : \"12\""));
+        assertTrue(result.contains("\"unmasked\" : \"1234-5678-9012-3456\""));  // an empty mask masks nothing
+        logger.info("  Masked value: {}", result);
+
+        try {
+            result = mapper.writeValueAsString(new AmbiguousMask());
+            fail("A mask combined with positional attributes should have been rejected: " + result);
+        } catch (JsonMappingException e) {
+            logger.info("  Rejected mask: {}", e.getOriginalMessage());
+        }
+
+        logger.info("Positional masks testing completed.\n");
+    }
+
+
+    /**
+     * This unit test method tests the masking of the string elements of collections, arrays and
+     * maps, and that attributes without the annotation are not masked.
+     *
+     * @throws JsonProcessingException
+     */
+    @Test
+    public void testSensitiveCollections() throws JsonProcessingException {
+        logger.info("Testing masked collections...");
+
+        SensitiveCollections collections = new SensitiveCollections();
+        String result = mapper.writeValueAsString(collections);
+        logger.info("  Masked value: {}", result);
+        assertTrue(result.contains("\"XXXXXX6789\""));
+        assertTrue(result.contains("\"XXXXXX4321\""));
+        assertTrue(result.contains("\"XXXXXX1111\""));
+        assertTrue(result.contains("\"home\" : \"XXXXXX2222\""));
+        assertTrue(result.contains("\"plain\" : \"123456789\""));
+
+        logger.info("Masked collections testing completed.\n");
+    }
+
+
+    /**
+     * This unit test method tests the masking of attributes whose types are not strings but are
+     * serialized as strings.
+     *
+     * @throws JsonProcessingException
+     */
+    @Test
+    public void testSensitiveValues() throws JsonProcessingException {
+        logger.info("Testing masked values that are serialized as strings...");
+
+        SensitiveValues values = new SensitiveValues();
+        String result = mapper.writeValueAsString(values);
+        logger.info("  Masked value: {}", result);
+        assertTrue(result.contains("\"text\" : \"XXXXXX7890\""));
+        assertTrue(result.contains("\"uri\" : \"XXXXXXXXXXXXXXX0523\""));
+        assertTrue(result.contains("\"object\" : \"XXXXXX4321\""));
+        assertTrue(result.contains("\"XXXXXX1111\""));
+        assertTrue(result.contains("\"number\" : 42"));
+        assertTrue(result.contains("\"plain\" : \"1234567890\""));
+        assertEquals(-1, result.indexOf("0451450523"));
+
+        logger.info("Masked values that are serialized as strings testing completed.\n");
+    }
+
+
     private class CreditCardNumber2 {
 
         @MatchPattern(pattern = "^((\\d{4}-){3})\\d{4}$")
@@ -308,4 +398,73 @@ public class SmartObjectMapperWithCensorshipTest {
         }
     }
 
+
+    private class PositionalAccount {
+
+        @Sensitive(type = "account", keepLast = 4)
+        public String lastFour;
+
+        @Sensitive(type = "account", keepFirst = 4, keepLast = 4, keepChars = "-", character = '*')
+        public String separators;
+
+        @Sensitive(type = "account")
+        public String everything;
+
+        @Sensitive(type = "account", keepFirst = 4, keepLast = 4)
+        public String tooShort = "12";
+
+        @Sensitive(type = "account", mask = "")
+        public String unmasked;
+
+        PositionalAccount(String string) {
+            lastFour = string;
+            separators = string;
+            everything = string;
+            unmasked = string;
+        }
+    }
+
+
+    private class AmbiguousMask {
+
+        @Sensitive(type = "social security", mask = Sensitive.MASK_SSN, keepLast = 4)
+        public String ssn = "123-45-6789";
+    }
+
+
+    private class SensitiveCollections {
+
+        @Sensitive(type = "account", keepLast = 4)
+        public List<String> list = Arrays.asList("1234566789", "9876544321");
+
+        @Sensitive(type = "account", keepLast = 4)
+        public String[] array = {"1111111111"};
+
+        @Sensitive(type = "account", keepLast = 4)
+        public Map<String, String> map = Collections.singletonMap("home", "2222222222");
+
+        public String plain = "123456789";
+    }
+
+
+    private class SensitiveValues {
+
+        @Sensitive(type = "account", keepLast = 4)
+        public TextString text = new TextString("1234567890");
+
+        @Sensitive(type = "account", keepLast = 4)
+        public URI uri = URI.create("urn:isbn:0451450523");
+
+        @Sensitive(type = "account", keepLast = 4)
+        public Object object = "9876544321";
+
+        @Sensitive(type = "account", keepLast = 4)
+        public List<TextString> texts = Arrays.asList(new TextString("1111111111"));
+
+        @Sensitive(type = "account", keepLast = 4)
+        public Object number = 42;
+
+        public TextString plain = new TextString("1234567890");
+    }
+
 }
@@ -10,11 +10,29 @@
 package craterdog.smart;
 
 import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.ser.std.ToStringSerializer;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import org.junit.AfterClass;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -144,9 +162,238 @@ public class SmartObjectTest {
         logger.info("  The JSON string: {}", actualJson);
         assertEquals(expectedJson, actualJson);
 
+        // nothing is masked in an object without sensitive attributes
+        ExampleSmartList list = new ExampleSmartList();
+        assertEquals(list.toExposedString(), list.toString());
+
         logger.info("The toString() method testing completed.");
     }
 
+    /**
+     * This unit test method tests the toCompactString() methods for a SmartObject.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testToCompactString() throws IOException {
+        logger.info("Testing the toCompactString() methods for a SmartObject...");
+
+        ExampleSmartObject object = new ExampleSmartObject();
+        String compactJson = object.toCompactString();
+        logger.info("  The compact JSON string: {}", compactJson);
+        assertFalse(compactJson.contains("\n"));
+        assertTrue(compactJson.length() < expectedJson.length());
+        assertEquals(compactJson, SmartObject.toCompactString(object));
+        TypeReference<Map<String, Object>> type = new TypeReference<Map<String, Object>>() {};
+        assertEquals(SmartObject.fromString(type, expectedJson), SmartObject.fromString(type, compactJson));
+        ExampleSmartObject copy = SmartObject.fromString(ExampleSmartObject.class, object.toExposedCompactString());
+        assertEquals(object, copy);
+
+        logger.info("The toCompactString() methods testing completed.");
+    }
+
+    /**
+     * This unit test method tests the writeTo() and toUtf8Bytes() methods for a SmartObject.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testWriteTo() throws IOException {
+        logger.info("Testing the writeTo() and toUtf8Bytes() methods for a SmartObject...");
+
+        ExampleSmartObject object = new ExampleSmartObject();
+        byte[] expectedBytes = expectedJson.getBytes(StandardCharsets.UTF_8);
+        assertArrayEquals(expectedBytes, object.toUtf8Bytes());
+        assertArrayEquals(expectedBytes, SmartObject.toUtf8Bytes(object));
+        assertArrayEquals(object.toExposedString().getBytes(StandardCharsets.UTF_8), object.toExposedUtf8Bytes());
+
+        final boolean[] closed = new boolean[1];
+        ByteArrayOutputStream output = new ByteArrayOutputStream() {
+            @Override
+            public void close() {
+                closed[0] = true;
+            }
+        };
+        object.writeTo(output);
+        SmartObject.writeTo(object, output);
+        assertFalse(closed[0]);
+        assertEquals(expectedJson + expectedJson, output.toString("UTF-8"));
+        SmartObject.createMapper().writeValue(output, object);
+        assertTrue(closed[0]);  // a plain mapper keeps the Jackson default
+
+        StringWriter writer = new StringWriter();
+        object.writeTo(writer);
+        assertEquals(expectedJson, writer.toString());
+        writer = new StringWriter();
+        object.writeExposedTo(writer);
+        assertEquals(object.toExposedString(), writer.toString());
+
+        ByteBuffer buffer = ByteBuffer.allocate(1024);
+        buffer.put((byte) '[');
+        object.writeTo(buffer);
+        assertEquals(1 + expectedBytes.length, buffer.position());
+        try {
+            object.writeExposedTo(ByteBuffer.allocate(16));
+            fail("  The object was written to a buffer that is too small.");
+        } catch (BufferOverflowException e) {
+            logger.info("  The expected exception was thrown: {}", e.getClass().getSimpleName());
+        }
+
+        logger.info("The writeTo() and toUtf8Bytes() methods testing completed.");
+    }
+
+    /**
+     * This unit test method tests the functions that read a SmartObject from bytes, streams,
+     * buffers and files.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testFromBytesStreamsAndFiles() throws IOException {
+        logger.info("Testing the reading of a SmartObject from bytes, streams, buffers and files...");
+
+        ExampleSmartObject object = new ExampleSmartObject();
+        ExampleSmartObject expected = SmartObject.fromString(ExampleSmartObject.class, expectedJson);
+        byte[] bytes = expectedJson.getBytes(StandardCharsets.UTF_8);
+        byte[] padded = new byte[bytes.length + 4];
+        System.arraycopy(bytes, 0, padded, 2, bytes.length);
+        assertEquals(expected, SmartObject.fromBytes(ExampleSmartObject.class, padded, 2, bytes.length));
+
+        final boolean[] closed = new boolean[1];
+        ByteArrayInputStream input = new ByteArrayInputStream(bytes) {
+            @Override
+            public void close() {
+                closed[0] = true;
+            }
+        };
+        assertEquals(expected, SmartObject.fromStream(ExampleSmartObject.class, input));
+        assertFalse(closed[0]);
+        input.reset();
+        assertEquals(expected, SmartObject.createMapper().readValue(input, ExampleSmartObject.class));
+        assertTrue(closed[0]);  // a plain mapper keeps the Jackson default
+
+        ByteBuffer buffer = ByteBuffer.wrap(padded, 2, bytes.length);
+        assertEquals(expected, SmartObject.fromByteBuffer(ExampleSmartObject.class, buffer));
+        assertEquals(2, buffer.position());
+        ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+        direct.put(bytes).flip();
+        assertEquals(expected, SmartObject.fromByteBuffer(ExampleSmartObject.class, direct));
+        assertEquals(0, direct.position());
+
+        // a large file is memory mapped while a small one is streamed
+        List<ExampleSmartObject> objects = new ArrayList<>();
+        for (int i = 0; i < 4000; i++) {
+            objects.add(object);
+        }
+        TypeReference<List<ExampleSmartObject>> type = new TypeReference<List<ExampleSmartObject>>() {};
+        Path file = Files.createTempFile("smart", ".json");
+        try {
+            Files.write(file, SmartObject.toUtf8Bytes(objects));
+            logger.info("  The large file contains {} bytes.", Files.size(file));
+            assertTrue(Files.size(file) > 1024 * 1024);
+            assertEquals(objects.size(), SmartObject.fromFile(type, file).size());
+            Files.write(file, bytes);
+            assertEquals(expected, SmartObject.fromFile(ExampleSmartObject.class, file));
+        } finally {
+            Files.delete(file);
+        }
+
+        logger.info("The reading from bytes, streams, buffers and files testing completed.");
+    }
+
+    /**
+     * This unit test method tests the encoding of a SmartObject in the binary Smile format.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testSmileBytes() throws IOException {
+        logger.info("Testing the Smile encoding of a SmartObject...");
+
+        ExampleSmartObject object = new ExampleSmartObject();
+        ExampleSmartObject copy = SmartObject.fromSmileBytes(ExampleSmartObject.class, object.toExposedSmileBytes());
+        assertEquals(object, copy);
+        ExampleSmartObject censored = SmartObject.fromSmileBytes(ExampleSmartObject.class, object.toSmileBytes());
+        assertEquals("1234-XXXX-XXXX-3456", censored.card);
+        censored.card = object.card;
+        assertEquals(object, censored);
+        assertArrayEquals(object.toSmileBytes(), SmartObject.toSmileBytes(object));
+        TypeReference<List<String>> type = new TypeReference<List<String>>() {};
+        List<String> strings = new ArrayList<>();
+        strings.add("alpha");
+        strings.add("beta");
+        assertEquals(strings, SmartObject.fromSmileBytes(type, SmartObject.toSmileBytes(strings)));
+
+        logger.info("The Smile encoding testing completed.");
+    }
+
+    /**
+     * This unit test method tests the caching of the state of immutable SmartObjects.
+     */
+    @Test
+    public void testImmutableObjects() {
+        logger.info("Testing the caching of the state of immutable SmartObjects...");
+
+        ImmutablePoint point = new ImmutablePoint(3, 4);
+        assertSame(point.toString(), point.toString());
+        assertSame(point.toExposedString(), point.toExposedString());
+        assertEquals(point.hashCode(), point.hashCode());
+        ImmutablePoint same = new ImmutablePoint(3, 4);
+        ImmutablePoint other = new ImmutablePoint(4, 3);
+        assertEquals(point, same);
+        assertEquals(point.hashCode(), same.hashCode());
+        assertFalse(point.equals(other));
+        assertTrue(point.compareTo(other) < 0);
+        assertTrue(other.compareTo(point) > 0);
+        assertEquals(0, point.compareTo(same));
+
+        // a modification goes undetected unless the checks are turned on
+        ImmutablePoint modified = new ImmutablePoint(5, 6);
+        String cached = modified.toString();
+        modified.x = 7;
+        assertSame(cached, modified.toString());
+        boolean checks = SmartObject.getImmutabilityChecks();
+        SmartObject.setImmutabilityChecks(true);
+        try {
+            modified = new ImmutablePoint(5, 6);
+            modified.hashCode();
+            modified.x = 7;
+            modified.toString();
+            fail("  The modification of an immutable object was not detected.");
+        } catch (IllegalStateException e) {
+            logger.info("  The expected exception was thrown: {}", e.getMessage());
+        } finally {
+            SmartObject.setImmutabilityChecks(checks);
+        }
+
+        logger.info("The caching of the state of immutable SmartObjects testing completed.");
+    }
+
+    /**
+     * This unit test method tests the warmUp() function for SmartObject classes.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testWarmUp() throws IOException {
+        logger.info("Testing the warmUp() function for SmartObject classes...");
+
+        Map<Class<?>, Long> timings = SmartObject.warmUp(ExampleSmartObject.class, ExampleSmartSubclass.class);
+        assertEquals(2, timings.size());
+        assertTrue(timings.containsKey(ExampleSmartObject.class));
+        assertTrue(timings.get(ExampleSmartSubclass.class) >= 0);
+        assertEquals(expectedJson, new ExampleSmartObject().toString());
+
+        try {
+            SmartObject.warmUp(InvalidMask.class);
+            fail("  The invalid mask was not detected during the warm up.");
+        } catch (JsonMappingException e) {
+            logger.info("  The expected exception was thrown: {}", e.getOriginalMessage());
+        }
+
+        logger.info("The warmUp() function testing completed.");
+    }
+
     /**
      * This unit test method tests the toString(String indentation) method.
      */
@@ -178,6 +425,27 @@ public class SmartObjectTest {
         logger.info("The copy() and equals() methods testing completed.");
     }
 
+    /**
+     * This unit test method tests that the copy() method shares immutable attribute values.
+     */
+    @Test
+    public void testCopySharesImmutableAttributes() {
+        logger.info("Testing the sharing of immutable attributes by the copy() method...");
+
+        ExampleSmartObject object = new ExampleSmartObject();
+        ExampleSmartObject copy = object.copy();
+        assertEquals(object, copy);
+        assertEquals(object.toExposedString(), copy.toExposedString());
+        assertSame(object.tag, copy.tag);
+        assertSame(object.binary, copy.binary);
+        assertSame(object.text, copy.text);
+        assertSame(object.uri, copy.uri);
+        assertNotSame(object.list, copy.list);
+        assertNotSame(object.map, copy.map);
+
+        logger.info("The sharing of immutable attributes testing completed.");
+    }
+
     /**
      * This unit test method tests the compareTo(Object object) method.
      */
@@ -196,4 +464,257 @@ public class SmartObjectTest {
         logger.info("The compareTo() method testing completed.");
     }
 
+    /**
+     * This unit test method tests the registration of serializable classes with the mappers.
+     */
+    @Test
+    public void testRegisterSerializableClass() {
+        logger.info("Testing the registration of serializable classes...");
+
+        Colored object = new Colored();
+        assertEquals("{\n  \"color\" : \"red\"\n}", object.toString());
+        object = new Colored();  // registering the class again has no effect
+        assertEquals("{\n  \"color\" : \"red\"\n}", object.toString());
+        assertEquals(object, new Colored());
+
+        logger.info("The registration of serializable classes testing completed.");
+    }
+
+    /**
+     * This unit test method tests that registering the same module again does not publish a new
+     * snapshot of the mappers.
+     */
+    @Test
+    @SuppressWarnings("deprecation")
+    public void testRegisterModule() {
+        logger.info("Testing the registration of modules...");
+
+        SmartObject.registerModule(new SimpleModule("ExampleModule"));
+        MapperSnapshot snapshot = SmartObject.currentMappers();
+        SmartObject.registerModule(new SimpleModule("ExampleModule"));
+        assertSame(snapshot, SmartObject.currentMappers());
+
+        // an unnamed module registered from a constructor is only registered the first time
+        assertEquals("{\n  \"tint\" : \"blue\"\n}", new Tinted().toString());
+        snapshot = SmartObject.currentMappers();
+        assertEquals("{\n  \"tint\" : \"blue\"\n}", new Tinted().toString());
+        assertSame(snapshot, SmartObject.currentMappers());
+
+        try {
+            SmartObject.registerModule(new SimpleModule());
+            fail("  An unnamed module should have been rejected.");
+        } catch (IllegalArgumentException e) {
+            logger.info("  The expected exception was thrown: {}", e.getMessage());
+        }
+
+        // the unnamed modules registered by the constructors of a class and its superclass are both kept
+        assertEquals("{\n  \"tint\" : \"blue\",\n  \"tone\" : \"soft\"\n}", new ToneTinted().toString());
+        snapshot = SmartObject.currentMappers();
+        assertEquals("{\n  \"tint\" : \"blue\",\n  \"tone\" : \"soft\"\n}", new ToneTinted().toString());
+        assertSame(snapshot, SmartObject.currentMappers());
+
+        logger.info("The registration of modules testing completed.");
+    }
+
+    /**
+     * This unit test method tests the mixins declared by a scoped SmartObject subclass.
+     */
+    @Test
+    public void testMapperScope() {
+        logger.info("Testing the mappers for a scoped SmartObject subclass...");
+
+        assertEquals("{\n  \"shade\" : \"dark\"\n}", new ScopedShaded().toString());
+        assertFalse(new UnscopedShaded().toString().contains("dark"));
+        assertEquals(new ScopedShaded(), new ScopedShaded());
+
+        // classes that declare the same scope share the same mappers
+        MapperSnapshot snapshot = new MapperSnapshot();
+        ScopeFingerprint scope = ScopeFingerprint.of(ScopedShaded.class.getAnnotation(MapperScope.class));
+        ScopeFingerprint same = ScopeFingerprint.of(OtherScopedShaded.class.getAnnotation(MapperScope.class));
+        assertEquals(scope, same);
+        assertSame(snapshot.scoped(scope), snapshot.scoped(same));
+        assertNotSame(snapshot, snapshot.scoped(scope));
+        assertSame(snapshot, snapshot.scoped(ScopeFingerprint.of((MapperScope) null)));
+
+        logger.info("The mappers for a scoped SmartObject subclass testing completed.");
+    }
+
+    /**
+     * This unit test method tests the mappers for a scoped SmartObject subclass whose instances
+     * are nested inside unscoped values.
+     */
+    @Test
+    public void testNestedMapperScope() throws IOException {
+        logger.info("Testing the mappers for nested instances of a scoped SmartObject subclass...");
+
+        String shaded = "{\"shade\":\"dark\"}";
+        ShadedHolder holder = new ShadedHolder();
+        assertEquals("{\"shaded\":" + shaded + ",\"list\":[" + shaded + "],\"map\":{\"key\":" + shaded + "}}",
+                holder.toCompactString());
+        assertEquals(holder, new ShadedHolder());
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        SmartObject.writeJsonArray(Collections.singletonList(new ScopedShaded()).iterator(), output);
+        assertEquals("[" + shaded + "]", output.toString("UTF-8"));
+
+        output.reset();
+        SmartObject.writeJsonLines(Collections.singletonList(new ScopedShaded()).iterator(), output);
+        assertEquals(shaded + "\n", output.toString("UTF-8"));
+
+        logger.info("The mappers for nested instances of a scoped SmartObject subclass testing completed.");
+    }
+
+
+    @Immutable
+    static private class ImmutablePoint extends SmartObject<ImmutablePoint> {
+
+        public int x;
+        public int y;
+
+        ImmutablePoint(int x, int y) {
+            this.x = x;
+            this.y = y;
+        }
+
+    }
+
+
+    static private class Color {
+
+        private final String name;
+
+        Color(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+
+    }
+
+
+    static private class Colored extends SmartObject<Colored> {
+
+        public Color color = new Color("red");
+
+        Colored() {
+            registerSerializableClass(Color.class);
+        }
+
+    }
+
+
+    static private class Tint {
+
+        private final String name;
+
+        Tint(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+
+    }
+
+
+    static private class Tinted extends SmartObject<Tinted> {
+
+        public Tint tint = new Tint("blue");
+
+        @SuppressWarnings("deprecation")
+        Tinted() {
+            addSerializableClass(new SimpleModule().addSerializer(Tint.class, ToStringSerializer.instance));
+        }
+
+    }
+
+
+    static private class Tone {
+
+        private final String name;
+
+        Tone(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+
+    }
+
+
+    static private class ToneTinted extends Tinted {
+
+        public Tone tone = new Tone("soft");
+
+        @SuppressWarnings("deprecation")
+        ToneTinted() {
+            addSerializableClass(new SimpleModule().addSerializer(Tone.class, ToStringSerializer.instance));
+        }
+
+    }
+
+
+    static private class Shade {
+
+        private final String name;
+
+        Shade(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+
+    }
+
+
+    @MapperScope(mixIns = @MapperScope.MixIn(target = Shade.class))
+    static private class ScopedShaded extends SmartObject<ScopedShaded> {
+
+        public Shade shade = new Shade("dark");
+
+    }
+
+
+    @MapperScope(mixIns = @MapperScope.MixIn(target = Shade.class, mixin = UseToStringAsValueMixIn.class))
+    static private class OtherScopedShaded extends SmartObject<OtherScopedShaded> {
+
+        public Shade shade = new Shade("light");
+
+    }
+
+
+    static private class UnscopedShaded extends SmartObject<UnscopedShaded> {
+
+        public Shade shade = new Shade("dark");
+
+    }
+
+
+    static private class ShadedHolder extends SmartObject<ShadedHolder> {
+
+        public ScopedShaded shaded = new ScopedShaded();
+        public List<ScopedShaded> list = Collections.singletonList(new ScopedShaded());
+        public Map<String, ScopedShaded> map = Collections.singletonMap("key", new ScopedShaded());
+
+    }
+
+
+    static private class InvalidMask extends SmartObject<InvalidMask> {
+
+        @Sensitive(type = "social security", mask = "(^\\d{3}-\\d{2}-\\d{4}$")
+        public String ssn = "123-45-6789";
+
+    }
+
 }
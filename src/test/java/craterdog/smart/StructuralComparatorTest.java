@@ -0,0 +1,352 @@
+/************************************************************************
+ * Copyright (c) Crater Dog Technologies(TM).  All Rights Reserved.     *
+ ************************************************************************
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.        *
+ *                                                                      *
+ * This code is free software; you can redistribute it and/or modify it *
+ * under the terms of The MIT License (MIT), as published by the Open   *
+ * Source Initiative. (See http://opensource.org/licenses/MIT)          *
+ ************************************************************************/
+package craterdog.smart;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.joda.time.DateTime;
+import org.junit.AfterClass;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.ext.XLogger;
+import org.slf4j.ext.XLoggerFactory;
+
+/**
+ * This class tests that the structural comparisons agree exactly with the comparisons of the
+ * corresponding JSON strings.
+ *
+ * @author Derk Norton
+ */
+public class StructuralComparatorTest {
+
+    static private final XLogger logger = XLoggerFactory.getXLogger(StructuralComparatorTest.class);
+    static private final SmartObjectMapper mapper = new SmartObjectMapper();
+    static private final StructuralComparator comparator = new StructuralComparator(mapper);
+
+    // values that differ in type but some of which have the same JSON representation
+    static private final Object[] values = {
+        null, 1, 1L, (short) 1, 1.0d, 1.0f, 2, "1", "one", "", true, false,
+        new BigDecimal("1.0"), new BigDecimal("1.00"), BigInteger.ONE, Double.NaN, "NaN",
+        new DateTime("2015-08-28T19:59:55.585Z"), "2015-08-28T19:59:55.585Z",
+        Color.RED, "RED", new byte[] { 1, 2, 3 }, "AQID",
+        Arrays.asList(1, 2), Arrays.asList(1L, 2L), Arrays.asList(1, null), new Object[] { 1, null },
+        new ArrayList<>(), new LinkedHashMap<>(), new ExampleSmartList(), Arrays.asList("alpha", "bravo", "charlie"),
+        new ExampleSmartMap(), mapOf("alpha", 1, "bravo", 2, "charlie", 3), mapOf("alpha", null),
+        mapOf("alpha", 1, "bravo", null), mapOf("alpha", 1), mapOf(1, "alpha"), new Simple("a", 1),
+        new Simple("a", 1L), new Simple(null, 1), new Simple("a", null), new Other("a", 1),
+        new ExamplePrecompiledObject()
+    };
+
+
+    /**
+     * Log a message at the beginning of the tests.
+     */
+    @BeforeClass
+    static public void setUpClass() {
+        logger.info("Running StructuralComparator Unit Tests...\n");
+    }
+
+
+    /**
+     * Log a message at the end of the tests.
+     */
+    @AfterClass
+    static public void tearDownClass() {
+        logger.info("Completed StructuralComparator Unit Tests.\n");
+    }
+
+
+    /**
+     * This unit test method compares every pair of values structurally and via their JSON strings.
+     * The equality, hash codes and ordering must all agree.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testAgreementWithJsonStrings() throws IOException {
+        logger.info("Testing the agreement of structural comparisons with JSON strings...");
+
+        for (Object first : values) {
+            for (Object second : values) {
+                assertAgreement(new Holder(first), new Holder(second));
+            }
+        }
+
+        logger.info("Agreement of structural comparisons testing completed.\n");
+    }
+
+
+    /**
+     * This unit test method compares randomly generated nested structures.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testRandomStructures() throws IOException {
+        logger.info("Testing the agreement of structural comparisons on random structures...");
+
+        Random random = new Random(42);
+        for (int i = 0; i < 2000; i++) {
+            Holder first = new Holder(randomValue(random, 3));
+            Holder second = new Holder(randomValue(random, 3));
+            assertAgreement(first, second);
+            assertAgreement(first, first.copy());
+        }
+
+        logger.info("Random structures testing completed.\n");
+    }
+
+
+    /**
+     * This unit test method compares example smart objects that differ in a single attribute.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testExampleSmartObjects() throws IOException {
+        logger.info("Testing structural comparisons of example smart objects...");
+
+        ExampleSmartObject first = new ExampleSmartObject();
+        ExampleSmartObject second = new ExampleSmartObject();
+        assertTrue(comparator.areEqual(first, second));
+        assertEquals(comparator.hashCodeOf(first), comparator.hashCodeOf(second));
+        assertEquals(first.hashCode(), second.hashCode());
+
+        assertEquals(0, first.compareTo(second));
+
+        second.card = "1234-5678-9012-3457";
+        assertFalse(comparator.areEqual(first, second));
+        assertFalse(first.equals(second));
+        assertTrue(first.compareTo(second) < 0);
+        assertTrue(second.compareTo(first) > 0);
+
+        second.card = first.card;
+        second.timestamp = new DateTime("2015-08-28T19:59:55.586Z");
+        assertFalse(comparator.areEqual(first, second));
+
+        second.timestamp = first.timestamp;
+        second.list = new ExampleSmartList(Arrays.asList("alpha", "bravo"));
+        assertFalse(comparator.areEqual(first, second));
+        ExampleSmartObject copy = first.copy();
+        assertEquals(first, copy);
+        assertSame(first.timestamp, copy.timestamp);  // the immutable values are shared
+        assertSame(first.tag, copy.tag);
+
+        logger.info("Structural comparisons of example smart objects testing completed.\n");
+    }
+
+
+    /**
+     * This unit test method compares precompiled smart objects that differ in their first
+     * attribute. The comparison must stop there without reading their other attributes.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testPrecompiledObjects() throws IOException {
+        logger.info("Testing structural comparisons of precompiled smart objects...");
+
+        ExamplePrecompiledObject first = new ExamplePrecompiledObject();
+        ExamplePrecompiledObject second = new ExamplePrecompiledObject();
+        first.tags.add("alpha");
+        second.tags.add("alpha");
+        second.name = null;
+        assertAgreement(first, second);
+        second.name = first.name;
+        assertAgreement(first, second);
+
+        first.count = 1;
+        second.count = 2;
+        first.tags = new UnreadableList();
+        second.tags = new UnreadableList();
+        assertFalse(comparator.areEqual(first, second));
+        assertTrue(comparator.compare(first, second) < 0);
+        assertTrue(second.compareTo(first) > 0);
+
+        logger.info("Structural comparisons of precompiled smart objects testing completed.\n");
+    }
+
+
+    /**
+     * This unit test method compares beans whose attributes are read through the accessors that
+     * are generated by the <code>AccessorModule</code>. The comparison must stop at the first
+     * attribute that differs without reading the others.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testGeneratedAccessors() throws IOException {
+        logger.info("Testing structural comparisons using generated accessors...");
+
+        SmartObjectMapper generated = new SmartObjectMapper(new AccessorModule());
+        StructuralComparator accessorComparator = new StructuralComparator(generated);
+        Gauge first = new Gauge(1, false);
+        Gauge second = new Gauge(1, false);
+        assertTrue(accessorComparator.areEqual(first, second));
+        assertEquals(accessorComparator.hashCodeOf(first), accessorComparator.hashCodeOf(second));
+
+        first = new Gauge(1, true);
+        second = new Gauge(2, true);
+        assertFalse(accessorComparator.areEqual(first, second));
+        assertTrue(accessorComparator.compare(first, second) < 0);
+
+        logger.info("Structural comparisons using generated accessors testing completed.\n");
+    }
+
+
+    private void assertAgreement(Object first, Object second) throws IOException {
+        String firstJson = mapper.writeValueAsString(first);
+        String secondJson = mapper.writeValueAsString(second);
+        boolean expected = firstJson.equals(secondJson);
+        assertEquals(firstJson + " vs " + secondJson, expected, comparator.areEqual(first, second));
+        if (expected) {
+            assertEquals(comparator.hashCodeOf(first), comparator.hashCodeOf(second));
+        }
+        assertEquals(firstJson + " vs " + secondJson, firstJson.compareTo(secondJson), comparator.compare(first, second));
+    }
+
+
+    private Object randomValue(Random random, int depth) {
+        int choice = random.nextInt(depth > 0 ? 8 : 5);
+        switch (choice) {
+            case 0:
+                return null;
+            case 1:
+                return random.nextInt(3);
+            case 2:
+                return random.nextBoolean() ? (Object) (long) random.nextInt(3) : (Object) (double) random.nextInt(3);
+            case 3:
+                return random.nextBoolean() ? "a" : "b";
+            case 4:
+                return values[random.nextInt(values.length)];
+            case 5:
+                List<Object> list = new ArrayList<>();
+                for (int i = random.nextInt(3); i > 0; i--) list.add(randomValue(random, depth - 1));
+                return list;
+            case 6:
+                Map<String, Object> map = new LinkedHashMap<>();
+                for (int i = random.nextInt(3); i > 0; i--) map.put(random.nextBoolean() ? "x" : "y", randomValue(random, depth - 1));
+                return map;
+            default:
+                return new Simple(random.nextBoolean() ? "a" : null, randomValue(random, depth - 1));
+        }
+    }
+
+
+    static private Map<Object, Object> mapOf(Object... keysAndValues) {
+        Map<Object, Object> map = new LinkedHashMap<>();
+        for (int i = 0; i < keysAndValues.length; i += 2) {
+            map.put(keysAndValues[i], keysAndValues[i + 1]);
+        }
+        return map;
+    }
+
+
+    enum Color { RED, GREEN }
+
+
+    static public class Holder extends SmartObject<Holder> {
+
+        public Object value;
+
+        public Holder() {
+        }
+
+        public Holder(Object value) {
+            this.value = value;
+        }
+
+    }
+
+
+    static public class Gauge {
+
+        private final int level;
+        private final boolean sealed;
+
+        public Gauge(int level, boolean sealed) {
+            this.level = level;
+            this.sealed = sealed;
+        }
+
+        public int getLevel() {
+            return level;
+        }
+
+        public String getReading() {
+            if (sealed) throw new IllegalStateException("The reading is sealed.");
+            return "level " + level;
+        }
+
+    }
+
+
+    static public class Simple {
+
+        public String name;
+        public Object value;
+
+        public Simple(String name, Object value) {
+            this.name = name;
+            this.value = value;
+        }
+
+    }
+
+
+    /**
+     * This class is a list that fails whenever its elements are read.
+     */
+    @SuppressWarnings("serial")
+    static public class UnreadableList extends ArrayList<String> {
+
+        @Override
+        public int size() {
+            throw new IllegalStateException("The list was read.");
+        }
+
+        @Override
+        public String get(int index) {
+            throw new IllegalStateException("The list was read.");
+        }
+
+        @Override
+        public Iterator<String> iterator() {
+            throw new IllegalStateException("The list was read.");
+        }
+
+    }
+
+
+    static public class Other {
+
+        public String name;
+        public Object value;
+
+        public Other(String name, Object value) {
+            this.name = name;
+            this.value = value;
+        }
+
+    }
+
+}